@@ -0,0 +1,135 @@
+package buutti.buffer.src;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmark of the copy engines on a generated input file.
+ * Larger files can be benchmarked with e.g. -p fileSize=10G, the input is generated once per trial
+ * in the system temp directory.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class BuuttiBufferCopyBenchmark {
+    /**
+     * Input file size with a K/M/G suffix, as the CLI sizes.
+     */
+    @Param({"1M", "64M"})
+    public String fileSize;
+
+    /**
+     * Copy mode, as given with the -M option.
+     */
+    @Param({"buffered", "transfer", "mmap", "pooled", "parallel", "async"})
+    public String mode;
+
+    /**
+     * Buffer type, as given with the -S option.
+     */
+    @Param({"ring", "spsc"})
+    public String bufferType;
+
+    /**
+     * Buffer size, as given with the -B option. Not used by the pooled mode, see {@link #poolChunks}.
+     */
+    @Param({"16", "65536"})
+    public int bufferSize;
+
+    /**
+     * Amount of pooled chunks of the pooled mode, given with the -B option there. Kept apart from the buffer size,
+     * as 65536 direct chunks of the chunk size would take 64 GiB.
+     */
+    @Param({"8"})
+    public int poolChunks;
+
+    /**
+     * Buffer timeout in millis, as given with the -T option.
+     */
+    @Param({"-1"})
+    public long timeout;
+
+    /**
+     * Wait strategy of the spsc buffer, as given with the -W option.
+     */
+    @Param({"blocking"})
+    public String waitStrategy;
+
+    /**
+     * Chunk size of the pooled and async modes, as given with the --chunk-size option.
+     */
+    @Param({"1048576"})
+    public int chunkSize;
+
+    /**
+     * Worker threads of the parallel mode, as given with the -P option.
+     */
+    @Param({"4"})
+    public int threads;
+
+    /**
+     * Reads and writes in flight of the async mode, as given with the --queue-depth option.
+     */
+    @Param({"8"})
+    public int queueDepth;
+
+    private Path in, out;
+
+    @Setup(Level.Trial)
+    public void generateInput() throws IOException {
+        in = Files.createTempFile("buutti-bench-in", ".bin");
+        out = Files.createTempFile("buutti-bench-out", ".bin");
+        writeRandom(in, BuuttiBufferCopy.parseSize(fileSize));
+    }
+
+    /**
+     * Writes a file of incompressible, reproducible content.
+     * @param file file to write.
+     * @param size file size.
+     * @throws IOException on write error.
+     */
+    static void writeRandom(final Path file, final long size) throws IOException {
+        SplittableRandom random = new SplittableRandom(42);
+        byte[] block = new byte[1 << 20];
+        try (OutputStream os = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += block.length) {
+                for (int i = 0; i < block.length; i += 8) {
+                    long r = random.nextLong();
+                    for (int j = 0; j < 8; j++) {
+                        block[i + j] = (byte) (r >>> (j * 8));
+                    }
+                }
+                os.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(in);
+        Files.deleteIfExists(out);
+    }
+
+    @Benchmark
+    public void copy() throws IOException, InterruptedException {
+        CopySettings settings = new CopySettings();
+        settings.mode = mode;
+        settings.bufferType = bufferType;
+        settings.bufferSize = mode.equals(CopySettings.MODE_POOLED) ? poolChunks : bufferSize;
+        settings.bufferTimeout = timeout;
+        settings.waitStrategy = waitStrategy;
+        settings.chunkSize = chunkSize;
+        settings.threads = threads;
+        settings.queueDepth = queueDepth;
+        settings.createEngine().copy(in, out);
+    }
+}
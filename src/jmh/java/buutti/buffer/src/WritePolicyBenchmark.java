@@ -0,0 +1,80 @@
+package buutti.buffer.src;
+
+import buutti.buffer.engine.SyncPolicy;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput cost of the durable write policies of the buffered mode, against the page cache only baseline
+ * (sync none, no direct IO, no write batch). Results depend on the device under the temp directory far more than
+ * on the CPU; run with -Djava.io.tmpdir on the storage of interest, tmpfs has no direct IO and a free fsync.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+public class WritePolicyBenchmark {
+    /**
+     * Input file size with a K/M/G suffix, as the CLI sizes.
+     */
+    @Param({"256M"})
+    public String fileSize;
+
+    /**
+     * Sync policy, as given with the --sync option.
+     */
+    @Param({"none", "end", "64M", "dsync"})
+    public String sync;
+
+    /**
+     * Whether the output is written with direct IO, as with the --direct option.
+     */
+    @Param({"false", "true"})
+    public boolean direct;
+
+    /**
+     * Write-behind batch size, as given with the --write-batch option. 0 = the default, which is no batching
+     * unless syncing or writing directly.
+     */
+    @Param({"0", "8388608"})
+    public int writeBatch;
+
+    private Path in, out;
+
+    @Setup(Level.Trial)
+    public void generateInput() throws IOException {
+        in = Files.createTempFile("buutti-bench-in", ".bin");
+        out = Files.createTempFile("buutti-bench-out", ".bin");
+        BuuttiBufferCopyBenchmark.writeRandom(in, BuuttiBufferCopy.parseSize(fileSize));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(in);
+        Files.deleteIfExists(out);
+    }
+
+    @Benchmark
+    public void copy() throws IOException, InterruptedException {
+        CopySettings settings = new CopySettings();
+        settings.bufferSize = 1 << 20;
+        String policy = sync.toUpperCase(Locale.ROOT);
+        if (policy.equals(SyncPolicy.NONE.name()) || policy.equals(SyncPolicy.END.name())
+                || policy.equals(SyncPolicy.DSYNC.name())) {
+            settings.syncPolicy = SyncPolicy.valueOf(policy);
+        } else {
+            settings.syncPolicy = SyncPolicy.INTERVAL;
+            settings.syncInterval = BuuttiBufferCopy.parseSize(sync);
+        }
+        settings.direct = direct;
+        settings.writeBatch = writeBatch;
+        settings.createEngine().copy(in, out);
+    }
+}
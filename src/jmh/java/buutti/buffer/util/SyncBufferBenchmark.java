@@ -0,0 +1,190 @@
+package buutti.buffer.util;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.interfaces.ByteSyncBuffer;
+import buutti.buffer.interfaces.CharSyncBuffer;
+import buutti.buffer.interfaces.SyncBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Supply/consume benchmarks of the SyncBuffer implementations.
+ * transfer: throughput of moving elements from a supplier thread to the benchmark thread.
+ * roundTrip: latency of an uncontended supply followed by a consume on the same thread.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SyncBufferBenchmark {
+    /**
+     * Elements moved per transfer invocation.
+     */
+    private static final int ELEMENTS = 1 << 20;
+
+    /**
+     * Buffer type: object (SyncBufferImpl of Byte), byte/char (primitive ring buffers), spsc (SpscByteSyncBuffer).
+     */
+    @Param({"object", "byte", "char", "spsc"})
+    public String type;
+
+    /**
+     * Buffer size, as given with the -B option.
+     */
+    @Param({"1", "16", "4096", "65536"})
+    public int bufferSize;
+
+    /**
+     * Buffer timeout in millis, -1 = no timeout.
+     */
+    @Param({"-1", "1000"})
+    public long timeout;
+
+    /**
+     * Elements per supply/consume call, 1 = single element API.
+     */
+    @Param({"1", "512"})
+    public int chunk;
+
+    /**
+     * Wait strategy of the spsc buffer.
+     */
+    @Param({WaitStrategies.BLOCKING})
+    public String waitStrategy;
+
+    /**
+     * Buffer reused by every roundTrip invocation.
+     */
+    private SyncBuffer<?> buffer;
+
+    /**
+     * Fresh buffer for every transfer invocation, as the supplier exhausts it at the end.
+     */
+    @State(Scope.Thread)
+    public static class TransferBuffer {
+        private SyncBuffer<?> buffer;
+
+        @Setup(Level.Invocation)
+        public void setUp(final SyncBufferBenchmark benchmark) {
+            buffer = benchmark.createBuffer();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        buffer = createBuffer();
+    }
+
+    private SyncBuffer<?> createBuffer() {
+        return switch (type) {
+            case "object" -> new SyncBufferImpl<Byte>(bufferSize, timeout);
+            case "byte" -> new ByteSyncBufferImpl(bufferSize, timeout);
+            case "char" -> new CharSyncBufferImpl(bufferSize, timeout);
+            case "spsc" -> new SpscByteSyncBuffer(bufferSize, timeout, WaitStrategies.byName(waitStrategy));
+            default -> throw new IllegalArgumentException(type);
+        };
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(ELEMENTS)
+    public long transfer(final TransferBuffer transferBuffer) throws Exception {
+        SyncBuffer<?> buffer = transferBuffer.buffer;
+        Thread supplier = new Thread(() -> {
+            try {
+                supplyAll(buffer);
+            } catch (InterruptedException | IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                buffer.supplierIsExhausted();
+            }
+        });
+        supplier.start();
+        long consumed = consumeAll(buffer);
+        supplier.join();
+        return consumed;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void roundTrip(final Blackhole blackhole) throws Exception {
+        if (buffer instanceof ByteSyncBuffer b) {
+            b.supplyByte((byte) 1);
+            blackhole.consume(b.consumeByte());
+        } else if (buffer instanceof CharSyncBuffer c) {
+            c.supplyChar('1');
+            blackhole.consume(c.consumeChar());
+        } else {
+            @SuppressWarnings("unchecked")
+            SyncBuffer<Byte> o = (SyncBuffer<Byte>) buffer;
+            o.supply((byte) 1);
+            blackhole.consume(o.consume());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void supplyAll(final SyncBuffer<?> sb) throws InterruptedException, IOException {
+        if (sb instanceof ByteSyncBuffer b) {
+            byte[] src = new byte[chunk];
+            for (int i = 0; i < ELEMENTS; i += chunk) {
+                if (chunk == 1) {
+                    b.supplyByte((byte) i);
+                } else {
+                    b.supply(src, 0, chunk);
+                }
+            }
+        } else if (sb instanceof CharSyncBuffer c) {
+            char[] src = new char[chunk];
+            for (int i = 0; i < ELEMENTS; i += chunk) {
+                if (chunk == 1) {
+                    c.supplyChar((char) i);
+                } else {
+                    c.supply(src, 0, chunk);
+                }
+            }
+        } else {
+            SyncBuffer<Byte> o = (SyncBuffer<Byte>) sb;
+            Byte[] src = new Byte[chunk];
+            Arrays.fill(src, (byte) 1);
+            for (int i = 0; i < ELEMENTS; i += chunk) {
+                if (chunk == 1) {
+                    o.supply((byte) i);
+                } else {
+                    o.supply(src, 0, chunk);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private long consumeAll(final SyncBuffer<?> sb) throws InterruptedException, IOException {
+        long consumed = 0;
+        try {
+            if (sb instanceof ByteSyncBuffer b) {
+                byte[] dst = new byte[chunk];
+                while (true) {
+                    consumed += chunk == 1 ? b.consumeByte() & 1 : b.consume(dst, 0, chunk);
+                }
+            } else if (sb instanceof CharSyncBuffer c) {
+                char[] dst = new char[chunk];
+                while (true) {
+                    consumed += chunk == 1 ? c.consumeChar() & 1 : c.consume(dst, 0, chunk);
+                }
+            } else {
+                SyncBuffer<Byte> o = (SyncBuffer<Byte>) sb;
+                Byte[] dst = new Byte[chunk];
+                while (true) {
+                    consumed += chunk == 1 ? o.consume() & 1 : o.consume(dst, 0, chunk);
+                }
+            }
+        } catch (SyncBufferSupplierExhaustedException e) {
+            return consumed;
+        }
+    }
+}
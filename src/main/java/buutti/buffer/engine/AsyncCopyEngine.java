@@ -0,0 +1,254 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.interfaces.CopyEngine;
+import buutti.buffer.interfaces.SyncBuffer;
+import buutti.buffer.util.SyncBufferImpl;
+import buutti.buffer.util.SyncBufferMetrics;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Asynchronous IO engine for high latency storage. Up to queue depth chunk sized reads and writes are in flight
+ * on {@link AsynchronousFileChannel}s at once. The reader stage issues a positional read for every free chunk;
+ * read completion handlers supply the filled chunks to a buffer, and the writer stage issues their writes in
+ * file order as they become contiguous. Write completion handlers return the chunks to the free pool.
+ * Inputs that are not regular files, and outputs that exist but are not regular files, are copied with the
+ * fallback engine.
+ */
+public class AsyncCopyEngine implements CopyEngine {
+    /**
+     * Default amount of requests in flight.
+     */
+    public static final int DEFAULT_QUEUE_DEPTH = 8;
+
+    private final int queueDepth;
+
+    private final int chunkSize;
+
+    private final CopyEngine fallback;
+
+    /**
+     * Counters attached to the read chunk queues, null = not collected.
+     */
+    private SyncBufferMetrics metrics;
+
+    /**
+     * @param queueDepth amount of chunks, and so of reads and writes, in flight.
+     * @param chunkSize size of a single read/write in bytes.
+     * @param fallback engine used when the input or output is not a regular file.
+     */
+    public AsyncCopyEngine(final int queueDepth, final int chunkSize, final CopyEngine fallback) {
+        if (queueDepth < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Queue depth and chunk size must be at least 1.");
+        }
+        this.queueDepth = queueDepth;
+        this.chunkSize = chunkSize;
+        this.fallback = fallback;
+    }
+
+    /**
+     * @param metrics counters to attach to the read chunk queues, null to stop collecting.
+     */
+    public void setMetrics(final SyncBufferMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void copy(final Path in, final Path out) throws IOException, InterruptedException {
+        if (!Files.isRegularFile(in) || (Files.exists(out) && !Files.isRegularFile(out))) {
+            fallback.copy(in, out);
+            return;
+        }
+        try (AsynchronousFileChannel src = AsynchronousFileChannel.open(in, StandardOpenOption.READ);
+             AsynchronousFileChannel dst = AsynchronousFileChannel.open(out, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Transfer transfer = new Transfer(src, dst, src.size());
+            StageThreads.runAll(transfer::read, transfer::write);
+        }
+    }
+
+    /**
+     * A chunk and its position in the file.
+     * @param position file position of the first byte.
+     * @param data chunk; filling while read, flipped once read.
+     */
+    private record Chunk(long position, ByteBuffer data) {
+    }
+
+    /**
+     * State of a single copy.
+     */
+    private final class Transfer {
+        private final AsynchronousFileChannel src, dst;
+
+        private final long size;
+
+        /**
+         * Free chunks, returned by the write completion handlers.
+         */
+        private final SyncBuffer<ByteBuffer> free = new SyncBufferImpl<>(queueDepth, -1L);
+
+        /**
+         * Read chunks, supplied by the read completion handlers in completion order.
+         */
+        private final SyncBufferImpl<Chunk> read = new SyncBufferImpl<>(queueDepth, -1L);
+
+        /**
+         * First failure of an IO request.
+         */
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private final CompletionHandler<Integer, Chunk> readHandler = new CompletionHandler<>() {
+            @Override
+            public void completed(final Integer n, final Chunk chunk) {
+                ByteBuffer data = chunk.data();
+                if (n == -1) {
+                    failed(new EOFException("Input shrank while copying, at offset "
+                            + (chunk.position() + data.position())), chunk);
+                } else if (data.hasRemaining()) {
+                    src.read(data, chunk.position() + data.position(), chunk, this);
+                } else {
+                    data.flip();
+                    // Never blocks, the buffer holds every chunk there is.
+                    supply(read, chunk);
+                }
+            }
+
+            @Override
+            public void failed(final Throwable e, final Chunk chunk) {
+                fail(e);
+            }
+        };
+
+        private final CompletionHandler<Integer, Chunk> writeHandler = new CompletionHandler<>() {
+            @Override
+            public void completed(final Integer n, final Chunk chunk) {
+                ByteBuffer data = chunk.data();
+                if (data.hasRemaining()) {
+                    dst.write(data, chunk.position() + data.position(), chunk, this);
+                } else {
+                    supply(free, data);
+                }
+            }
+
+            @Override
+            public void failed(final Throwable e, final Chunk chunk) {
+                fail(e);
+            }
+        };
+
+        /**
+         * @param src input channel.
+         * @param dst output channel.
+         * @param size bytes to copy.
+         * @throws IOException on buffer error.
+         * @throws InterruptedException on thread interruption.
+         */
+        private Transfer(final AsynchronousFileChannel src, final AsynchronousFileChannel dst, final long size)
+                throws IOException, InterruptedException {
+            this.src = src;
+            this.dst = dst;
+            this.size = size;
+            read.setMetrics(metrics, chunk -> chunk.data().remaining());
+            for (int i = 0; i < queueDepth; i++) {
+                free.supply(ByteBuffer.allocateDirect(chunkSize));
+            }
+        }
+
+        /**
+         * Reader stage. Issues a read of the next chunk of the file for every free chunk.
+         * @throws IOException on a failed request.
+         * @throws InterruptedException on thread interruption.
+         */
+        private void read() throws IOException, InterruptedException {
+            try {
+                for (long position = 0; position < size; position += chunkSize) {
+                    ByteBuffer data = free.consume();
+                    data.clear().limit((int) Math.min(chunkSize, size - position));
+                    src.read(data, position, new Chunk(position, data), readHandler);
+                }
+            } catch (SyncBufferSupplierExhaustedException e) {
+                rethrowFailure();
+                throw e;
+            }
+        }
+
+        /**
+         * Writer stage. Issues the writes of the read chunks in file order, then waits until every chunk is
+         * back in the free pool, i.e. every write completed.
+         * @throws IOException on a failed request.
+         * @throws InterruptedException on thread interruption.
+         */
+        private void write() throws IOException, InterruptedException {
+            try {
+                Map<Long, Chunk> pending = new HashMap<>();
+                long position = 0;
+                while (position < size) {
+                    Chunk chunk = pending.remove(position);
+                    if (chunk == null) {
+                        chunk = read.consume();
+                        pending.put(chunk.position(), chunk);
+                        continue;
+                    }
+                    position += chunk.data().remaining();
+                    dst.write(chunk.data(), chunk.position(), chunk, writeHandler);
+                }
+                for (int i = 0; i < queueDepth; i++) {
+                    free.consume();
+                }
+                rethrowFailure();
+            } catch (SyncBufferSupplierExhaustedException e) {
+                rethrowFailure();
+                throw e;
+            }
+        }
+
+        /**
+         * Supplies from a completion handler, which is never interrupted and never waits on a full buffer.
+         * @param buffer free or read.
+         * @param element element to supply.
+         * @param <T> element type
+         */
+        private <T> void supply(final SyncBuffer<T> buffer, final T element) {
+            try {
+                buffer.supply(element);
+            } catch (IOException | InterruptedException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Records the first failure and exhausts both buffers, so the stages stop waiting on them.
+         * @param e failure.
+         */
+        private void fail(final Throwable e) {
+            if (failure.compareAndSet(null, e)) {
+                free.supplierIsExhausted();
+                read.supplierIsExhausted();
+            }
+        }
+
+        /**
+         * @throws IOException the recorded failure, if any.
+         */
+        private void rethrowFailure() throws IOException {
+            Throwable e = failure.get();
+            if (e instanceof IOException ioe) {
+                throw ioe;
+            } else if (e != null) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.interfaces.CopyEngine;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Copies many files concurrently with a single engine on a bounded worker pool.
+ * A global memory budget caps the buffer memory of all copies in flight: every copy reserves its
+ * estimated buffer memory before starting and releases it when done.
+ */
+public class BatchCopier {
+    /**
+     * A single input to output copy of a batch.
+     * @param in input path.
+     * @param out output path.
+     */
+    public record CopyTask(Path in, Path out) {
+    }
+
+    /**
+     * Memory budget granularity, permits are counted in KiB.
+     */
+    private static final int PERMIT_SHIFT = 10;
+
+    private final CopyEngine engine;
+
+    private final int jobs;
+
+    /**
+     * In-flight memory budget, null = unbounded.
+     */
+    private final Semaphore memory;
+
+    private final int permitsPerCopy;
+
+    /**
+     * Whether copies, and so their stages, run on virtual threads.
+     */
+    private boolean virtualThreads;
+
+    /**
+     * @param engine engine to copy every task with.
+     * @param jobs amount of concurrent copies.
+     * @param maxMemory cap in bytes on the buffer memory of all copies in flight, any value below 1 = no cap.
+     * @param memoryPerCopy estimated buffer memory in bytes of a single copy with the engine.
+     */
+    public BatchCopier(final CopyEngine engine, final int jobs, final long maxMemory, final long memoryPerCopy) {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("Jobs must be at least 1.");
+        }
+        this.engine = engine;
+        this.jobs = jobs;
+        if (maxMemory > 0) {
+            int maxPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1L, maxMemory >> PERMIT_SHIFT));
+            long perCopy = (memoryPerCopy + (1L << PERMIT_SHIFT) - 1) >> PERMIT_SHIFT;
+            // A copy larger than the whole budget still runs, alone.
+            this.permitsPerCopy = (int) Math.max(1L, Math.min(maxPermits, perCopy));
+            this.memory = new Semaphore(maxPermits, true);
+        } else {
+            this.permitsPerCopy = 0;
+            this.memory = null;
+        }
+    }
+
+    /**
+     * @param virtualThreads whether copies, and so their stages, run on virtual threads. Lets thousands of
+     *                       jobs run at once without an OS thread per blocked stage.
+     */
+    public void setVirtualThreads(final boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Copies all tasks, creating missing output directories. A failing task does not stop the others.
+     * @param tasks tasks to copy.
+     * @return Map of the failed tasks to their exception, in task order. Empty when all succeeded.
+     * @throws InterruptedException on thread interruption, remaining tasks are cancelled.
+     */
+    public Map<CopyTask, Exception> copyAll(final List<CopyTask> tasks) throws InterruptedException {
+        Map<CopyTask, Exception> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+        int poolSize = Math.min(jobs, Math.max(1, tasks.size()));
+        ExecutorService pool = virtualThreads
+                ? Executors.newFixedThreadPool(poolSize, Thread.ofVirtual().name("batch-", 0).factory())
+                : Executors.newFixedThreadPool(poolSize);
+        try {
+            for (CopyTask task : tasks) {
+                pool.execute(() -> {
+                    try {
+                        copy(task);
+                    } catch (IOException | RuntimeException e) {
+                        failures.put(task, e);
+                    } catch (InterruptedException e) {
+                        failures.put(task, e);
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            pool.shutdown();
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Keep waiting, a batch can take hours.
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return failures;
+    }
+
+    /**
+     * Copies a single task within the memory budget.
+     * @param task task to copy.
+     * @throws IOException on read/write error.
+     * @throws InterruptedException on thread interruption.
+     */
+    private void copy(final CopyTask task) throws IOException, InterruptedException {
+        Path parent = task.out().toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        if (memory == null) {
+            engine.copy(task.in(), task.out());
+            return;
+        }
+        memory.acquire(permitsPerCopy);
+        try {
+            engine.copy(task.in(), task.out());
+        } finally {
+            memory.release(permitsPerCopy);
+        }
+    }
+
+    /**
+     * Lists the tasks of a manifest file. Every non-empty line not starting with # holds an input and
+     * an output path separated by a tab.
+     * @param manifest manifest file.
+     * @return List of tasks in manifest order.
+     * @throws IOException on read error, a malformed line, or an output listed twice.
+     */
+    public static List<CopyTask> fromManifest(final Path manifest) throws IOException {
+        List<CopyTask> tasks = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] pair = line.split("\t");
+            if (pair.length != 2) {
+                throw new IOException("Manifest line " + lineNumber + " is not a tab separated input/output pair.");
+            }
+            tasks.add(new CopyTask(Path.of(pair[0]), Path.of(pair[1])));
+        }
+        checkDistinctOutputs(tasks);
+        return tasks;
+    }
+
+    /**
+     * Lists the tasks copying inputs into an output directory. Directories are walked recursively and
+     * their regular files copied with the same relative paths. A single input directory is mirrored
+     * into the output directory itself, multiple inputs each go to output/name.
+     * @param inputs input files and directories.
+     * @param outputDir output directory.
+     * @return List of tasks.
+     * @throws IOException on directory walk error, or inputs of the same name mapping to the same output.
+     */
+    public static List<CopyTask> fromInputs(final List<Path> inputs, final Path outputDir) throws IOException {
+        List<CopyTask> tasks = new ArrayList<>();
+        for (Path input : inputs) {
+            Path target = inputs.size() == 1 && Files.isDirectory(input)
+                    ? outputDir : outputDir.resolve(input.toAbsolutePath().normalize().getFileName().toString());
+            if (!Files.isDirectory(input)) {
+                tasks.add(new CopyTask(input, target));
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(input)) {
+                files.filter(Files::isRegularFile)
+                        .sorted()
+                        .forEach(f -> tasks.add(new CopyTask(f, target.resolve(input.relativize(f).toString()))));
+            }
+        }
+        checkDistinctOutputs(tasks);
+        return tasks;
+    }
+
+    /**
+     * Checks that no two tasks write the same output; the copies would run concurrently and overwrite each other.
+     * @param tasks tasks of a batch.
+     * @throws IOException naming the output and both inputs of the first duplicate.
+     */
+    private static void checkDistinctOutputs(final List<CopyTask> tasks) throws IOException {
+        Map<Path, Path> inputsByOutput = new HashMap<>();
+        for (CopyTask task : tasks) {
+            Path previous = inputsByOutput.putIfAbsent(task.out().toAbsolutePath().normalize(), task.in());
+            if (previous != null) {
+                throw new IOException("Both " + previous + " and " + task.in() + " would be copied to " + task.out());
+            }
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.exceptions.SyncBufferTimeoutException;
+import buutti.buffer.interfaces.ByteSyncBuffer;
+import buutti.buffer.interfaces.CopyEngine;
+import buutti.buffer.interfaces.SyncBuffer;
+import buutti.buffer.util.Throttle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The reader/writer thread pipeline. A reader thread reads blocks from the input into a {@link ByteSyncBuffer},
+ * a writer thread consumes them from the buffer and writes them to the output.
+ * Streams incrementally, so it works for any readable input and writable output, including stdin/stdout,
+ * pipes and devices, with memory bounded by the buffer regardless of the stream length.
+ */
+public class BufferedCopyEngine implements CopyEngine {
+    /**
+     * Size of the blocks moved between the channels and the buffer per read/write call. Matches the default
+     * Linux pipe capacity, so a single read drains a full pipe.
+     */
+    public static final int CHUNK_SIZE = 65536;
+
+    /**
+     * Default size of a write-behind batch, 1 MiB.
+     */
+    public static final int DEFAULT_WRITE_BATCH = 1 << 20;
+
+    /**
+     * Write-behind batches per copy; the writer fills one while the other is written.
+     */
+    public static final int WRITE_BEHIND_BATCHES = 2;
+
+    /**
+     * Chunks of a checksummed copy, the read chunks in flight between the reader, checksum and writer stages.
+     */
+    public static final int CHECKSUM_CHUNKS = 16;
+
+    /**
+     * Open option for direct IO, null when the JDK doesn't have it, see {@link #directOption()}.
+     */
+    private static final OpenOption DIRECT = directOption();
+
+    /**
+     * Creates a fresh buffer for every copy, as a buffer can't be reused once its supplier is exhausted.
+     */
+    private final Supplier<ByteSyncBuffer> bufferFactory;
+
+    private final FlushPolicy flushPolicy;
+
+    /**
+     * Meters the writes, null = unthrottled.
+     */
+    private Throttle throttle;
+
+    /**
+     * Whether copies of regular files seek over zero blocks instead of writing them.
+     */
+    private boolean sparse;
+
+    private SyncPolicy syncPolicy = SyncPolicy.NONE;
+
+    private long syncInterval;
+
+    /**
+     * Whether copies of regular files write aligned batches with direct IO, bypassing the page cache.
+     */
+    private boolean direct;
+
+    /**
+     * Bytes per write-behind batch, 0 = chunks are written by the writer thread as the flush policy says.
+     */
+    private int writeBatch;
+
+    /**
+     * Writes the chunks consumed by the writer thread.
+     */
+    interface ChunkWriter {
+        /**
+         * @param chunk chunk.
+         * @param length bytes of the chunk to write.
+         * @throws IOException on write error.
+         * @throws InterruptedException on thread interruption.
+         */
+        void write(byte[] chunk, int length) throws IOException, InterruptedException;
+
+        /**
+         * Called once after the last chunk.
+         * @throws IOException on write error.
+         * @throws InterruptedException on thread interruption.
+         */
+        default void finish() throws IOException, InterruptedException {
+        }
+    }
+
+    /**
+     * @param bufferFactory creates the buffer between the read/write threads for every copy.
+     */
+    public BufferedCopyEngine(final Supplier<ByteSyncBuffer> bufferFactory) {
+        this(bufferFactory, FlushPolicy.IDLE);
+    }
+
+    /**
+     * @param bufferFactory creates the buffer between the read/write threads for every copy.
+     * @param flushPolicy when the writer hands the consumed bytes to the output.
+     */
+    public BufferedCopyEngine(final Supplier<ByteSyncBuffer> bufferFactory, final FlushPolicy flushPolicy) {
+        this.bufferFactory = bufferFactory;
+        this.flushPolicy = flushPolicy;
+    }
+
+    /**
+     * @param throttle meters the writes of every copy, null to stop throttling.
+     */
+    public void setThrottle(final Throttle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * @param sparse whether copies of regular files seek over all-zero blocks instead of writing them, keeping
+     *               the output sparse. Pipes and devices, and the channel methods, always write every byte.
+     */
+    public void setSparse(final boolean sparse) {
+        this.sparse = sparse;
+    }
+
+    /**
+     * Copies of regular files with a sync policy other than NONE, direct IO or a write batch go through write-behind
+     * batches instead, see {@link #setWriteBatch(int)}, and don't keep the output sparse.
+     * @param syncPolicy when the output is forced to the device. Pipes and devices, and the channel methods, are
+     *                   never forced.
+     * @param syncInterval bytes between forces of the INTERVAL policy, at least 1; ignored by the other policies.
+     */
+    public void setSyncPolicy(final SyncPolicy syncPolicy, final long syncInterval) {
+        if (syncPolicy == SyncPolicy.INTERVAL && syncInterval < 1) {
+            throw new IllegalArgumentException("Sync interval must be at least 1.");
+        }
+        this.syncPolicy = syncPolicy;
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * @param direct whether copies of regular files write file system block aligned batches with
+     *               the JDK's com.sun.nio.file.ExtendedOpenOption.DIRECT, so a large copy doesn't push everything else out of the page
+     *               cache. Falls back to writes through the page cache where the platform or file system doesn't
+     *               support direct IO.
+     */
+    public void setDirect(final boolean direct) {
+        this.direct = direct;
+    }
+
+    /**
+     * @param writeBatch bytes per write of copies of regular files, 0 for the default of
+     *                   {@link #DEFAULT_WRITE_BATCH} with a sync policy or direct IO, and otherwise for no batching.
+     *                   The writer thread collects consumed chunks into a batch and hands it to a flusher thread,
+     *                   which writes and syncs it while the next batch is collected.
+     */
+    public void setWriteBatch(final int writeBatch) {
+        if (writeBatch < 0) {
+            throw new IllegalArgumentException("Write batch can't be negative.");
+        }
+        this.writeBatch = writeBatch;
+    }
+
+    @Override
+    public void copy(final Path in, final Path out) throws IOException, InterruptedException {
+        List<OpenOption> options = new ArrayList<>(List.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING));
+        if (syncPolicy == SyncPolicy.DSYNC) {
+            options.add(StandardOpenOption.DSYNC);
+        }
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, options.toArray(OpenOption[]::new))) {
+            if (!Files.isRegularFile(out)) {
+                copy(src, dst);
+            } else if (syncPolicy != SyncPolicy.NONE || direct || writeBatch > 0) {
+                copyBehind(src, dst, out);
+            } else if (sparse) {
+                copySparse(src, dst);
+            } else {
+                copy(src, dst);
+            }
+        }
+    }
+
+    /**
+     * Copies through write-behind batches, written by a flusher thread; with direct IO when requested and supported.
+     * @param src input channel.
+     * @param dst output channel of a regular file.
+     * @param out output path, reopened for direct IO.
+     * @throws IOException on the first read/write error of any thread.
+     * @throws InterruptedException on thread interruption.
+     */
+    private void copyBehind(final FileChannel src, final FileChannel dst, final Path out)
+            throws IOException, InterruptedException {
+        int alignment = direct ? directAlignment(out) : 0;
+        try (FileChannel directDst = alignment > 0 ? openDirect(out) : null;
+             ByteSyncBuffer sb = bufferFactory.get()) {
+            DurableWriter writer = new DurableWriter(directDst != null ? directDst : dst,
+                    writeBatch > 0 ? writeBatch : DEFAULT_WRITE_BATCH, directDst != null ? alignment : 1,
+                    syncPolicy, syncInterval, throttle);
+            StageThreads.runAll(() -> read(src, sb), () -> write(sb, writer, flushPolicy), writer::flush);
+        }
+    }
+
+    /**
+     * @param out existing regular file.
+     * @return int block size of the file system of the file, the unit direct IO writes must be aligned to;
+     * 0 when it is unknown.
+     */
+    private static int directAlignment(final Path out) {
+        try {
+            long blockSize = Files.getFileStore(out).getBlockSize();
+            return blockSize > 0 && blockSize <= (1 << 16) && Long.bitCount(blockSize) == 1 ? (int) blockSize : 0;
+        } catch (IOException | UnsupportedOperationException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @param out existing regular file.
+     * @return FileChannel writing the file with direct IO, DSYNC as the sync policy says; null when the platform
+     * or the file system doesn't support it.
+     */
+    private FileChannel openDirect(final Path out) {
+        if (DIRECT == null) {
+            return null;
+        }
+        List<OpenOption> options = new ArrayList<>(List.of(StandardOpenOption.WRITE, DIRECT));
+        if (syncPolicy == SyncPolicy.DSYNC) {
+            options.add(StandardOpenOption.DSYNC);
+        }
+        try {
+            return FileChannel.open(out, options.toArray(OpenOption[]::new));
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Looks up the direct IO open option by name, as com.sun.nio.file.ExtendedOpenOption is a JDK specific API
+     * that isn't there on every JDK.
+     * @return OpenOption ExtendedOpenOption.DIRECT, null when the JDK doesn't have it.
+     */
+    private static OpenOption directOption() {
+        try {
+            for (Object constant : Class.forName("com.sun.nio.file.ExtendedOpenOption").getEnumConstants()) {
+                if (constant instanceof OpenOption option && ((Enum<?>) constant).name().equals("DIRECT")) {
+                    return option;
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            // Not a JDK with extended open options.
+        }
+        return null;
+    }
+
+    /**
+     * Copies seeking over the zero blocks.
+     * @param src input channel.
+     * @param dst output channel of a regular file.
+     * @throws IOException on the first read/write error of either thread.
+     * @throws InterruptedException on thread interruption.
+     */
+    private void copySparse(final FileChannel src, final FileChannel dst) throws IOException, InterruptedException {
+        try (ByteSyncBuffer sb = bufferFactory.get()) {
+            SparseWriter writer = new SparseWriter(dst, throttle);
+            StageThreads.runAll(() -> read(src, sb), () -> write(sb, writer, flushPolicy));
+        }
+    }
+
+    /**
+     * Starts the read/write threads together with parsing through the buffer. Awaits threads to finish before exit.
+     * The channels are not closed.
+     * @param in input channel
+     * @param out output channel
+     * @throws IOException on the first read/write error of either thread.
+     * @throws InterruptedException on thread interruption.
+     */
+    public void copy(final ReadableByteChannel in, final WritableByteChannel out) throws IOException, InterruptedException {
+        try (ByteSyncBuffer sb = bufferFactory.get()) {
+            StageThreads.runAll(() -> read(in, sb), () -> write(sb, dense(out, throttle), flushPolicy));
+        }
+    }
+
+    /**
+     * Same as {@link #copy(ReadableByteChannel, WritableByteChannel)}, as a {@link Pipeline} with a checksum stage
+     * between the reader and the writer. The read chunks are handed on by reference and recycled through a pool of
+     * {@link #CHECKSUM_CHUNKS}, so blocks are hashed while the previous ones are written and the copy runs at the
+     * pace of the slower of the two. Every stage only waits on its neighbours, without a timeout.
+     * @param in input channel
+     * @param out output channel
+     * @param checksum checksum algorithm.
+     * @return byte[] checksum of the copied bytes.
+     * @throws IOException on the first read/write error of any thread.
+     * @throws InterruptedException on thread interruption.
+     */
+    public byte[] copy(final ReadableByteChannel in, final WritableByteChannel out, final ChecksumAlgorithm checksum)
+            throws IOException, InterruptedException {
+        ChecksumAlgorithm.Digest digest = checksum.newDigest();
+        SyncBuffer<ByteBuffer> free = Pipeline.chunkPool(CHECKSUM_CHUNKS, CHUNK_SIZE);
+        Pipeline.Sink<ByteBuffer> sink = Pipeline.channelSink(out, free);
+        Throttle throttle = this.throttle;
+        Pipeline.from(Pipeline.channelSource(in, free))
+                .through(CHECKSUM_CHUNKS, (ByteBuffer chunk, Pipeline.Output<ByteBuffer> hashed) -> {
+                    digest.update(chunk.duplicate());
+                    hashed.emit(chunk);
+                })
+                .to(CHECKSUM_CHUNKS, chunk -> {
+                    if (throttle != null) {
+                        throttle.acquire(chunk.remaining());
+                    }
+                    sink.accept(chunk);
+                })
+                .run();
+        return digest.finish();
+    }
+
+    /**
+     * Read method. Reads blocks from the input channel and writes them to the buffer.
+     * Every read is supplied as soon as it returns, so partial reads of a pipe are passed on immediately.
+     * @param in channel to read from.
+     * @param sb SyncBuffer object for writing buffer.
+     * @throws IOException on read/buffer error; {@link SyncBufferTimeoutException} when the buffer stays full
+     * for its timeout.
+     * @throws InterruptedException on thread interruption.
+     */
+    static void read(final ReadableByteChannel in, final ByteSyncBuffer sb) throws IOException, InterruptedException {
+        try {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            ByteBuffer chunkBuffer = ByteBuffer.wrap(chunk);
+            int r = 0;
+            while ((r = in.read(chunkBuffer.clear())) != -1) {
+                sb.supply(chunk, 0, r);
+            }
+        } finally {
+            sb.close();
+        }
+    }
+
+    /**
+     * Write method. Reads blocks from the buffer and writes them to the output channel as the flush policy says.
+     * @param sb SyncBuffer object for reading buffer.
+     * @param out writes the chunks.
+     * @param flushPolicy when to write the consumed bytes.
+     * @throws IOException on write/buffer error; {@link SyncBufferTimeoutException} when the buffer stays empty
+     * for its timeout before the reader is done.
+     * @throws InterruptedException on thread interruption.
+     */
+    static void write(final ByteSyncBuffer sb, final ChunkWriter out, final FlushPolicy flushPolicy)
+            throws IOException, InterruptedException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int pending = 0;
+        while (true) {
+            try {
+                pending += sb.consume(chunk, pending, chunk.length - pending);
+                if (pending == chunk.length || flushPolicy == FlushPolicy.ALWAYS
+                        || (flushPolicy == FlushPolicy.IDLE && sb.isEmpty())) {
+                    out.write(chunk, pending);
+                    pending = 0;
+                }
+            } catch (SyncBufferTimeoutException e) {
+                if (sb.isEmpty() && sb.isSupplierIsExhausted()) {
+                    break;
+                }
+                throw e;
+            } catch (SyncBufferSupplierExhaustedException e) {
+                // No more items.
+                break;
+            }
+        }
+        out.write(chunk, pending);
+        out.finish();
+    }
+
+    /**
+     * @param out channel to write to.
+     * @param throttle meters the writes, null = unthrottled.
+     * @return ChunkWriter writing every byte.
+     */
+    static ChunkWriter dense(final WritableByteChannel out, final Throttle throttle) {
+        return (chunk, length) -> writeFully(out, chunk, length, throttle);
+    }
+
+    private static void writeFully(final WritableByteChannel out, final byte[] chunk, final int length,
+                                   final Throttle throttle) throws IOException, InterruptedException {
+        if (throttle != null && length > 0) {
+            throttle.acquire(length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, length);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
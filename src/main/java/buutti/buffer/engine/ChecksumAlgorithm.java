@@ -0,0 +1,113 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.util.XxHash64;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * Checksums computed inline by the buffered pipeline.
+ */
+public enum ChecksumAlgorithm {
+    /**
+     * CRC32C, hardware accelerated on most CPUs. Fastest, detects corruption but not tampering.
+     */
+    CRC32C,
+    /**
+     * SHA-256, sidecar files are compatible with sha256sum -c.
+     */
+    SHA256,
+    /**
+     * XXH64, fast non-cryptographic 64 bit hash, digests match xxhsum -H1.
+     */
+    XXH64;
+
+    /**
+     * An incremental digest of a single stream.
+     */
+    public interface Digest {
+        void update(byte[] b, int off, int len);
+
+        void update(ByteBuffer buffer);
+
+        /**
+         * @return byte[] the digest, big-endian for the checksums.
+         */
+        byte[] finish();
+    }
+
+    /**
+     * @return Digest a new digest of this algorithm.
+     */
+    public Digest newDigest() {
+        return switch (this) {
+            case CRC32C -> checksumDigest(new CRC32C(), 4);
+            case XXH64 -> checksumDigest(new XxHash64(), 8);
+            case SHA256 -> messageDigest("SHA-256");
+        };
+    }
+
+    /**
+     * @return String file extension of the sidecar digest file.
+     */
+    public String extension() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    private static Digest checksumDigest(final Checksum checksum, final int bytes) {
+        return new Digest() {
+            @Override
+            public void update(final byte[] b, final int off, final int len) {
+                checksum.update(b, off, len);
+            }
+
+            @Override
+            public void update(final ByteBuffer buffer) {
+                checksum.update(buffer);
+            }
+
+            @Override
+            public byte[] finish() {
+                return toBytes(checksum.getValue(), bytes);
+            }
+        };
+    }
+
+    private static byte[] toBytes(final long value, final int bytes) {
+        byte[] retval = new byte[bytes];
+        for (int i = 0; i < bytes; i++) {
+            retval[i] = (byte) (value >>> (8 * (bytes - 1 - i)));
+        }
+        return retval;
+    }
+
+    private static Digest messageDigest(final String algorithm) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            // Every JDK provides SHA-256.
+            throw new IllegalStateException(e);
+        }
+        return new Digest() {
+            @Override
+            public void update(final byte[] b, final int off, final int len) {
+                md.update(b, off, len);
+            }
+
+            @Override
+            public void update(final ByteBuffer buffer) {
+                md.update(buffer);
+            }
+
+            @Override
+            public byte[] finish() {
+                return md.digest();
+            }
+        };
+    }
+}
@@ -0,0 +1,101 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.interfaces.CopyEngine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Copies with the buffered pipeline while computing a checksum inline, writes it to a sidecar file next to
+ * the output ("out.sha256" for out, in the "digest  name" format of the coreutils *sum tools) and optionally
+ * verifies the written output by reading it back.
+ */
+public class ChecksumCopyEngine implements CopyEngine {
+    /**
+     * Read size of the verification pass.
+     */
+    private static final int VERIFY_CHUNK_SIZE = 4 << 20;
+
+    private final BufferedCopyEngine engine;
+
+    private final ChecksumAlgorithm algorithm;
+
+    private final boolean verify;
+
+    /**
+     * @param engine buffered pipeline to copy and checksum with.
+     * @param algorithm checksum algorithm.
+     * @param verify whether to read the output back and compare its checksum.
+     */
+    public ChecksumCopyEngine(final BufferedCopyEngine engine, final ChecksumAlgorithm algorithm, final boolean verify) {
+        this.engine = engine;
+        this.algorithm = algorithm;
+        this.verify = verify;
+    }
+
+    @Override
+    public void copy(final Path in, final Path out) throws IOException, InterruptedException {
+        byte[] digest;
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            digest = engine.copy(src, dst, algorithm);
+        }
+        writeSidecar(out, algorithm, digest);
+        if (verify) {
+            verify(out, algorithm, digest);
+        }
+    }
+
+    /**
+     * @param out output path.
+     * @param algorithm checksum algorithm.
+     * @return Path sidecar digest file of the output.
+     */
+    public static Path sidecar(final Path out, final ChecksumAlgorithm algorithm) {
+        return out.resolveSibling(out.getFileName() + "." + algorithm.extension());
+    }
+
+    /**
+     * Writes the digest of the output to its sidecar file.
+     * @param out output path.
+     * @param algorithm checksum algorithm.
+     * @param digest digest of the output.
+     * @throws IOException on write error.
+     */
+    public static void writeSidecar(final Path out, final ChecksumAlgorithm algorithm, final byte[] digest)
+            throws IOException {
+        Files.writeString(sidecar(out, algorithm), HexFormat.of().formatHex(digest) + "  " + out.getFileName() + "\n",
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the file back with large sequential reads and compares its digest.
+     * @param file file to verify.
+     * @param algorithm checksum algorithm.
+     * @param expected expected digest.
+     * @throws IOException on read error, or when the digest differs.
+     */
+    public static void verify(final Path file, final ChecksumAlgorithm algorithm, final byte[] expected)
+            throws IOException {
+        ChecksumAlgorithm.Digest digest = algorithm.newDigest();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer chunk = ByteBuffer.allocateDirect(VERIFY_CHUNK_SIZE);
+            while (channel.read(chunk.clear()) != -1) {
+                digest.update(chunk.flip());
+            }
+        }
+        byte[] actual = digest.finish();
+        if (!Arrays.equals(expected, actual)) {
+            throw new IOException("Verification of " + file + " failed, " + algorithm + " is "
+                    + HexFormat.of().formatHex(actual) + " instead of " + HexFormat.of().formatHex(expected));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package buutti.buffer.engine;
+
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Compressed stream formats written by {@link CompressionCopyEngine}. Both wrap raw deflate data.
+ */
+public enum Compression {
+    /**
+     * gzip (RFC 1952), readable with gunzip.
+     */
+    GZIP,
+    /**
+     * zlib (RFC 1950), the format of {@link java.util.zip.DeflaterOutputStream} and HTTP deflate.
+     */
+    DEFLATE;
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final byte[] ZLIB_HEADER = {0x78, (byte) 0x9c};
+
+    /**
+     * @return byte[] stream header.
+     */
+    byte[] header() {
+        return this == GZIP ? GZIP_HEADER.clone() : ZLIB_HEADER.clone();
+    }
+
+    /**
+     * @return Checksum check value of the trailer, over the uncompressed data.
+     */
+    Checksum newCheck() {
+        return this == GZIP ? new CRC32() : new Adler32();
+    }
+
+    /**
+     * @param check check value over the uncompressed data.
+     * @param size uncompressed size.
+     * @return byte[] stream trailer; little-endian CRC32 and size for gzip, big-endian Adler32 for zlib.
+     */
+    byte[] trailer(final long check, final long size) {
+        if (this == GZIP) {
+            byte[] trailer = new byte[8];
+            for (int i = 0; i < 4; i++) {
+                trailer[i] = (byte) (check >>> (8 * i));
+                trailer[4 + i] = (byte) (size >>> (8 * i));
+            }
+            return trailer;
+        }
+        byte[] trailer = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            trailer[i] = (byte) (check >>> (8 * (3 - i)));
+        }
+        return trailer;
+    }
+}
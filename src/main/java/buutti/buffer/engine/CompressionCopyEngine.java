@@ -0,0 +1,473 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.interfaces.CopyEngine;
+import buutti.buffer.interfaces.SyncBuffer;
+import buutti.buffer.util.StripedSyncBuffer;
+import buutti.buffer.util.SyncBufferImpl;
+import buutti.buffer.util.Throttle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compresses or decompresses while copying, in a single streaming pass.
+ * <p>
+ * Compression splits the input into blocks and deflates them in parallel on worker threads between the reader
+ * and the writer, each with a Deflater of its own that is reset for every block. Like pigz, every block is
+ * primed with the last 32 KiB of the block before it and ends with a sync flush, so the blocks concatenate into
+ * a single standard gzip or zlib stream. The reader computes the trailer check value while reading, the writer
+ * writes the compressed blocks in input order. The block arrays are recycled through a free pool once the writer
+ * no longer needs them, i.e. after the block and the block primed with it are written.
+ * <p>
+ * Decompression, which can't be split, inflates on a single thread between the reader and the writer. The
+ * format, gzip (including concatenated members) or zlib, is detected from the stream header.
+ */
+public class CompressionCopyEngine implements CopyEngine {
+    /**
+     * Size of an independently compressed block, and of the chunks read and decompressed.
+     */
+    public static final int BLOCK_SIZE = 256 << 10;
+
+    /**
+     * Deflate window size, the amount of the previous block a block is primed with.
+     */
+    private static final int DICTIONARY_SIZE = 32 << 10;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Output format, null when decompressing.
+     */
+    private final Compression compression;
+
+    private final int threads;
+
+    /**
+     * Meters the writes, null = unthrottled.
+     */
+    private Throttle throttle;
+
+    /**
+     * @param compression output format, null when decompressing.
+     * @param threads amount of compressing threads.
+     */
+    private CompressionCopyEngine(final Compression compression, final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be at least 1.");
+        }
+        this.compression = compression;
+        this.threads = threads;
+    }
+
+    /**
+     * @param compression output format.
+     * @param threads amount of compressing threads.
+     * @return CompressionCopyEngine compressing the input.
+     */
+    public static CompressionCopyEngine compressing(final Compression compression, final int threads) {
+        if (compression == null) {
+            throw new IllegalArgumentException("Compression must be given.");
+        }
+        return new CompressionCopyEngine(compression, threads);
+    }
+
+    /**
+     * @return CompressionCopyEngine decompressing gzip or zlib input.
+     */
+    public static CompressionCopyEngine decompressing() {
+        return new CompressionCopyEngine(null, 1);
+    }
+
+    /**
+     * @param throttle meters the writes of every copy, null to stop throttling.
+     */
+    public void setThrottle(final Throttle throttle) {
+        this.throttle = throttle;
+    }
+
+    @Override
+    public void copy(final Path in, final Path out) throws IOException, InterruptedException {
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            copy(src, dst);
+        }
+    }
+
+    /**
+     * Compresses or decompresses from the input channel to the output channel.
+     * @param in input channel, may be stdin.
+     * @param out output channel, may be stdout.
+     * @throws IOException on read/write error, or on corrupt compressed input.
+     * @throws InterruptedException on thread interruption.
+     */
+    public void copy(final ReadableByteChannel in, final WritableByteChannel out)
+            throws IOException, InterruptedException {
+        if (compression == null) {
+            SyncBuffer<byte[]> raw = new SyncBufferImpl<>(4, -1L);
+            SyncBuffer<byte[]> inflated = new SyncBufferImpl<>(4, -1L);
+            StageThreads.runAll(() -> readChunks(in, raw), () -> inflate(raw, inflated),
+                    () -> writeChunks(inflated, out, throttle));
+            return;
+        }
+        // Blocks in flight are bounded by the ordered queue; twice the workers keeps all of them busy.
+        StripedSyncBuffer<Block> blocks = new StripedSyncBuffer<>(2 * threads, threads, 1, -1L);
+        SyncBuffer<Block> ordered = new SyncBufferImpl<>(2 * threads, -1L);
+        // Besides the ordered queue, the reader holds a block and the writer the current and the previous one.
+        int poolSize = 2 * threads + 3;
+        SyncBuffer<byte[]> free = new SyncBufferImpl<>(poolSize, -1L);
+        StageThreads.Stage[] stages = new StageThreads.Stage[threads + 2];
+        stages[0] = () -> readBlocks(in, free, poolSize, blocks, ordered);
+        for (int i = 1; i <= threads; i++) {
+            stages[i] = () -> compressBlocks(blocks);
+        }
+        stages[threads + 1] = () -> writeBlocks(ordered, free, out, throttle);
+        StageThreads.runAll(stages);
+    }
+
+    /**
+     * An input block and its compressed form.
+     * @param data input block.
+     * @param length bytes of the block.
+     * @param previous previous block, whose tail primes the compression, or null for the first block.
+     * @param header bytes written before the compressed block.
+     * @param trailer bytes written after the compressed block.
+     * @param last whether this is the final block of the stream.
+     * @param compressed header, compressed block and trailer, completed by a worker.
+     */
+    private record Block(byte[] data, int length, byte[] previous, byte[] header, byte[] trailer, boolean last,
+                         CompletableFuture<byte[]> compressed) {
+    }
+
+    /**
+     * Reader stage of compression. Reads full blocks, updates the check value and hands every block both to the
+     * workers and, in input order, to the writer. Block arrays are allocated up to the pool size, then taken from
+     * the free pool.
+     * @param in input channel.
+     * @param free block arrays returned by the writer.
+     * @param poolSize maximum amount of block arrays.
+     * @param blocks blocks to compress.
+     * @param ordered blocks in input order.
+     * @throws IOException on read/buffer error.
+     * @throws InterruptedException on thread interruption.
+     */
+    private void readBlocks(final ReadableByteChannel in, final SyncBuffer<byte[]> free, final int poolSize,
+                            final StripedSyncBuffer<Block> blocks, final SyncBuffer<Block> ordered)
+            throws IOException, InterruptedException {
+        try {
+            Checksum check = compression.newCheck();
+            long size = 0;
+            byte[] header = compression.header();
+            byte[] previous = null;
+            int allocated = 0;
+            while (true) {
+                byte[] data;
+                if (free.isEmpty() && allocated < poolSize) {
+                    data = new byte[BLOCK_SIZE];
+                    allocated++;
+                } else {
+                    data = free.consume();
+                }
+                int n = readFully(in, data);
+                check.update(data, 0, n);
+                size += n;
+                // A short block ends the input; an input of whole blocks ends with an empty one.
+                boolean last = n < BLOCK_SIZE;
+                Block block = new Block(data, n, previous, header,
+                        last ? compression.trailer(check.getValue(), size) : EMPTY, last, new CompletableFuture<>());
+                ordered.supply(block);
+                blocks.supply(block);
+                if (last) {
+                    return;
+                }
+                previous = data;
+                header = EMPTY;
+            }
+        } finally {
+            blocks.supplierIsExhausted();
+            ordered.supplierIsExhausted();
+        }
+    }
+
+    /**
+     * Worker stage of compression. Deflates blocks with a reused Deflater until the blocks run out.
+     * @param blocks blocks to compress.
+     * @throws IOException on buffer error.
+     * @throws InterruptedException on thread interruption.
+     */
+    private static void compressBlocks(final StripedSyncBuffer<Block> blocks) throws IOException, InterruptedException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        byte[] buf = new byte[64 << 10];
+        try {
+            while (true) {
+                Block block;
+                try {
+                    block = blocks.consume();
+                } catch (SyncBufferSupplierExhaustedException e) {
+                    return;
+                }
+                try {
+                    block.compressed().complete(deflate(deflater, buf, block));
+                } catch (RuntimeException e) {
+                    block.compressed().completeExceptionally(e);
+                    throw e;
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Deflates a single block into raw deflate data that continues the stream of the blocks before it.
+     * @param deflater deflater, reset for the block.
+     * @param buf output buffer.
+     * @param block block to compress.
+     * @return byte[] header, compressed block and trailer.
+     */
+    private static byte[] deflate(final Deflater deflater, final byte[] buf, final Block block) {
+        deflater.reset();
+        if (block.previous() != null) {
+            deflater.setDictionary(block.previous(), BLOCK_SIZE - DICTIONARY_SIZE, DICTIONARY_SIZE);
+        }
+        deflater.setInput(block.data(), 0, block.length());
+        ByteArrayOutputStream out = new ByteArrayOutputStream(block.length() / 2 + 64);
+        out.writeBytes(block.header());
+        if (block.last()) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+        } else {
+            // A sync flush ends the block on a byte boundary without ending the stream; it is complete once
+            // the output buffer is no longer filled up.
+            int n;
+            do {
+                n = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                out.write(buf, 0, n);
+            } while (n == buf.length);
+        }
+        out.writeBytes(block.trailer());
+        return out.toByteArray();
+    }
+
+    /**
+     * Writer stage of compression. Writes the compressed blocks in input order, waiting for each in turn. Once a
+     * block is written, the block before it primed a finished compression and its array is returned to the pool.
+     * @param ordered blocks in input order.
+     * @param free block arrays to reuse.
+     * @param out output channel.
+     * @param throttle meters the writes, null = unthrottled.
+     * @throws IOException on write/buffer error, or when compressing a block failed.
+     * @throws InterruptedException on thread interruption.
+     */
+    private static void writeBlocks(final SyncBuffer<Block> ordered, final SyncBuffer<byte[]> free,
+                                    final WritableByteChannel out, final Throttle throttle)
+            throws IOException, InterruptedException {
+        byte[] previous = null;
+        while (true) {
+            Block block;
+            try {
+                block = ordered.consume();
+            } catch (SyncBufferSupplierExhaustedException e) {
+                return;
+            }
+            try {
+                writeFully(out, block.compressed().get(), throttle);
+            } catch (ExecutionException e) {
+                throw new IOException("Compressing a block failed", e.getCause());
+            }
+            if (previous != null) {
+                free.supply(previous);
+            }
+            previous = block.data();
+        }
+    }
+
+    /**
+     * Reader stage of decompression. Supplies the input in chunks.
+     * @param in input channel.
+     * @param raw compressed chunks.
+     * @throws IOException on read/buffer error.
+     * @throws InterruptedException on thread interruption.
+     */
+    private static void readChunks(final ReadableByteChannel in, final SyncBuffer<byte[]> raw)
+            throws IOException, InterruptedException {
+        try {
+            while (true) {
+                byte[] chunk = new byte[BLOCK_SIZE];
+                int n = readFully(in, chunk);
+                if (n > 0) {
+                    raw.supply(n < BLOCK_SIZE ? Arrays.copyOf(chunk, n) : chunk);
+                }
+                if (n < BLOCK_SIZE) {
+                    return;
+                }
+            }
+        } finally {
+            raw.supplierIsExhausted();
+        }
+    }
+
+    /**
+     * Transform stage of decompression. Inflates the compressed chunks, detecting gzip from its magic bytes and
+     * taking anything else as zlib.
+     * @param raw compressed chunks.
+     * @param inflated decompressed chunks.
+     * @throws IOException on buffer error, or on corrupt compressed input.
+     * @throws InterruptedException on thread interruption.
+     */
+    private static void inflate(final SyncBuffer<byte[]> raw, final SyncBuffer<byte[]> inflated)
+            throws IOException, InterruptedException {
+        Inflater inflater = new Inflater();
+        try (PushbackInputStream pis = new PushbackInputStream(new ChunkInputStream(raw), 2)) {
+            byte[] magic = pis.readNBytes(2);
+            pis.unread(magic);
+            boolean gzip = magic.length == 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b;
+            InputStream is = gzip ? new GZIPInputStream(pis, BLOCK_SIZE) : new InflaterInputStream(pis, inflater, BLOCK_SIZE);
+            while (true) {
+                byte[] chunk = is.readNBytes(BLOCK_SIZE);
+                if (chunk.length > 0) {
+                    inflated.supply(chunk);
+                }
+                if (chunk.length < BLOCK_SIZE) {
+                    return;
+                }
+            }
+        } catch (ChunkInputStream.Interrupted e) {
+            throw (InterruptedException) e.getCause();
+        } finally {
+            inflater.end();
+            inflated.supplierIsExhausted();
+        }
+    }
+
+    /**
+     * Writer stage of decompression.
+     * @param inflated decompressed chunks.
+     * @param out output channel.
+     * @param throttle meters the writes, null = unthrottled.
+     * @throws IOException on write/buffer error.
+     * @throws InterruptedException on thread interruption.
+     */
+    private static void writeChunks(final SyncBuffer<byte[]> inflated, final WritableByteChannel out,
+                                    final Throttle throttle) throws IOException, InterruptedException {
+        while (true) {
+            try {
+                writeFully(out, inflated.consume(), throttle);
+            } catch (SyncBufferSupplierExhaustedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads until the array is full or the input ends.
+     * @param in input channel.
+     * @param data array to fill.
+     * @return int bytes read, less than the array length only at the end of the input.
+     * @throws IOException on read error.
+     */
+    private static int readFully(final ReadableByteChannel in, final byte[] data) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        while (bb.hasRemaining()) {
+            if (in.read(bb) == -1) {
+                break;
+            }
+        }
+        return bb.position();
+    }
+
+    private static void writeFully(final WritableByteChannel out, final byte[] data, final Throttle throttle)
+            throws IOException, InterruptedException {
+        if (throttle != null) {
+            throttle.acquire(data.length);
+        }
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        while (bb.hasRemaining()) {
+            out.write(bb);
+        }
+    }
+
+    /**
+     * InputStream over the chunks of a buffer, ending when the buffer is exhausted.
+     */
+    private static final class ChunkInputStream extends InputStream {
+        /**
+         * Carries an interruption through the InputStream methods, which can only throw IOException.
+         */
+        private static final class Interrupted extends IOException {
+            private static final long serialVersionUID = 1L;
+
+            private Interrupted(final InterruptedException e) {
+                super(e);
+            }
+        }
+
+        private final SyncBuffer<byte[]> chunks;
+
+        private byte[] chunk = EMPTY;
+
+        private int position;
+
+        private boolean exhausted;
+
+        private ChunkInputStream(final SyncBuffer<byte[]> chunks) {
+            this.chunks = chunks;
+        }
+
+        /**
+         * @return boolean whether a chunk with bytes left is current, false at the end of the input.
+         * @throws IOException on buffer error.
+         */
+        private boolean fill() throws IOException {
+            while (!exhausted && position == chunk.length) {
+                try {
+                    chunk = chunks.consume();
+                    position = 0;
+                } catch (SyncBufferSupplierExhaustedException e) {
+                    exhausted = true;
+                } catch (InterruptedException e) {
+                    throw new Interrupted(e);
+                }
+            }
+            return position < chunk.length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? chunk[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+}
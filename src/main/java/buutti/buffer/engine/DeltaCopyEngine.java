@@ -0,0 +1,332 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.interfaces.CopyEngine;
+import buutti.buffer.util.Throttle;
+import buutti.buffer.util.XxHash64;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Incremental engine for outputs that already hold an earlier copy of the input. Input and output are split into
+ * fixed size blocks and hashed with XXH64, both sides at once on threads of their own with large sequential reads;
+ * only the runs of blocks whose hashes differ are read again from the input and written to the output, which is
+ * then truncated to the input size. A nightly copy of a large file thus writes, and with an index reads from the
+ * output, only what changed.
+ * <p>
+ * With the index, the block hashes of the output are kept in a sidecar file next to it ("out.blockindex"), so the
+ * next copy reads the output only when it changed since (different size or modification time). The output is
+ * forced to disk before the index is replaced. The index is trusted on the size and the millisecond modification
+ * time, spot checked by hashing the first and the last block of the output again; a change elsewhere that keeps
+ * both, e.g. a rewrite with the timestamp restored, goes unnoticed until the index is deleted.
+ * Inputs that are not regular files, and outputs that exist but are not regular files, are copied with the
+ * fallback engine, as are missing outputs without the index.
+ */
+public class DeltaCopyEngine implements CopyEngine {
+    /**
+     * Default block size, 1 MiB.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    /**
+     * Size of a single read/write, rounded down to whole blocks.
+     */
+    public static final int READ_SIZE = 4 << 20;
+
+    private final int blockSize;
+
+    private final boolean index;
+
+    private final CopyEngine fallback;
+
+    /**
+     * Meters the writes, null = unthrottled.
+     */
+    private Throttle throttle;
+
+    /**
+     * @param blockSize bytes per compared block.
+     * @param index whether the output block hashes are kept in a sidecar index.
+     * @param fallback engine used when the input or output is not a regular file.
+     */
+    public DeltaCopyEngine(final int blockSize, final boolean index, final CopyEngine fallback) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be at least 1.");
+        }
+        this.blockSize = blockSize;
+        this.index = index;
+        this.fallback = fallback;
+    }
+
+    /**
+     * @param out output path.
+     * @return Path block index file of the output.
+     */
+    public static Path indexFile(final Path out) {
+        return out.resolveSibling(out.getFileName() + ".blockindex");
+    }
+
+    /**
+     * @param throttle meters the writes of every copy, null to stop throttling.
+     */
+    public void setThrottle(final Throttle throttle) {
+        this.throttle = throttle;
+    }
+
+    @Override
+    public void copy(final Path in, final Path out) throws IOException, InterruptedException {
+        if (!Files.isRegularFile(in) || (Files.exists(out) && !Files.isRegularFile(out))
+                || (!index && !Files.exists(out))) {
+            fallback.copy(in, out);
+            return;
+        }
+        Path indexFile = indexFile(out);
+        BlockIndex cached = index ? BlockIndex.load(indexFile) : null;
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE)) {
+            long size = src.size();
+            long dstSize = dst.size();
+            boolean cacheValid = cached != null && cached.blockSize() == blockSize && cached.size() == dstSize
+                    && cached.modified() == Files.getLastModifiedTime(out).toMillis()
+                    && endsMatch(dst, dstSize, cached.hashes());
+            long[][] hashes = new long[2][];
+            if (cacheValid) {
+                hashes[1] = cached.hashes();
+                hashes[0] = hashBlocks(src, size);
+            } else {
+                StageThreads.runAll(() -> hashes[0] = hashBlocks(src, size), () -> hashes[1] = hashBlocks(dst, dstSize));
+            }
+            writeChanged(src, dst, size, dstSize, hashes[0], hashes[1]);
+            if (dstSize > size) {
+                dst.truncate(size);
+            }
+            if (index) {
+                // The output must be on disk before the index claims it is.
+                dst.force(false);
+                new BlockIndex(size, Files.getLastModifiedTime(out).toMillis(), blockSize, hashes[0]).store(indexFile);
+            }
+        }
+    }
+
+    /**
+     * Hashes every block of a file with large sequential reads.
+     * @param channel file.
+     * @param size bytes to hash.
+     * @return long[] XXH64 of every block, the last one possibly partial.
+     * @throws IOException on read error, when the file shrinks or has too many blocks.
+     * @throws InterruptedException on thread interruption.
+     */
+    private long[] hashBlocks(final FileChannel channel, final long size) throws IOException, InterruptedException {
+        long[] hashes = new long[blockCount(size)];
+        byte[] chunk = new byte[readSize()];
+        ByteBuffer chunkBuffer = ByteBuffer.wrap(chunk);
+        XxHash64 hash = new XxHash64();
+        for (long position = 0; position < size; ) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            int length = (int) Math.min(chunk.length, size - position);
+            readFully(channel, chunkBuffer.clear().limit(length), position);
+            for (int off = 0; off < length; off += blockSize) {
+                hash.reset();
+                hash.update(chunk, off, Math.min(blockSize, length - off));
+                hashes[(int) ((position + off) / blockSize)] = hash.getValue();
+            }
+            position += length;
+        }
+        return hashes;
+    }
+
+    /**
+     * Spot checks the block hashes of an index against the output, hashing its first and last block again.
+     * @param dst output channel.
+     * @param dstSize output size.
+     * @param hashes block hashes of the index.
+     * @return boolean whether both blocks still have the hashes of the index.
+     * @throws IOException on read error, or when the output shrinks.
+     */
+    private boolean endsMatch(final FileChannel dst, final long dstSize, final long[] hashes) throws IOException {
+        if (hashes.length == 0) {
+            return true;
+        }
+        ByteBuffer block = ByteBuffer.allocate((int) Math.min(blockSize, dstSize));
+        XxHash64 hash = new XxHash64();
+        for (int i : new int[] {0, hashes.length - 1}) {
+            long position = (long) i * blockSize;
+            readFully(dst, block.clear().limit((int) Math.min(blockSize, dstSize - position)), position);
+            hash.reset();
+            hash.update(block.array(), 0, block.limit());
+            if (hash.getValue() != hashes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the runs of blocks that differ, or that the output lacks, from the input to the output.
+     * @param src input channel.
+     * @param dst output channel.
+     * @param size input size.
+     * @param dstSize output size before the copy.
+     * @param srcHashes block hashes of the input.
+     * @param dstHashes block hashes of the output.
+     * @throws IOException on read/write error, or when the input shrinks while copying.
+     * @throws InterruptedException on thread interruption.
+     */
+    private void writeChanged(final FileChannel src, final FileChannel dst, final long size, final long dstSize,
+                              final long[] srcHashes, final long[] dstHashes) throws IOException, InterruptedException {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(readSize());
+        int blocks = srcHashes.length;
+        for (int i = 0; i < blocks; ) {
+            if (unchanged(i, size, dstSize, srcHashes, dstHashes)) {
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            while (end < blocks && !unchanged(end, size, dstSize, srcHashes, dstHashes)) {
+                end++;
+            }
+            long position = (long) i * blockSize;
+            long runEnd = Math.min(size, (long) end * blockSize);
+            while (position < runEnd) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                chunk.clear().limit((int) Math.min(chunk.capacity(), runEnd - position));
+                readFully(src, chunk, position);
+                chunk.flip();
+                if (throttle != null) {
+                    throttle.acquire(chunk.remaining());
+                }
+                while (chunk.hasRemaining()) {
+                    dst.write(chunk, position + chunk.position());
+                }
+                position += chunk.limit();
+            }
+            i = end;
+        }
+    }
+
+    /**
+     * @param i block number.
+     * @param size input size.
+     * @param dstSize output size before the copy.
+     * @param srcHashes block hashes of the input.
+     * @param dstHashes block hashes of the output.
+     * @return boolean whether the block of the input is already in the output; same length and same hash.
+     */
+    private boolean unchanged(final int i, final long size, final long dstSize, final long[] srcHashes,
+                              final long[] dstHashes) {
+        long start = (long) i * blockSize;
+        return i < dstHashes.length && Math.min(blockSize, size - start) == Math.min(blockSize, dstSize - start)
+                && srcHashes[i] == dstHashes[i];
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position() - start) == -1) {
+                throw new EOFException("File shrank while copying, at offset " + (position + buffer.position() - start));
+            }
+        }
+    }
+
+    /**
+     * @return int bytes per read/write; whole blocks, at least one.
+     */
+    private int readSize() {
+        return Math.max(1, READ_SIZE / blockSize) * blockSize;
+    }
+
+    private int blockCount(final long size) throws IOException {
+        long blocks = (size + blockSize - 1) / blockSize;
+        if (blocks > Integer.MAX_VALUE - 8) {
+            throw new IOException("Block size " + blockSize + " is too small for a file of " + size + " bytes.");
+        }
+        return (int) blocks;
+    }
+
+    /**
+     * Block hashes of an output.
+     * @param size output size.
+     * @param modified output modification time in millis.
+     * @param blockSize bytes per block.
+     * @param hashes XXH64 of every block.
+     */
+    record BlockIndex(long size, long modified, int blockSize, long[] hashes) {
+        private static final String MAGIC = "BuuttiBufferCopy block index 1";
+
+        /**
+         * Loads an index.
+         * @param file index file.
+         * @return BlockIndex, or null when there is none or it can't be parsed.
+         * @throws IOException on read error.
+         */
+        static BlockIndex load(final Path file) throws IOException {
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            try (InputStream is = Files.newInputStream(file)) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+                if (!MAGIC.equals(in.readUTF())) {
+                    return null;
+                }
+                long size = in.readLong();
+                long modified = in.readLong();
+                int blockSize = in.readInt();
+                int count = in.readInt();
+                if (blockSize < 1 || count < 0 || count != (size + blockSize - 1) / blockSize) {
+                    return null;
+                }
+                long[] hashes = new long[count];
+                for (int i = 0; i < count; i++) {
+                    hashes[i] = in.readLong();
+                }
+                return new BlockIndex(size, modified, blockSize, hashes);
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Atomically replaces the index file, so a crash leaves either the old or the new index.
+         * @param file index file.
+         * @throws IOException on write error.
+         */
+        void store(final Path file) throws IOException {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream os = Channels.newOutputStream(channel);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+                out.writeUTF(MAGIC);
+                out.writeLong(size);
+                out.writeLong(modified);
+                out.writeInt(blockSize);
+                out.writeInt(hashes.length);
+                for (long hash : hashes) {
+                    out.writeLong(hash);
+                }
+                out.flush();
+                channel.force(false);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
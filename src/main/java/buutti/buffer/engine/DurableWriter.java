@@ -0,0 +1,194 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.interfaces.SyncBuffer;
+import buutti.buffer.util.SyncBufferImpl;
+import buutti.buffer.util.Throttle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Write-behind for regular file outputs. The writer stage collects the chunks it consumes into large direct
+ * batches and hands the full ones to a flusher stage, which writes them with positional IO and forces them to the
+ * device as the sync policy says, while the writer fills the next batch.
+ * With an alignment, batches start at aligned addresses and file positions and are multiples of the alignment,
+ * as direct IO requires; the last partial batch is padded with zeros and the file truncated back to the stream
+ * length.
+ */
+final class DurableWriter implements BufferedCopyEngine.ChunkWriter {
+    private final FileChannel out;
+
+    private final int alignment;
+
+    private final SyncPolicy syncPolicy;
+
+    private final long syncInterval;
+
+    /**
+     * Meters the written bytes, null = unthrottled. Padding costs nothing.
+     */
+    private final Throttle throttle;
+
+    /**
+     * Empty batches, returned by the flusher once written.
+     */
+    private final SyncBuffer<ByteBuffer> free = new SyncBufferImpl<>(BufferedCopyEngine.WRITE_BEHIND_BATCHES, -1L);
+
+    /**
+     * Full batches, and the last partial one, in stream order.
+     */
+    private final SyncBuffer<ByteBuffer> filled = new SyncBufferImpl<>(BufferedCopyEngine.WRITE_BEHIND_BATCHES, -1L);
+
+    /**
+     * Batch the writer stage is filling, null until it takes one.
+     */
+    private ByteBuffer batch;
+
+    /**
+     * File position of the next batch, and the bytes written since the last force; flusher stage only.
+     */
+    private long position, unsynced;
+
+    private long forces;
+
+    /**
+     * @param out output file, written from position 0 on.
+     * @param batchSize bytes per write, rounded up to the alignment.
+     * @param alignment address, position and length unit of the writes, 1 = unaligned.
+     * @param syncPolicy when the written bytes are forced to the device; DSYNC must be an open option of out.
+     * @param syncInterval bytes between forces of the INTERVAL policy.
+     * @param throttle meters the written bytes, null = unthrottled.
+     * @throws IOException on buffer error.
+     * @throws InterruptedException on thread interruption.
+     */
+    DurableWriter(final FileChannel out, final int batchSize, final int alignment, final SyncPolicy syncPolicy,
+                  final long syncInterval, final Throttle throttle) throws IOException, InterruptedException {
+        this.out = out;
+        this.alignment = alignment;
+        this.syncPolicy = syncPolicy;
+        this.syncInterval = syncInterval;
+        this.throttle = throttle;
+        int capacity = (batchSize + alignment - 1) / alignment * alignment;
+        for (int i = 0; i < BufferedCopyEngine.WRITE_BEHIND_BATCHES; i++) {
+            free.supply(alignment > 1
+                    ? ByteBuffer.allocateDirect(capacity + alignment).alignedSlice(alignment).slice(0, capacity)
+                    : ByteBuffer.allocateDirect(capacity));
+        }
+    }
+
+    /**
+     * Writer stage. Appends the chunk to the current batch, handing every batch it fills to the flusher.
+     * @param chunk chunk.
+     * @param length bytes of the chunk to write.
+     * @throws IOException on buffer error.
+     * @throws InterruptedException on thread interruption.
+     */
+    @Override
+    public void write(final byte[] chunk, final int length) throws IOException, InterruptedException {
+        for (int off = 0; off < length; ) {
+            if (batch == null) {
+                batch = free.consume().clear();
+            }
+            int n = Math.min(batch.remaining(), length - off);
+            batch.put(chunk, off, n);
+            off += n;
+            if (!batch.hasRemaining()) {
+                filled.supply(batch);
+                batch = null;
+            }
+        }
+    }
+
+    /**
+     * Writer stage. Hands the last partial batch to the flusher and tells it the stream ended.
+     * @throws IOException on buffer error.
+     * @throws InterruptedException on thread interruption.
+     */
+    @Override
+    public void finish() throws IOException, InterruptedException {
+        try {
+            if (batch != null && batch.position() > 0) {
+                filled.supply(batch);
+            }
+            batch = null;
+        } finally {
+            filled.supplierIsExhausted();
+        }
+    }
+
+    /**
+     * Flusher stage. Writes the batches in order until the writer finishes, then forces what the sync policy has
+     * not forced yet.
+     * @throws IOException on write/buffer error.
+     * @throws InterruptedException on thread interruption.
+     */
+    void flush() throws IOException, InterruptedException {
+        boolean truncated = false;
+        while (true) {
+            ByteBuffer data;
+            try {
+                data = filled.consume();
+            } catch (SyncBufferSupplierExhaustedException e) {
+                // No more batches.
+                break;
+            }
+            truncated |= writeBatch(data.flip());
+            free.supply(data);
+        }
+        boolean dirty = switch (syncPolicy) {
+            case NONE -> false;
+            case END, INTERVAL -> unsynced > 0 || truncated || forces == 0;
+            // Every write is durable already, only the truncation isn't.
+            case DSYNC -> truncated;
+        };
+        if (dirty) {
+            force();
+        }
+    }
+
+    /**
+     * Writes a batch at the stream position, forcing the output when the sync interval is reached.
+     * @param data flipped batch.
+     * @return boolean whether the batch was padded and the file truncated after it.
+     * @throws IOException on write error.
+     * @throws InterruptedException on thread interruption.
+     */
+    private boolean writeBatch(final ByteBuffer data) throws IOException, InterruptedException {
+        int length = data.remaining();
+        int padded = (length + alignment - 1) / alignment * alignment;
+        data.limit(padded);
+        for (int i = length; i < padded; i++) {
+            data.put(i, (byte) 0);
+        }
+        if (throttle != null) {
+            throttle.acquire(length);
+        }
+        while (data.hasRemaining()) {
+            out.write(data, position + data.position());
+        }
+        position += length;
+        if (padded > length) {
+            out.truncate(position);
+        }
+        unsynced += length;
+        if (syncPolicy == SyncPolicy.INTERVAL && unsynced >= syncInterval) {
+            force();
+        }
+        return padded > length;
+    }
+
+    private void force() throws IOException {
+        out.force(false);
+        unsynced = 0L;
+        forces++;
+    }
+
+    /**
+     * @return long times the output was forced to the device.
+     */
+    long getForces() {
+        return forces;
+    }
+}
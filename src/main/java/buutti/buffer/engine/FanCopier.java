@@ -0,0 +1,276 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.util.StripedSyncBuffer;
+import buutti.buffer.util.SyncBufferMetrics;
+import buutti.buffer.util.Throttle;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fan-in and fan-out copies over {@link StripedSyncBuffer}s. Reader threads fill pooled direct chunks and
+ * supply them, tagged with their output position, to a multi producer/multi consumer queue; writer threads
+ * consume them in any order and write them with positional IO, then return them to the pool.
+ * <ul>
+ *     <li>Fan-in concatenates several inputs into one output, with a reader per input.</li>
+ *     <li>Fan-out copies one input to several outputs, every chunk is written to all outputs.</li>
+ * </ul>
+ * Outputs must be regular files, or not exist yet, as they are written out of order.
+ */
+public class FanCopier {
+    /**
+     * A filled chunk and its position in the output.
+     * @param position output position.
+     * @param data chunk, flipped for writing.
+     */
+    private record Chunk(long position, ByteBuffer data) {
+    }
+
+    /**
+     * Length of an input read until its end.
+     */
+    private static final long UNTIL_EOF = -1L;
+
+    private final int poolSize;
+
+    private final int chunkSize;
+
+    private final int writers;
+
+    /**
+     * Counters attached to the filled chunk queues, null = not collected.
+     */
+    private SyncBufferMetrics metrics;
+
+    /**
+     * Meters the writes, null = unthrottled.
+     */
+    private Throttle throttle;
+
+    /**
+     * @param poolSize amount of chunks in the pool.
+     * @param chunkSize size of a single chunk in bytes.
+     * @param writers amount of writer threads.
+     */
+    public FanCopier(final int poolSize, final int chunkSize, final int writers) {
+        if (poolSize < 1 || chunkSize < 1 || writers < 1) {
+            throw new IllegalArgumentException("Pool size, chunk size and writers must be at least 1.");
+        }
+        this.poolSize = poolSize;
+        this.chunkSize = chunkSize;
+        this.writers = writers;
+    }
+
+    /**
+     * @param metrics counters to attach to the filled chunk queues, null to stop collecting.
+     */
+    public void setMetrics(final SyncBufferMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param throttle meters the writes of every output, null to stop throttling.
+     */
+    public void setThrottle(final Throttle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * Concatenates the inputs into the output, replacing its contents.
+     * @param inputs regular input files, in output order.
+     * @param out output path.
+     * @throws IOException on read/write error, when an input is not a regular file or shrinks while copying.
+     * @throws InterruptedException on thread interruption.
+     */
+    public void concat(final List<Path> inputs, final Path out) throws IOException, InterruptedException {
+        long[] offsets = new long[inputs.size() + 1];
+        for (int i = 0; i < inputs.size(); i++) {
+            Path in = inputs.get(i);
+            if (!Files.isRegularFile(in)) {
+                throw new IOException("Only regular files can be concatenated: " + in);
+            }
+            offsets[i + 1] = offsets[i] + Files.size(in);
+        }
+        checkOutput(out);
+        try (FileChannel dst = openOutput(out)) {
+            ParallelCopyEngine.preallocate(dst, offsets[inputs.size()]);
+            Queues queues = new Queues(inputs.size());
+            List<StageThreads.Stage> stages = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                Path in = inputs.get(i);
+                long offset = offsets[i], length = offsets[i + 1] - offsets[i];
+                stages.add(() -> {
+                    try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ)) {
+                        read(src, offset, length, queues);
+                    } finally {
+                        queues.filled.supplierIsExhausted();
+                    }
+                });
+            }
+            addWriters(stages, List.of(dst), queues);
+            StageThreads.runAll(stages.toArray(StageThreads.Stage[]::new));
+        }
+    }
+
+    /**
+     * Copies the input to every output, replacing their contents.
+     * @param in input path, may be a pipe.
+     * @param outputs output paths.
+     * @throws IOException on read/write error.
+     * @throws InterruptedException on thread interruption.
+     */
+    public void tee(final Path in, final List<Path> outputs) throws IOException, InterruptedException {
+        for (Path out : outputs) {
+            checkOutput(out);
+        }
+        List<FileChannel> dsts = new ArrayList<>();
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ)) {
+            for (Path out : outputs) {
+                dsts.add(openOutput(out));
+            }
+            Queues queues = new Queues(1);
+            List<StageThreads.Stage> stages = new ArrayList<>();
+            stages.add(() -> {
+                try {
+                    read(src, 0L, UNTIL_EOF, queues);
+                } finally {
+                    queues.filled.supplierIsExhausted();
+                }
+            });
+            addWriters(stages, dsts, queues);
+            StageThreads.runAll(stages.toArray(StageThreads.Stage[]::new));
+        } finally {
+            for (FileChannel dst : dsts) {
+                dst.close();
+            }
+        }
+    }
+
+    /**
+     * The free chunk pool and the filled chunk queue of a single copy.
+     */
+    private final class Queues {
+        private final StripedSyncBuffer<ByteBuffer> free;
+
+        private final StripedSyncBuffer<Chunk> filled;
+
+        /**
+         * @param readers amount of reader threads supplying filled chunks.
+         * @throws IOException on buffer error.
+         * @throws InterruptedException on thread interruption.
+         */
+        private Queues(final int readers) throws IOException, InterruptedException {
+            int stripes = Math.max(readers, writers);
+            // Chunks return to the pool until the end of the copy, so the pool is never exhausted.
+            free = new StripedSyncBuffer<>(poolSize, stripes, 1, -1L);
+            filled = new StripedSyncBuffer<>(poolSize, stripes, readers, -1L);
+            filled.setMetrics(metrics, chunk -> chunk.data().remaining());
+            for (int i = 0; i < poolSize; i++) {
+                free.supply(ByteBuffer.allocateDirect(chunkSize));
+            }
+        }
+    }
+
+    private void addWriters(final List<StageThreads.Stage> stages, final List<FileChannel> dsts, final Queues queues) {
+        for (int i = 0; i < writers; i++) {
+            stages.add(() -> write(dsts, queues, throttle));
+        }
+    }
+
+    /**
+     * Read method. Fills free chunks from the input and supplies them with their output position.
+     * @param src input channel.
+     * @param position output position of the first byte.
+     * @param length amount of bytes to read, or UNTIL_EOF.
+     * @param queues chunk queues.
+     * @throws IOException on file read/buffer error, or when the input is shorter than length.
+     * @throws InterruptedException on thread interruption.
+     */
+    private void read(final FileChannel src, long position, final long length, final Queues queues)
+            throws IOException, InterruptedException {
+        long remaining = length == UNTIL_EOF ? Long.MAX_VALUE : length;
+        while (remaining > 0) {
+            ByteBuffer chunk = queues.free.consume();
+            chunk.clear();
+            if (remaining < chunkSize) {
+                chunk.limit((int) remaining);
+            }
+            boolean eof = false;
+            while (chunk.hasRemaining()) {
+                if (src.read(chunk) == -1) {
+                    eof = true;
+                    break;
+                }
+            }
+            chunk.flip();
+            int n = chunk.remaining();
+            if (n > 0) {
+                queues.filled.supply(new Chunk(position, chunk));
+            } else {
+                queues.free.supply(chunk);
+            }
+            position += n;
+            remaining -= n;
+            if (eof) {
+                if (length != UNTIL_EOF) {
+                    throw new EOFException("Input shrank while copying, at offset " + position);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write method. Writes filled chunks to every output at their position and returns them to the pool.
+     * @param dsts output channels.
+     * @param queues chunk queues.
+     * @param throttle meters the writes, null = unthrottled.
+     * @throws IOException on file write/buffer error.
+     * @throws InterruptedException on thread interruption.
+     */
+    private static void write(final List<FileChannel> dsts, final Queues queues, final Throttle throttle)
+            throws IOException, InterruptedException {
+        while (true) {
+            Chunk chunk;
+            try {
+                chunk = queues.filled.consume();
+            } catch (SyncBufferSupplierExhaustedException e) {
+                // No more chunks.
+                return;
+            }
+            for (FileChannel dst : dsts) {
+                ByteBuffer data = chunk.data().duplicate();
+                if (throttle != null) {
+                    throttle.acquire(data.remaining());
+                }
+                while (data.hasRemaining()) {
+                    dst.write(data, chunk.position() + data.position());
+                }
+            }
+            queues.free.supply(chunk.data());
+        }
+    }
+
+    /**
+     * @param out output path.
+     * @throws IOException when the output exists but is not a regular file.
+     */
+    private static void checkOutput(final Path out) throws IOException {
+        if (Files.exists(out) && !Files.isRegularFile(out)) {
+            throw new IOException("Output must be a regular file: " + out);
+        }
+    }
+
+    private static FileChannel openOutput(final Path out) throws IOException {
+        return FileChannel.open(out, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+}
@@ -0,0 +1,21 @@
+package buutti.buffer.engine;
+
+/**
+ * When the writer of the buffered pipeline hands the bytes it consumed to the output.
+ */
+public enum FlushPolicy {
+    /**
+     * Write every block as soon as it is consumed. Lowest latency, most write calls.
+     */
+    ALWAYS,
+    /**
+     * Coalesce blocks while the buffer has more pending, write as soon as the buffer runs empty or the block is full.
+     * Same latency as ALWAYS for a slow producer, fewer write calls for a fast one.
+     */
+    IDLE,
+    /**
+     * Only write full blocks and the final partial block. Fewest write calls, data of a slow producer may wait
+     * until a whole block is collected.
+     */
+    END
+}
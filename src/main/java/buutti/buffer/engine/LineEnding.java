@@ -0,0 +1,19 @@
+package buutti.buffer.engine;
+
+/**
+ * Line ending conversion of the text mode.
+ */
+public enum LineEnding {
+    /**
+     * Line endings are copied as they are.
+     */
+    KEEP,
+    /**
+     * CRLF line endings become LF, as dos2unix. Lone CRs are kept.
+     */
+    LF,
+    /**
+     * LF line endings not preceded by CR become CRLF, as unix2dos.
+     */
+    CRLF
+}
@@ -0,0 +1,58 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.interfaces.CopyEngine;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped engine, maps the input in windows of a configurable size and writes each window
+ * straight from the page cache to the output channel.
+ * Inputs that are not regular files are copied with the fallback engine.
+ */
+public class MappedCopyEngine implements CopyEngine {
+    /**
+     * Default size of the mapped windows, 64 MiB.
+     */
+    public static final long DEFAULT_WINDOW_SIZE = 64L << 20;
+
+    private final long windowSize;
+
+    private final CopyEngine fallback;
+
+    /**
+     * @param windowSize size of the mapped input windows in bytes, max {@link Integer#MAX_VALUE}.
+     * @param fallback engine used when the input is not a regular file.
+     */
+    public MappedCopyEngine(final long windowSize, final CopyEngine fallback) {
+        if (windowSize < 1 || windowSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Window size must be between 1 and " + Integer.MAX_VALUE);
+        }
+        this.windowSize = windowSize;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public void copy(final Path in, final Path out) throws IOException, InterruptedException {
+        if (!Files.isRegularFile(in)) {
+            fallback.copy(in, out);
+            return;
+        }
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = src.size();
+            for (long position = 0; position < size; position += windowSize) {
+                MappedByteBuffer window = src.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(windowSize, size - position));
+                while (window.hasRemaining()) {
+                    dst.write(window);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.interfaces.CopyEngine;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parallel engine for large regular files. The output is preallocated to the input size and split into
+ * chunk size regions; worker threads claim the regions in order and copy each with positional
+ * {@link FileChannel#read(ByteBuffer, long)}/{@link FileChannel#write(ByteBuffer, long)} calls on shared channels.
+ * The last region holds the remainder of the file. Inputs that are not regular files, and outputs that exist
+ * but are not regular files (pipes, devices), are copied with the fallback engine.
+ */
+public class ParallelCopyEngine implements CopyEngine {
+    private final int threads;
+
+    private final int chunkSize;
+
+    private final CopyEngine fallback;
+
+    /**
+     * @param threads amount of worker threads.
+     * @param chunkSize size of a region in bytes.
+     * @param fallback engine used when the input or output is not a regular file.
+     */
+    public ParallelCopyEngine(final int threads, final int chunkSize, final CopyEngine fallback) {
+        if (threads < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Threads and chunk size must be at least 1.");
+        }
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public void copy(final Path in, final Path out) throws IOException, InterruptedException {
+        if (!Files.isRegularFile(in) || (Files.exists(out) && !Files.isRegularFile(out))) {
+            fallback.copy(in, out);
+            return;
+        }
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = src.size();
+            preallocate(dst, size);
+            AtomicLong nextRegion = new AtomicLong();
+            int workers = (int) Math.max(1L, Math.min(threads, (size + chunkSize - 1) / chunkSize));
+            StageThreads.Stage[] stages = new StageThreads.Stage[workers];
+            for (int i = 0; i < workers; i++) {
+                stages[i] = () -> copyRegions(src, dst, size, nextRegion);
+            }
+            StageThreads.runAll(stages);
+        }
+    }
+
+    /**
+     * Sets the output length up front, so the workers write into an already sized file.
+     * @param dst output channel.
+     * @param size final size.
+     * @throws IOException on write error.
+     */
+    static void preallocate(final FileChannel dst, final long size) throws IOException {
+        if (size > 0) {
+            dst.write(ByteBuffer.allocate(1), size - 1);
+        }
+    }
+
+    /**
+     * Worker body. Claims regions until the whole file is claimed and copies each with positional IO.
+     * @param src input channel.
+     * @param dst output channel.
+     * @param size input size.
+     * @param nextRegion start of the next unclaimed region.
+     * @throws IOException on read/write error, or when the input shrinks while copying.
+     */
+    private void copyRegions(final FileChannel src, final FileChannel dst, final long size,
+                             final AtomicLong nextRegion) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(chunkSize);
+        long start;
+        while ((start = nextRegion.getAndAdd(chunkSize)) < size) {
+            if (Thread.currentThread().isInterrupted()) {
+                // Another worker failed.
+                return;
+            }
+            int length = (int) Math.min(chunkSize, size - start);
+            chunk.clear().limit(length);
+            while (chunk.hasRemaining()) {
+                if (src.read(chunk, start + chunk.position()) == -1) {
+                    throw new EOFException("Input shrank while copying, at offset " + (start + chunk.position()));
+                }
+            }
+            chunk.flip();
+            while (chunk.hasRemaining()) {
+                dst.write(chunk, start + chunk.position());
+            }
+        }
+    }
+}
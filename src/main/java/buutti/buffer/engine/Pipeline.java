@@ -0,0 +1,301 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.interfaces.SyncBuffer;
+import buutti.buffer.util.SyncBufferImpl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+
+/**
+ * A linear pipeline of a source, transforms and a sink, each running on a thread of its own and connected by
+ * {@link SyncBuffer}s, e.g.
+ * <pre>
+ * Pipeline.from(reader).through(16, hasher).through(16, compressor).to(16, writer).run();
+ * </pre>
+ * <ul>
+ *     <li>Backpressure: a stage waits while the buffer to the next stage is full.</li>
+ *     <li>End of stream: a stage that completes marks its output buffer exhausted, the next stage then finishes
+ *     and completes in turn.</li>
+ *     <li>Errors: the first failing stage interrupts all others, and its exception is rethrown by
+ *     {@link #run()}. Buffers of failed stages are not marked exhausted, so no stage finishes on partial data.</li>
+ * </ul>
+ * The buffers belong to the pipeline, so a pipeline runs once.
+ */
+public final class Pipeline {
+    /**
+     * Produces the elements of a pipeline.
+     * @param <T> element type
+     */
+    @FunctionalInterface
+    public interface Source<T> {
+        /**
+         * Emits every element, then returns.
+         * @param out next stage.
+         * @throws IOException on read/buffer error.
+         * @throws InterruptedException on thread interruption.
+         */
+        void produce(Output<T> out) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Transforms elements into any amount of elements of the next stage.
+     * @param <T> input element type
+     * @param <R> output element type
+     */
+    @FunctionalInterface
+    public interface Transform<T, R> {
+        /**
+         * @param element input element.
+         * @param out next stage.
+         * @throws IOException on transform/buffer error.
+         * @throws InterruptedException on thread interruption.
+         */
+        void apply(T element, Output<R> out) throws IOException, InterruptedException;
+
+        /**
+         * Called once after the last input element, e.g. to emit a trailer or a digest.
+         * @param out next stage.
+         * @throws IOException on transform/buffer error.
+         * @throws InterruptedException on thread interruption.
+         */
+        default void finish(final Output<R> out) throws IOException, InterruptedException {
+        }
+    }
+
+    /**
+     * Consumes the elements of a pipeline.
+     * @param <T> element type
+     */
+    @FunctionalInterface
+    public interface Sink<T> {
+        /**
+         * @param element element.
+         * @throws IOException on write error.
+         * @throws InterruptedException on thread interruption.
+         */
+        void accept(T element) throws IOException, InterruptedException;
+
+        /**
+         * Called once after the last element, e.g. to flush.
+         * @throws IOException on write error.
+         * @throws InterruptedException on thread interruption.
+         */
+        default void finish() throws IOException, InterruptedException {
+        }
+    }
+
+    /**
+     * The input of the next stage.
+     * @param <T> element type
+     */
+    @FunctionalInterface
+    public interface Output<T> {
+        /**
+         * Hands an element to the next stage, waiting while its buffer is full.
+         * @param element element.
+         * @throws IOException on buffer error.
+         * @throws InterruptedException on thread interruption.
+         */
+        void emit(T element) throws IOException, InterruptedException;
+    }
+
+    private final List<StageThreads.Stage> stages;
+
+    private Pipeline(final List<StageThreads.Stage> stages) {
+        this.stages = stages;
+    }
+
+    /**
+     * Starts a pipeline.
+     * @param source first stage.
+     * @param <T> element type of the source
+     * @return Builder to add the next stage to.
+     */
+    public static <T> Builder<T> from(final Source<T> source) {
+        return new Builder<>(new ArrayList<>(), out -> () -> {
+            source.produce(out::supply);
+            out.supplierIsExhausted();
+        });
+    }
+
+    /**
+     * Runs every stage on a thread of its own, virtual when the calling thread is, and waits until all complete.
+     * @throws IOException on the first stage error.
+     * @throws InterruptedException on the first stage interruption, or interruption of the calling thread.
+     */
+    public void run() throws IOException, InterruptedException {
+        StageThreads.runAll(stages.toArray(StageThreads.Stage[]::new));
+    }
+
+    /**
+     * Runs every stage on a thread of the factory, e.g. virtual threads, and waits until all complete.
+     * @param threadFactory creates the stage threads.
+     * @throws IOException on the first stage error.
+     * @throws InterruptedException on the first stage interruption, or interruption of the calling thread.
+     */
+    public void run(final ThreadFactory threadFactory) throws IOException, InterruptedException {
+        StageThreads.runAll(threadFactory, stages.toArray(StageThreads.Stage[]::new));
+    }
+
+    /**
+     * Creates a pool of empty chunks, for a channel source to read into and a channel sink to return them to, so a
+     * copy reuses the same chunks instead of allocating one per read.
+     * @param chunks amount of chunks, which bounds the chunks in flight.
+     * @param chunkSize chunk size in bytes.
+     * @return SyncBuffer holding every chunk.
+     * @throws IOException on buffer error.
+     * @throws InterruptedException on thread interruption.
+     */
+    public static SyncBuffer<ByteBuffer> chunkPool(final int chunks, final int chunkSize)
+            throws IOException, InterruptedException {
+        SyncBuffer<ByteBuffer> free = new SyncBufferImpl<>(chunks, -1L);
+        for (int i = 0; i < chunks; i++) {
+            free.supply(ByteBuffer.allocateDirect(chunkSize));
+        }
+        return free;
+    }
+
+    /**
+     * Source reading a channel into chunks of a pool, e.g. stdin or a file. Every read is emitted as soon as it
+     * returns, so partial reads of a pipe are passed on immediately; the source waits while the pool is empty.
+     * @param in input channel.
+     * @param free pool of empty chunks, see {@link #chunkPool(int, int)}.
+     * @return Source of flipped chunks, to be returned to the pool once consumed, e.g. by
+     * {@link #channelSink(WritableByteChannel, SyncBuffer)}.
+     */
+    public static Source<ByteBuffer> channelSource(final ReadableByteChannel in, final SyncBuffer<ByteBuffer> free) {
+        return out -> {
+            ByteBuffer chunk = free.consume();
+            int r;
+            while ((r = in.read(chunk.clear())) != -1) {
+                if (r > 0) {
+                    out.emit(chunk.flip());
+                    chunk = free.consume();
+                }
+            }
+            free.supply(chunk.clear());
+        };
+    }
+
+    /**
+     * Sink writing chunks to a channel, e.g. stdout or a file.
+     * @param out output channel.
+     * @return Sink of flipped chunks.
+     */
+    public static Sink<ByteBuffer> channelSink(final WritableByteChannel out) {
+        return chunk -> {
+            while (chunk.hasRemaining()) {
+                out.write(chunk);
+            }
+        };
+    }
+
+    /**
+     * Sink writing chunks to a channel and returning them to their pool.
+     * @param out output channel.
+     * @param free pool of empty chunks the chunks came from.
+     * @return Sink of flipped chunks.
+     */
+    public static Sink<ByteBuffer> channelSink(final WritableByteChannel out, final SyncBuffer<ByteBuffer> free) {
+        Sink<ByteBuffer> sink = channelSink(out);
+        return chunk -> {
+            sink.accept(chunk);
+            free.supply(chunk.clear());
+        };
+    }
+
+    /**
+     * A pipeline under construction, whose last stage still needs a buffer to the next stage. Every builder
+     * takes a single next stage.
+     * @param <T> element type of the last stage
+     */
+    public static final class Builder<T> {
+        private final List<StageThreads.Stage> stages;
+
+        /**
+         * Creates the last stage once its output buffer is known.
+         */
+        private final Function<SyncBuffer<T>, StageThreads.Stage> last;
+
+        private Builder(final List<StageThreads.Stage> stages, final Function<SyncBuffer<T>, StageThreads.Stage> last) {
+            this.stages = stages;
+            this.last = last;
+        }
+
+        /**
+         * Adds a transform, connected to the last stage by a blocking ring buffer.
+         * @param capacity buffer capacity in elements.
+         * @param transform transform.
+         * @param <R> output element type of the transform
+         * @return Builder to add the next stage to.
+         */
+        public <R> Builder<R> through(final int capacity, final Transform<T, R> transform) {
+            return through(new SyncBufferImpl<>(capacity, -1L), transform);
+        }
+
+        /**
+         * Adds a transform.
+         * @param buffer buffer between the last stage and the transform.
+         * @param transform transform.
+         * @param <R> output element type of the transform
+         * @return Builder to add the next stage to.
+         */
+        public <R> Builder<R> through(final SyncBuffer<T> buffer, final Transform<T, R> transform) {
+            stages.add(last.apply(buffer));
+            return new Builder<>(stages, out -> () -> {
+                Output<R> output = out::supply;
+                while (true) {
+                    T element;
+                    try {
+                        element = buffer.consume();
+                    } catch (SyncBufferSupplierExhaustedException e) {
+                        break;
+                    }
+                    transform.apply(element, output);
+                }
+                transform.finish(output);
+                out.supplierIsExhausted();
+            });
+        }
+
+        /**
+         * Completes the pipeline with a sink, connected to the last stage by a blocking ring buffer.
+         * @param capacity buffer capacity in elements.
+         * @param sink sink.
+         * @return Pipeline
+         */
+        public Pipeline to(final int capacity, final Sink<T> sink) {
+            return to(new SyncBufferImpl<>(capacity, -1L), sink);
+        }
+
+        /**
+         * Completes the pipeline with a sink.
+         * @param buffer buffer between the last stage and the sink.
+         * @param sink sink.
+         * @return Pipeline
+         */
+        public Pipeline to(final SyncBuffer<T> buffer, final Sink<T> sink) {
+            stages.add(last.apply(buffer));
+            stages.add(() -> {
+                while (true) {
+                    T element;
+                    try {
+                        element = buffer.consume();
+                    } catch (SyncBufferSupplierExhaustedException e) {
+                        break;
+                    }
+                    sink.accept(element);
+                }
+                sink.finish();
+            });
+            return new Pipeline(stages);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.interfaces.CopyEngine;
+import buutti.buffer.interfaces.SyncBuffer;
+import buutti.buffer.util.Throttle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Supplier;
+
+/**
+ * N-buffering engine. A fixed pool of direct {@link ByteBuffer} chunks circulates between the threads:
+ * the reader fills free chunks from the input channel and supplies them to the filled queue, the writer
+ * drains filled chunks to the output channel and returns them to the free queue.
+ * Memory use is bounded by pool size × chunk size and reads and writes overlap fully.
+ */
+public class PooledCopyEngine implements CopyEngine {
+    private final int poolSize;
+
+    private final int chunkSize;
+
+    /**
+     * Creates the filled/free queues, each must hold at least pool size chunks. Free chunks are empty when supplied.
+     */
+    private final Supplier<SyncBuffer<ByteBuffer>> queueFactory;
+
+    /**
+     * Meters the writes, null = unthrottled.
+     */
+    private Throttle throttle;
+
+    /**
+     * @param poolSize amount of chunks in the pool.
+     * @param chunkSize size of a single chunk in bytes.
+     * @param queueFactory creates the filled/free queues, each must hold at least pool size chunks.
+     */
+    public PooledCopyEngine(final int poolSize, final int chunkSize, final Supplier<SyncBuffer<ByteBuffer>> queueFactory) {
+        if (poolSize < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Pool size and chunk size must be at least 1.");
+        }
+        this.poolSize = poolSize;
+        this.chunkSize = chunkSize;
+        this.queueFactory = queueFactory;
+    }
+
+    /**
+     * @param throttle meters the writes of every copy, null to stop throttling.
+     */
+    public void setThrottle(final Throttle throttle) {
+        this.throttle = throttle;
+    }
+
+    @Override
+    public void copy(final Path in, final Path out) throws IOException, InterruptedException {
+        SyncBuffer<ByteBuffer> filled = queueFactory.get();
+        SyncBuffer<ByteBuffer> free = queueFactory.get();
+        for (int i = 0; i < poolSize; i++) {
+            // Free chunks are empty, so queues counting chunk bytes only count the filled ones.
+            free.supply(ByteBuffer.allocateDirect(chunkSize).flip());
+        }
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            StageThreads.runAll(() -> read(src, free, filled), () -> write(dst, filled, free, throttle));
+        }
+    }
+
+    /**
+     * Read method. Fills free chunks from the input channel and supplies them to the filled queue.
+     * @param src input channel.
+     * @param free queue of empty chunks.
+     * @param filled queue of chunks ready to be written.
+     * @throws IOException on file read/buffer error.
+     * @throws InterruptedException on thread interruption.
+     */
+    private static void read(final FileChannel src, final SyncBuffer<ByteBuffer> free,
+                             final SyncBuffer<ByteBuffer> filled) throws IOException, InterruptedException {
+        try {
+            boolean eof = false;
+            while (!eof) {
+                ByteBuffer chunk = free.consume();
+                chunk.clear();
+                while (chunk.hasRemaining()) {
+                    if (src.read(chunk) == -1) {
+                        eof = true;
+                        break;
+                    }
+                }
+                chunk.flip();
+                if (chunk.hasRemaining()) {
+                    filled.supply(chunk);
+                }
+            }
+        } finally {
+            filled.supplierIsExhausted();
+        }
+    }
+
+    /**
+     * Write method. Drains filled chunks to the output channel and returns them to the free queue.
+     * @param dst output channel.
+     * @param filled queue of chunks ready to be written.
+     * @param free queue of empty chunks.
+     * @param throttle meters the writes, null = unthrottled.
+     * @throws IOException on file write/buffer error.
+     * @throws InterruptedException on thread interruption.
+     */
+    private static void write(final FileChannel dst, final SyncBuffer<ByteBuffer> filled,
+                              final SyncBuffer<ByteBuffer> free, final Throttle throttle)
+            throws IOException, InterruptedException {
+        while (true) {
+            ByteBuffer chunk;
+            try {
+                chunk = filled.consume();
+            } catch (SyncBufferSupplierExhaustedException e) {
+                // No more chunks.
+                return;
+            }
+            if (throttle != null) {
+                throttle.acquire(chunk.remaining());
+            }
+            while (chunk.hasRemaining()) {
+                dst.write(chunk);
+            }
+            free.supply(chunk);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.interfaces.CopyEngine;
+import buutti.buffer.util.Throttle;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.CRC32C;
+
+/**
+ * Resumable engine for very large regular files. Every checkpoint interval the output is forced to disk and a
+ * small checkpoint, holding the bytes durably written and a CRC32C per interval, replaces the checkpoint file
+ * next to the output ("out.checkpoint"). A copy started again with a checkpoint of the same input (same size,
+ * modification time and interval) validates the intervals already in the output against their CRC32Cs and
+ * continues after the last valid one. The checkpoint is deleted once the copy completes.
+ * Inputs that are not regular files, and outputs that exist but are not regular files, are copied with the
+ * fallback engine.
+ */
+public class ResumableCopyEngine implements CopyEngine {
+    /**
+     * Default checkpoint interval, 64 MiB.
+     */
+    public static final long DEFAULT_INTERVAL = 64L << 20;
+
+    /**
+     * Size of a single read/write.
+     */
+    public static final int CHUNK_SIZE = 1 << 20;
+
+    private final long interval;
+
+    private final CopyEngine fallback;
+
+    /**
+     * Meters the writes, null = unthrottled.
+     */
+    private Throttle throttle;
+
+    /**
+     * @param interval bytes between checkpoints.
+     * @param fallback engine used when the input or output is not a regular file.
+     */
+    public ResumableCopyEngine(final long interval, final CopyEngine fallback) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be at least 1.");
+        }
+        this.interval = interval;
+        this.fallback = fallback;
+    }
+
+    /**
+     * @param out output path.
+     * @return Path checkpoint file of the output.
+     */
+    public static Path checkpointFile(final Path out) {
+        return out.resolveSibling(out.getFileName() + ".checkpoint");
+    }
+
+    /**
+     * @param throttle meters the writes of every copy, null to stop throttling.
+     */
+    public void setThrottle(final Throttle throttle) {
+        this.throttle = throttle;
+    }
+
+    @Override
+    public void copy(final Path in, final Path out) throws IOException, InterruptedException {
+        if (!Files.isRegularFile(in) || (Files.exists(out) && !Files.isRegularFile(out))) {
+            fallback.copy(in, out);
+            return;
+        }
+        Path checkpointFile = checkpointFile(out);
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE)) {
+            long size = src.size();
+            long modified = Files.getLastModifiedTime(in).toMillis();
+            List<Long> checksums = new ArrayList<>();
+            Checkpoint checkpoint = Checkpoint.load(checkpointFile);
+            if (checkpoint != null && checkpoint.size() == size && checkpoint.modified() == modified
+                    && checkpoint.interval() == interval) {
+                checksums.addAll(validPrefix(dst, checkpoint));
+            }
+            copyFrom(src, dst, size, checksums, new Checkpoint(size, modified, interval, checksums), checkpointFile);
+            dst.truncate(size);
+            dst.force(false);
+        }
+        Files.deleteIfExists(checkpointFile);
+    }
+
+    /**
+     * Copies the input from the end of the valid prefix, checkpointing at every interval boundary.
+     * @param src input channel.
+     * @param dst output channel.
+     * @param size input size.
+     * @param checksums CRC32Cs of the valid intervals, appended to as intervals complete.
+     * @param checkpoint checkpoint of this copy, sharing the checksums list.
+     * @param checkpointFile checkpoint file.
+     * @throws IOException on read/write error, or when the input shrinks while copying.
+     * @throws InterruptedException on thread interruption.
+     */
+    private void copyFrom(final FileChannel src, final FileChannel dst, final long size, final List<Long> checksums,
+                          final Checkpoint checkpoint, final Path checkpointFile) throws IOException, InterruptedException {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        CRC32C crc = new CRC32C();
+        long position = checksums.size() * interval;
+        long intervalEnd = Math.min(size, position + interval);
+        while (position < size) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            chunk.clear().limit((int) Math.min(CHUNK_SIZE, intervalEnd - position));
+            while (chunk.hasRemaining()) {
+                if (src.read(chunk, position + chunk.position()) == -1) {
+                    throw new EOFException("Input shrank while copying, at offset " + (position + chunk.position()));
+                }
+            }
+            chunk.flip();
+            crc.update(chunk.duplicate());
+            if (throttle != null) {
+                throttle.acquire(chunk.remaining());
+            }
+            while (chunk.hasRemaining()) {
+                dst.write(chunk, position + chunk.position());
+            }
+            position += chunk.limit();
+            if (position == intervalEnd) {
+                checksums.add(crc.getValue());
+                crc.reset();
+                if (position < size) {
+                    // The data must be on disk before the checkpoint claims it is.
+                    dst.force(false);
+                    checkpoint.store(checkpointFile);
+                }
+                intervalEnd = Math.min(size, position + interval);
+            }
+        }
+    }
+
+    /**
+     * Validates the intervals of the checkpoint against the output.
+     * @param dst output channel.
+     * @param checkpoint checkpoint of an earlier copy of the same input.
+     * @return List of the CRC32Cs of the intervals up to the first missing or differing one.
+     * @throws IOException on read error.
+     */
+    private List<Long> validPrefix(final FileChannel dst, final Checkpoint checkpoint) throws IOException {
+        List<Long> valid = new ArrayList<>();
+        ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        CRC32C crc = new CRC32C();
+        for (long expected : checkpoint.checksums()) {
+            long start = valid.size() * interval;
+            if (start + interval > dst.size()) {
+                break;
+            }
+            crc.reset();
+            for (long position = start; position < start + interval; ) {
+                chunk.clear().limit((int) Math.min(CHUNK_SIZE, start + interval - position));
+                int n = dst.read(chunk, position);
+                if (n == -1) {
+                    return valid;
+                }
+                crc.update(chunk.flip());
+                position += n;
+            }
+            if (crc.getValue() != expected) {
+                break;
+            }
+            valid.add(expected);
+        }
+        return valid;
+    }
+
+    /**
+     * Progress of a copy.
+     * @param size input size.
+     * @param modified input modification time in millis.
+     * @param interval bytes between checkpoints.
+     * @param checksums CRC32C of every completed interval; the bytes durably written are checksums × interval.
+     */
+    record Checkpoint(long size, long modified, long interval, List<Long> checksums) {
+        /**
+         * Loads a checkpoint.
+         * @param file checkpoint file.
+         * @return Checkpoint, or null when there is none or it can't be parsed.
+         * @throws IOException on read error.
+         */
+        static Checkpoint load(final Path file) throws IOException {
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            Properties properties = new Properties();
+            try (InputStream is = Files.newInputStream(file)) {
+                properties.load(is);
+                List<Long> checksums = new ArrayList<>();
+                String list = properties.getProperty("crc32c", "");
+                for (String s : list.isEmpty() ? new String[0] : list.split(",")) {
+                    checksums.add(Long.parseLong(s, 16));
+                }
+                Checkpoint checkpoint = new Checkpoint(Long.parseLong(properties.getProperty("size")),
+                        Long.parseLong(properties.getProperty("modified")),
+                        Long.parseLong(properties.getProperty("interval")), checksums);
+                return Long.parseLong(properties.getProperty("written")) == checkpoint.written() ? checkpoint : null;
+            } catch (NumberFormatException | NullPointerException e) {
+                return null;
+            }
+        }
+
+        /**
+         * @return long bytes durably written.
+         */
+        long written() {
+            return checksums.size() * interval;
+        }
+
+        /**
+         * Atomically replaces the checkpoint file, so a crash leaves either the old or the new checkpoint.
+         * @param file checkpoint file.
+         * @throws IOException on write error.
+         */
+        void store(final Path file) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("size", Long.toString(size));
+            properties.setProperty("modified", Long.toString(modified));
+            properties.setProperty("interval", Long.toString(interval));
+            properties.setProperty("written", Long.toString(written()));
+            StringBuilder list = new StringBuilder();
+            for (long checksum : checksums) {
+                list.append(list.length() > 0 ? "," : "").append(Long.toHexString(checksum));
+            }
+            properties.setProperty("crc32c", list.toString());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream os = Channels.newOutputStream(channel);
+                properties.store(os, "BuuttiBufferCopy checkpoint");
+                os.flush();
+                channel.force(false);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
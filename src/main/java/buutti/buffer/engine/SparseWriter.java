@@ -0,0 +1,146 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.util.Throttle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Writes a stream of chunks to a regular file, seeking over every file system block that is all zeros instead
+ * of writing it, so the holes of sparse inputs stay holes in the output. Blocks are aligned to the file offset;
+ * a chunk ending within a block holds the start of the block back until the next chunk completes it, so blocks
+ * are found whatever the chunk sizes. The zero scan is {@link Arrays#mismatch}, which the JIT vectorizes.
+ */
+final class SparseWriter implements BufferedCopyEngine.ChunkWriter {
+    /**
+     * Size of a skippable block, the common file system block size.
+     */
+    static final int BLOCK_SIZE = 4096;
+
+    private static final byte[] ZEROS = new byte[BLOCK_SIZE];
+
+    private final FileChannel out;
+
+    /**
+     * Meters the written bytes, null = unthrottled. Skipped blocks cost nothing.
+     */
+    private final Throttle throttle;
+
+    /**
+     * File position of the next byte of the stream.
+     */
+    private long position;
+
+    private long skipped;
+
+    /**
+     * Start of the current block, held back until a chunk completes it.
+     */
+    private final byte[] pending = new byte[BLOCK_SIZE];
+
+    private int pendingLength;
+
+    /**
+     * @param out output file, written from position 0 on.
+     * @param throttle meters the written bytes, null = unthrottled.
+     */
+    SparseWriter(final FileChannel out, final Throttle throttle) {
+        this.out = out;
+        this.throttle = throttle;
+    }
+
+    /**
+     * Writes the next bytes of the stream, skipping whole zero blocks.
+     * @param b chunk.
+     * @param length bytes of the chunk to write.
+     * @throws IOException on write error.
+     * @throws InterruptedException on thread interruption.
+     */
+    @Override
+    public void write(final byte[] b, final int length) throws IOException, InterruptedException {
+        int off = 0;
+        if (pendingLength > 0) {
+            off = Math.min(length, BLOCK_SIZE - pendingLength);
+            System.arraycopy(b, 0, pending, pendingLength, off);
+            pendingLength += off;
+            if (pendingLength < BLOCK_SIZE) {
+                return;
+            }
+            writeBlocks(pending, 0, BLOCK_SIZE);
+            pendingLength = 0;
+        }
+        int whole = (length - off) / BLOCK_SIZE * BLOCK_SIZE;
+        writeBlocks(b, off, whole);
+        off += whole;
+        pendingLength = length - off;
+        System.arraycopy(b, off, pending, 0, pendingLength);
+    }
+
+    /**
+     * Writes whole blocks at the block aligned stream position, skipping the zero ones.
+     * @param b blocks.
+     * @param off offset of the first block.
+     * @param len multiple of the block size.
+     * @throws IOException on write error.
+     * @throws InterruptedException on thread interruption.
+     */
+    private void writeBlocks(final byte[] b, int off, final int len) throws IOException, InterruptedException {
+        int end = off + len;
+        int run = off;
+        long runPosition = position;
+        for (; off < end; off += BLOCK_SIZE, position += BLOCK_SIZE) {
+            if (Arrays.mismatch(b, off, off + BLOCK_SIZE, ZEROS, 0, BLOCK_SIZE) == -1) {
+                writeAt(b, run, off - run, runPosition);
+                run = off + BLOCK_SIZE;
+                runPosition = position + BLOCK_SIZE;
+                skipped += BLOCK_SIZE;
+            }
+        }
+        writeAt(b, run, end - run, runPosition);
+    }
+
+    private void writeAt(final byte[] b, final int off, final int len, final long at)
+            throws IOException, InterruptedException {
+        if (len == 0) {
+            return;
+        }
+        if (throttle != null) {
+            throttle.acquire(len);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        while (buffer.hasRemaining()) {
+            out.write(buffer, at + buffer.position() - off);
+        }
+    }
+
+    /**
+     * Writes the partial block at the end of the stream, or extends the file to the stream length when it ends in
+     * skipped blocks, by writing its last byte.
+     * @throws IOException on write error.
+     */
+    @Override
+    public void finish() throws IOException {
+        if (pendingLength > 0) {
+            ByteBuffer tail = ByteBuffer.wrap(pending, 0, pendingLength);
+            while (tail.hasRemaining()) {
+                out.write(tail, position + tail.position());
+            }
+            position += pendingLength;
+            pendingLength = 0;
+        } else if (out.size() < position) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            while (last.hasRemaining()) {
+                out.write(last, position - 1);
+            }
+        }
+    }
+
+    /**
+     * @return long bytes of zero blocks skipped.
+     */
+    long getSkipped() {
+        return skipped;
+    }
+}
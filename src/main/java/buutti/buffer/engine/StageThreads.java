@@ -0,0 +1,125 @@
+package buutti.buffer.engine;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the stages of a copy pipeline on their own threads.
+ * The first failing stage interrupts all other stages, so none stays blocked on a buffer, and its
+ * exception is rethrown from the calling thread. Stages never outlive the call that started them.
+ */
+final class StageThreads {
+    /**
+     * A pipeline stage body.
+     */
+    interface Stage {
+        void run() throws IOException, InterruptedException;
+    }
+
+    private StageThreads() {
+    }
+
+    /**
+     * Runs every stage on its own thread and waits for all of them to finish. The stage threads are virtual
+     * when the calling thread is, so copies started from virtual threads take no platform threads.
+     * @param stages stage bodies.
+     * @throws IOException on the first stage IO error.
+     * @throws InterruptedException on the first stage interruption, or interruption of the calling thread.
+     */
+    static void runAll(final Stage... stages) throws IOException, InterruptedException {
+        runAll(Thread.currentThread().isVirtual() ? Thread.ofVirtual().factory() : Thread::new, stages);
+    }
+
+    /**
+     * Runs every stage on its own thread of the factory and waits for all of them to finish.
+     * @param threadFactory creates the stage threads.
+     * @param stages stage bodies.
+     * @throws IOException on the first stage IO error.
+     * @throws InterruptedException on the first stage interruption, or interruption of the calling thread.
+     * @throws Error on the first stage error, e.g. running out of direct buffer memory.
+     */
+    static void runAll(final ThreadFactory threadFactory, final Stage... stages) throws IOException, InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            Stage stage = stages[i];
+            threads[i] = threadFactory.newThread(() -> runStage(stage, failure, threads));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        try {
+            for (Thread t : threads) {
+                t.join();
+            }
+        } catch (InterruptedException e) {
+            interruptAll(threads);
+            // Cancelled; the stages unwind and release their buffers before the caller closes the channels.
+            joinUninterruptibly(threads);
+            throw e;
+        }
+        rethrow(failure.get());
+    }
+
+    /**
+     * Runs a stage, on failure records the first exception or error and interrupts the other stages.
+     * Errors are caught as well, a stage dying silently would leave the others blocked on its buffer.
+     * @param stage stage body.
+     * @param failure first failure of any stage.
+     * @param threads all stage threads.
+     */
+    private static void runStage(final Stage stage, final AtomicReference<Throwable> failure, final Thread[] threads) {
+        try {
+            stage.run();
+        } catch (Throwable e) {
+            if (failure.compareAndSet(null, e)) {
+                interruptAll(threads);
+            }
+        }
+    }
+
+    private static void joinUninterruptibly(final Thread[] threads) {
+        boolean interrupted = false;
+        for (Thread t : threads) {
+            while (true) {
+                try {
+                    t.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void interruptAll(final Thread[] threads) {
+        for (Thread t : threads) {
+            if (t != Thread.currentThread()) {
+                t.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Rethrows a stage failure from the calling thread.
+     * @param e failure or null.
+     * @throws IOException on a stage IO error.
+     * @throws InterruptedException on a stage interruption.
+     * @throws Error on a stage error.
+     */
+    private static void rethrow(final Throwable e) throws IOException, InterruptedException {
+        if (e instanceof IOException ioe) {
+            throw ioe;
+        } else if (e instanceof InterruptedException ie) {
+            throw ie;
+        } else if (e instanceof Error error) {
+            throw error;
+        } else if (e != null) {
+            throw (RuntimeException) e;
+        }
+    }
+}
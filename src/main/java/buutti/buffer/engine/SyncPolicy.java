@@ -0,0 +1,26 @@
+package buutti.buffer.engine;
+
+/**
+ * When the writer of the buffered pipeline forces the written bytes of a regular file output to the device.
+ */
+public enum SyncPolicy {
+    /**
+     * Never force, the page cache writes the data back whenever the kernel decides. Fastest, nothing is known
+     * to be durable when the copy returns.
+     */
+    NONE,
+    /**
+     * Force once after the last write, so the whole output is durable when the copy returns.
+     */
+    END,
+    /**
+     * Force every sync interval bytes and after the last write. Bounds the dirty pages, and the data lost on a
+     * crash, to about an interval.
+     */
+    INTERVAL,
+    /**
+     * Open the output with {@link java.nio.file.StandardOpenOption#DSYNC}, so every write returns only once its
+     * data is durable. Slowest, best combined with large write batches.
+     */
+    DSYNC
+}
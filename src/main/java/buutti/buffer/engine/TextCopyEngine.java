@@ -0,0 +1,243 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.exceptions.SyncBufferTimeoutException;
+import buutti.buffer.interfaces.ByteSyncBuffer;
+import buutti.buffer.interfaces.CopyEngine;
+import buutti.buffer.util.Throttle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Supplier;
+
+/**
+ * Text mode of the buffered pipeline. A transcoder thread between the reader and the writer decodes the input
+ * bytes with a {@link CharsetDecoder} in large chunks, converts the line endings and encodes the characters with
+ * a {@link CharsetEncoder}, so transcoding overlaps both the reads and the writes.
+ * Malformed input and characters the output charset can't represent fail the copy rather than being replaced.
+ */
+public class TextCopyEngine implements CopyEngine {
+    /**
+     * Size of the byte and char chunks of the transcoder.
+     */
+    public static final int CHUNK_SIZE = 65536;
+
+    private final Supplier<ByteSyncBuffer> bufferFactory;
+
+    private final Charset from, to;
+
+    private final LineEnding lineEnding;
+
+    /**
+     * Meters the writes, null = unthrottled.
+     */
+    private Throttle throttle;
+
+    /**
+     * @param bufferFactory creates the buffers between the reader, transcoder and writer threads for every copy.
+     * @param from charset of the input.
+     * @param to charset of the output.
+     * @param lineEnding line ending conversion.
+     */
+    public TextCopyEngine(final Supplier<ByteSyncBuffer> bufferFactory, final Charset from, final Charset to,
+                          final LineEnding lineEnding) {
+        this.bufferFactory = bufferFactory;
+        this.from = from;
+        this.to = to;
+        this.lineEnding = lineEnding;
+    }
+
+    /**
+     * @param throttle meters the writes of every copy, null to stop throttling.
+     */
+    public void setThrottle(final Throttle throttle) {
+        this.throttle = throttle;
+    }
+
+    @Override
+    public void copy(final Path in, final Path out) throws IOException, InterruptedException {
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            copy(src, dst);
+        }
+    }
+
+    /**
+     * Transcodes from the input channel to the output channel. The channels are not closed.
+     * @param in input channel, may be stdin.
+     * @param out output channel, may be stdout.
+     * @throws IOException on read/write error, malformed input or unmappable characters.
+     * @throws InterruptedException on thread interruption.
+     */
+    public void copy(final ReadableByteChannel in, final WritableByteChannel out) throws IOException, InterruptedException {
+        try (ByteSyncBuffer raw = bufferFactory.get(); ByteSyncBuffer encoded = bufferFactory.get()) {
+            Transcoder transcoder = new Transcoder(encoded);
+            StageThreads.runAll(() -> BufferedCopyEngine.read(in, raw), () -> transcoder.run(raw),
+                    () -> BufferedCopyEngine.write(encoded, BufferedCopyEngine.dense(out, throttle), FlushPolicy.IDLE));
+        }
+    }
+
+    /**
+     * Transcoding state of a single copy.
+     */
+    private final class Transcoder {
+        private final CharsetDecoder decoder = from.newDecoder();
+
+        private final CharsetEncoder encoder = to.newEncoder();
+
+        private final ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE);
+
+        private final CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+
+        /**
+         * Chars after the line ending conversion, which at most doubles them, plus an unencoded surrogate.
+         */
+        private final CharBuffer converted = CharBuffer.allocate(2 * CHUNK_SIZE + 2);
+
+        private final ByteBuffer output = ByteBuffer.allocate(CHUNK_SIZE);
+
+        private final ByteSyncBuffer out;
+
+        /**
+         * Input offset of the first byte in the bytes buffer, for error messages.
+         */
+        private long offset;
+
+        private boolean previousCr;
+
+        private Transcoder(final ByteSyncBuffer out) {
+            this.out = out;
+        }
+
+        /**
+         * Transcoder stage. Decodes the raw bytes, converts and encodes them.
+         * @param in raw input bytes.
+         * @throws IOException on buffer error, malformed input or unmappable characters.
+         * @throws InterruptedException on thread interruption.
+         */
+        private void run(final ByteSyncBuffer in) throws IOException, InterruptedException {
+            try {
+                boolean eof = false;
+                while (!eof) {
+                    eof = fill(in);
+                    bytes.flip();
+                    CoderResult result;
+                    do {
+                        result = decoder.decode(bytes, chars, eof);
+                        if (result.isError()) {
+                            throw new IOException("Input is not valid " + from + " at offset "
+                                    + (offset + bytes.position()));
+                        }
+                        convert(false);
+                    } while (result.isOverflow());
+                    offset += bytes.position();
+                    bytes.compact();
+                }
+                while (decoder.flush(chars).isOverflow()) {
+                    convert(false);
+                }
+                convert(true);
+                encode(true);
+                while (encoder.flush(output).isOverflow()) {
+                    supplyOutput();
+                }
+                supplyOutput();
+            } finally {
+                out.close();
+            }
+        }
+
+        /**
+         * Consumes raw bytes into the free space of the bytes buffer.
+         * @param in raw input bytes.
+         * @return boolean whether the input ended.
+         * @throws IOException on buffer error.
+         * @throws InterruptedException on thread interruption.
+         */
+        private boolean fill(final ByteSyncBuffer in) throws IOException, InterruptedException {
+            try {
+                int n = in.consume(bytes.array(), bytes.position(), bytes.remaining());
+                bytes.position(bytes.position() + n);
+                return false;
+            } catch (SyncBufferTimeoutException e) {
+                if (in.isEmpty() && in.isSupplierIsExhausted()) {
+                    return true;
+                }
+                throw e;
+            } catch (SyncBufferSupplierExhaustedException e) {
+                return true;
+            }
+        }
+
+        /**
+         * Converts the line endings of the decoded chars and encodes them. A CR ending the chars is held back
+         * until the next chars show whether a LF follows it.
+         * @param last whether these are the last chars of the input.
+         * @throws IOException on buffer error or unmappable characters.
+         * @throws InterruptedException on thread interruption.
+         */
+        private void convert(final boolean last) throws IOException, InterruptedException {
+            chars.flip();
+            if (lineEnding == LineEnding.KEEP) {
+                converted.put(chars);
+            }
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                if (lineEnding == LineEnding.LF && c == '\r') {
+                    if (!chars.hasRemaining() && !last) {
+                        chars.position(chars.position() - 1);
+                        break;
+                    }
+                    if (chars.hasRemaining() && chars.get(chars.position()) == '\n') {
+                        continue;
+                    }
+                } else if (lineEnding == LineEnding.CRLF && c == '\n' && !previousCr) {
+                    converted.put('\r');
+                }
+                converted.put(c);
+                previousCr = c == '\r';
+            }
+            chars.compact();
+            encode(false);
+        }
+
+        /**
+         * Encodes the converted chars, supplying the output as it fills up.
+         * @param last whether these are the last chars of the input.
+         * @throws IOException on buffer error or unmappable characters.
+         * @throws InterruptedException on thread interruption.
+         */
+        private void encode(final boolean last) throws IOException, InterruptedException {
+            converted.flip();
+            CoderResult result;
+            while ((result = encoder.encode(converted, output, last)).isOverflow()) {
+                supplyOutput();
+            }
+            if (result.isError()) {
+                throw new IOException("Text can't be encoded as " + to + ", it has no "
+                        + String.format("U+%04X", Character.codePointAt(converted, 0)));
+            }
+            // Keeps a high surrogate whose low surrogate is still to be decoded.
+            converted.compact();
+        }
+
+        private void supplyOutput() throws IOException, InterruptedException {
+            if (output.position() == 0) {
+                return;
+            }
+            out.supply(output.array(), 0, output.position());
+            output.clear();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.interfaces.CopyEngine;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Zero-copy engine, lets the kernel move the data with {@link FileChannel#transferTo}
+ * (sendfile/copy_file_range on Linux) without passing it through the JVM heap.
+ * Inputs that are not regular files are copied with the fallback engine.
+ */
+public class TransferCopyEngine implements CopyEngine {
+    private final CopyEngine fallback;
+
+    /**
+     * @param fallback engine used when the input is not a regular file.
+     */
+    public TransferCopyEngine(final CopyEngine fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public void copy(final Path in, final Path out) throws IOException, InterruptedException {
+        if (!Files.isRegularFile(in)) {
+            fallback.copy(in, out);
+            return;
+        }
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            long size = src.size();
+            while (position < size) {
+                long transferred = src.transferTo(position, size - position, dst);
+                if (transferred == 0 && position >= src.size()) {
+                    // Input was truncated while copying.
+                    break;
+                }
+                position += transferred;
+            }
+        }
+    }
+}
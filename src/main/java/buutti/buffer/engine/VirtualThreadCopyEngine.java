@@ -0,0 +1,31 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.interfaces.CopyEngine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Runs the copies of an engine on a virtual thread, and with it all stages of the copy.
+ * A copy blocked on a buffer or on IO then parks its virtual threads rather than holding OS threads, so a
+ * JVM can run thousands of copies at once. Copies called from a virtual thread already are run directly.
+ */
+public class VirtualThreadCopyEngine implements CopyEngine {
+    private final CopyEngine engine;
+
+    /**
+     * @param engine engine to copy with.
+     */
+    public VirtualThreadCopyEngine(final CopyEngine engine) {
+        this.engine = engine;
+    }
+
+    @Override
+    public void copy(final Path in, final Path out) throws IOException, InterruptedException {
+        if (Thread.currentThread().isVirtual()) {
+            engine.copy(in, out);
+            return;
+        }
+        StageThreads.runAll(Thread.ofVirtual().factory(), () -> engine.copy(in, out));
+    }
+}
@@ -0,0 +1,66 @@
+package buutti.buffer.interfaces;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.exceptions.SyncBufferTimeoutException;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Primitive byte specialization of the SyncBuffer. Elements are stored unboxed,
+ * so supplying and consuming through the primitive methods allocates nothing.
+ */
+public interface ByteSyncBuffer extends SyncBuffer<Byte>, Closeable {
+    /**
+     * Supply a single byte into the buffer.
+     * @param b byte
+     * @exception SyncBufferTimeoutException on supply timeout, when buffer is full.
+     */
+    void supplyByte(byte b) throws InterruptedException, IOException;
+
+    /**
+     * Consume the first byte that was supplied in the buffer.
+     * @exception SyncBufferTimeoutException on consume timeout, when buffer is empty.
+     * @exception SyncBufferSupplierExhaustedException when buffer is empty and the supplier is exhausted.
+     * @return byte
+     */
+    byte consumeByte() throws InterruptedException, IOException;
+
+    /**
+     * Supply len bytes of the src array into the buffer, waiting for room as needed.
+     * @param src array to supply from.
+     * @param off offset in src.
+     * @param len amount of bytes to supply.
+     * @exception SyncBufferTimeoutException on supply timeout, when buffer stays full.
+     */
+    void supply(byte[] src, int off, int len) throws InterruptedException, IOException;
+
+    /**
+     * Consume up to maxLen bytes into the dst array, waits until at least one is available.
+     * @param dst array to consume into.
+     * @param off offset in dst.
+     * @param maxLen maximum amount of bytes to consume.
+     * @exception SyncBufferTimeoutException on consume timeout, when buffer is empty.
+     * @exception SyncBufferSupplierExhaustedException when buffer is empty and the supplier is exhausted.
+     * @return int amount of bytes consumed.
+     */
+    int consume(byte[] dst, int off, int maxLen) throws InterruptedException, IOException;
+
+    @Override
+    default void supply(final Byte object) throws InterruptedException, IOException {
+        supplyByte(object);
+    }
+
+    @Override
+    default Byte consume() throws InterruptedException, IOException {
+        return consumeByte();
+    }
+
+    /**
+     * Closing the buffer marks the supplier as exhausted.
+     */
+    @Override
+    default void close() {
+        supplierIsExhausted();
+    }
+}
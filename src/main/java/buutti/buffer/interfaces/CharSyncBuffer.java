@@ -0,0 +1,66 @@
+package buutti.buffer.interfaces;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.exceptions.SyncBufferTimeoutException;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Primitive char specialization of the SyncBuffer. Elements are stored unboxed,
+ * so supplying and consuming through the primitive methods allocates nothing.
+ */
+public interface CharSyncBuffer extends SyncBuffer<Character>, Closeable {
+    /**
+     * Supply a single char into the buffer.
+     * @param c char
+     * @exception SyncBufferTimeoutException on supply timeout, when buffer is full.
+     */
+    void supplyChar(char c) throws InterruptedException, IOException;
+
+    /**
+     * Consume the first char that was supplied in the buffer.
+     * @exception SyncBufferTimeoutException on consume timeout, when buffer is empty.
+     * @exception SyncBufferSupplierExhaustedException when buffer is empty and the supplier is exhausted.
+     * @return char
+     */
+    char consumeChar() throws InterruptedException, IOException;
+
+    /**
+     * Supply len chars of the src array into the buffer, waiting for room as needed.
+     * @param src array to supply from.
+     * @param off offset in src.
+     * @param len amount of chars to supply.
+     * @exception SyncBufferTimeoutException on supply timeout, when buffer stays full.
+     */
+    void supply(char[] src, int off, int len) throws InterruptedException, IOException;
+
+    /**
+     * Consume up to maxLen chars into the dst array, waits until at least one is available.
+     * @param dst array to consume into.
+     * @param off offset in dst.
+     * @param maxLen maximum amount of chars to consume.
+     * @exception SyncBufferTimeoutException on consume timeout, when buffer is empty.
+     * @exception SyncBufferSupplierExhaustedException when buffer is empty and the supplier is exhausted.
+     * @return int amount of chars consumed.
+     */
+    int consume(char[] dst, int off, int maxLen) throws InterruptedException, IOException;
+
+    @Override
+    default void supply(final Character object) throws InterruptedException, IOException {
+        supplyChar(object);
+    }
+
+    @Override
+    default Character consume() throws InterruptedException, IOException {
+        return consumeChar();
+    }
+
+    /**
+     * Closing the buffer marks the supplier as exhausted.
+     */
+    @Override
+    default void close() {
+        supplierIsExhausted();
+    }
+}
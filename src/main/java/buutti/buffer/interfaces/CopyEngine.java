@@ -0,0 +1,18 @@
+package buutti.buffer.interfaces;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A strategy for copying an input file to an output file.
+ */
+public interface CopyEngine {
+    /**
+     * Copies the input to the output, replacing the contents of the output.
+     * @param in input path.
+     * @param out output path.
+     * @throws IOException on read/write error.
+     * @throws InterruptedException on thread interruption.
+     */
+    void copy(Path in, Path out) throws IOException, InterruptedException;
+}
@@ -2,7 +2,10 @@ package buutti.buffer.interfaces;
 
 import buutti.buffer.exceptions.SyncBufferTimeoutException;
 
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+
 import java.io.IOException;
+import java.util.Collection;
 
 public interface SyncBuffer<T> {
     /**
@@ -25,6 +28,58 @@ public interface SyncBuffer<T> {
      */
     T consume() throws InterruptedException, IOException;
 
+    /**
+     * Supply len generic Objects of the src array into the buffer, waiting for room as needed.
+     * @param src array to supply from.
+     * @param off offset in src.
+     * @param len amount of objects to supply.
+     * @exception SyncBufferTimeoutException on supply timeout, when buffer stays full. Objects supplied before the
+     * timeout stay in the buffer.
+     */
+    default void supply(final T[] src, final int off, final int len) throws InterruptedException, IOException {
+        for (int i = off; i < off + len; i++) {
+            supply(src[i]);
+        }
+    }
+
+    /**
+     * Consume up to maxLen generic Objects into the dst array, waits until at least one is available.
+     * @param dst array to consume into.
+     * @param off offset in dst.
+     * @param maxLen maximum amount of objects to consume.
+     * @exception SyncBufferTimeoutException on consume timeout, when buffer is empty.
+     * @exception SyncBufferSupplierExhaustedException when buffer is empty and the supplier is exhausted.
+     * @return int amount of objects consumed.
+     */
+    default int consume(final T[] dst, final int off, final int maxLen) throws InterruptedException, IOException {
+        if (maxLen == 0) {
+            return 0;
+        }
+        int n = 0;
+        dst[off + n++] = consume();
+        while (n < maxLen && !isEmpty()) {
+            dst[off + n++] = consume();
+        }
+        return n;
+    }
+
+    /**
+     * Moves up to maxElements of the currently buffered objects into the collection, without waiting.
+     * @param collection collection to add to.
+     * @param maxElements maximum amount of objects to move.
+     * @return int amount of objects moved.
+     */
+    int drainTo(Collection<? super T> collection, int maxElements);
+
+    /**
+     * Moves all currently buffered objects into the collection, without waiting.
+     * @param collection collection to add to.
+     * @return int amount of objects moved.
+     */
+    default int drainTo(final Collection<? super T> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
     /**
      * Checks whether the buffer is full.
      * @return boolean
@@ -0,0 +1,77 @@
+package buutti.buffer.interfaces;
+
+/**
+ * JMX view of the runtime counters of one or more SyncBuffers.
+ * Producers waiting on a full buffer point at a slow consumer, consumers waiting on an empty buffer at a slow producer.
+ */
+public interface SyncBufferMetricsMXBean {
+    /**
+     * @return long elements supplied (bytes for the byte buffers).
+     */
+    long getSupplied();
+
+    /**
+     * @return long elements consumed (bytes for the byte buffers).
+     */
+    long getConsumed();
+
+    /**
+     * @return long bytes supplied; by the byte buffers, and by the chunk queues counting their chunk sizes.
+     */
+    long getBytesSupplied();
+
+    /**
+     * @return long bytes consumed; by the byte buffers, and by the chunk queues counting their chunk sizes.
+     */
+    long getBytesConsumed();
+
+    /**
+     * @return long times a producer had to wait for a full buffer.
+     */
+    long getProducerWaits();
+
+    /**
+     * @return long cumulative nanos producers were blocked on a full buffer.
+     */
+    long getProducerWaitNanos();
+
+    /**
+     * @return long times a consumer had to wait for an empty buffer.
+     */
+    long getConsumerWaits();
+
+    /**
+     * @return long cumulative nanos consumers were blocked on an empty buffer.
+     */
+    long getConsumerWaitNanos();
+
+    /**
+     * @return long highest observed amount of elements in a buffer.
+     */
+    long getHighWaterMark();
+
+    /**
+     * @return long supply operations that timed out.
+     */
+    long getSupplyTimeouts();
+
+    /**
+     * @return long consume operations that timed out.
+     */
+    long getConsumeTimeouts();
+
+    /**
+     * @return long times an adaptive buffer was resized.
+     */
+    long getResizes();
+
+    /**
+     * @return long capacity after the latest resize of an adaptive buffer, 0 when never resized.
+     */
+    long getCapacity();
+
+    /**
+     * Resets all counters to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,47 @@
+package buutti.buffer.interfaces;
+
+/**
+ * JMX view and controls of a write throttle, shared by all copies that write through it.
+ * Limits take effect on the next write.
+ */
+public interface ThrottleMXBean {
+    /**
+     * @return long bytes per second written through the throttle at most, 0 = unlimited.
+     */
+    long getMaxRate();
+
+    /**
+     * @param maxRate bytes per second written through the throttle at most, 0 = unlimited.
+     */
+    void setMaxRate(long maxRate);
+
+    /**
+     * @return long writes per second through the throttle at most, 0 = unlimited.
+     */
+    long getMaxIops();
+
+    /**
+     * @param maxIops writes per second through the throttle at most, 0 = unlimited.
+     */
+    void setMaxIops(long maxIops);
+
+    /**
+     * @return long bytes written through the throttle.
+     */
+    long getBytes();
+
+    /**
+     * @return long writes through the throttle.
+     */
+    long getWrites();
+
+    /**
+     * @return long times a writer had to wait for the throttle.
+     */
+    long getWaits();
+
+    /**
+     * @return long cumulative nanos writers waited for the throttle.
+     */
+    long getWaitNanos();
+}
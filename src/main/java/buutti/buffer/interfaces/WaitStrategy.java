@@ -0,0 +1,23 @@
+package buutti.buffer.interfaces;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Strategy used by the lock-free buffers to wait for the other side to make progress.
+ * A strategy instance belongs to a single buffer.
+ */
+public interface WaitStrategy {
+    /**
+     * Waits until the condition holds or the timeout passes.
+     * @param condition condition to wait for, evaluated repeatedly.
+     * @param timeoutNanos maximum time to wait in nanoseconds. Any value below 0 = wait forever.
+     * @return boolean true if the condition holds, false on timeout.
+     * @throws InterruptedException on thread interruption.
+     */
+    boolean await(BooleanSupplier condition, long timeoutNanos) throws InterruptedException;
+
+    /**
+     * Wakes up any waiters after the buffer state changed.
+     */
+    void signalAll();
+}
@@ -1,19 +1,47 @@
 package buutti.buffer.src;
 
-import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.engine.AsyncCopyEngine;
+import buutti.buffer.engine.BatchCopier;
+import buutti.buffer.engine.ChecksumAlgorithm;
+import buutti.buffer.engine.ChecksumCopyEngine;
+import buutti.buffer.engine.Compression;
+import buutti.buffer.engine.CompressionCopyEngine;
+import buutti.buffer.engine.DeltaCopyEngine;
+import buutti.buffer.engine.FanCopier;
+import buutti.buffer.engine.FlushPolicy;
+import buutti.buffer.engine.LineEnding;
+import buutti.buffer.engine.MappedCopyEngine;
+import buutti.buffer.engine.ResumableCopyEngine;
+import buutti.buffer.engine.SyncPolicy;
+import buutti.buffer.engine.TextCopyEngine;
 import buutti.buffer.exceptions.SyncBufferTimeoutException;
-import buutti.buffer.interfaces.SyncBuffer;
-import buutti.buffer.util.AbstractSyncBuffer;
-import buutti.buffer.util.SyncBufferImpl;
+import buutti.buffer.util.SyncBufferMetrics;
+import buutti.buffer.util.Throttle;
+import buutti.buffer.util.WaitStrategies;
 
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.util.concurrent.CountDownLatch;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 
+import javax.management.JMException;
+
 import org.apache.commons.cli.*;
 
 /**
@@ -21,6 +49,11 @@ import org.apache.commons.cli.*;
  * Contains methods for read/writing and managing CLI options.
  */
 public class BuuttiBufferCopy {
+    /**
+     * Input/output argument meaning stdin/stdout.
+     */
+    private static final String STDIO = "-";
+
     /**
      * Main.
      * @param args String array.
@@ -32,26 +65,116 @@ public class BuuttiBufferCopy {
         try {
             CommandLine commandLine = parser.parse(options, args);
 
+            if (STDIO.equals(commandLine.getOptionValue('O'))) {
+                // Keep stdout for the copied data, status messages go to stderr.
+                System.setOut(System.err);
+            }
+
             if (commandLine.hasOption('h')) {
                 printHelp(options);
             }
 
-            int bufferSize = parseBufferSize(commandLine);
-            long bufferTimeout = parseBufferTimeout(commandLine);
+            CopySettings settings = new CopySettings();
+            settings.bufferSize = parseBufferSize(commandLine);
+            settings.maxBufferSize = parseMaxBufferSize(commandLine, settings.bufferSize);
+            settings.bufferTimeout = parseBufferTimeout(commandLine);
+            settings.bufferType = parseBufferType(commandLine);
+            settings.waitStrategy = parseWaitStrategy(commandLine);
+            settings.mode = parseMode(commandLine);
+            settings.mmapWindow = parseMmapWindow(commandLine);
+            settings.chunkSize = parseChunkSize(commandLine);
+            settings.queueDepth = parseQueueDepth(commandLine);
+            settings.threads = parseThreads(commandLine, settings.threads);
+            settings.jobs = parseJobs(commandLine, settings.jobs);
+            settings.maxMemory = parseMaxMemory(commandLine);
+            settings.virtualThreads = commandLine.hasOption("virtual-threads");
+            settings.flushPolicy = parseFlushPolicy(commandLine);
+            settings.checksum = parseChecksum(commandLine);
+            settings.verify = !commandLine.hasOption("no-verify");
+            settings.checkpointInterval = parseCheckpointInterval(commandLine);
+            settings.compress = parseCompress(commandLine);
+            settings.decompress = commandLine.hasOption("decompress");
+            settings.deltaBlockSize = parseDeltaBlockSize(commandLine);
+            settings.deltaIndex = commandLine.hasOption("delta-index");
+            settings.text = commandLine.hasOption("from-charset") || commandLine.hasOption("to-charset")
+                    || commandLine.hasOption("line-endings");
+            settings.fromCharset = parseCharset(commandLine, "from-charset");
+            settings.toCharset = parseCharset(commandLine, "to-charset");
+            settings.lineEnding = parseLineEnding(commandLine);
+            settings.sparse = commandLine.hasOption("sparse");
+            settings.syncPolicy = parseSyncPolicy(commandLine);
+            settings.syncInterval = settings.syncPolicy == SyncPolicy.INTERVAL
+                    ? parseSize(commandLine.getOptionValue("sync")) : 0L;
+            settings.direct = commandLine.hasOption("direct");
+            settings.writeBatch = parseWriteBatch(commandLine);
+            long maxRate = parseMaxRate(commandLine);
+            long maxIops = parseMaxIops(commandLine);
+            if (maxRate > 0 || maxIops > 0) {
+                settings.throttle = new Throttle(maxRate, maxIops);
+            }
+            try {
+                String modeSwitch = settings.validate(commandLine.hasOption("fan-in") || commandLine.hasOption("fan-out"),
+                        STDIO.equals(commandLine.getOptionValue('I')) || STDIO.equals(commandLine.getOptionValue('O')));
+                if (modeSwitch != null) {
+                    System.out.println(modeSwitch);
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                printHelp(options);
+            }
+            long statsInterval = parseStatsInterval(commandLine);
 
-            fileArgsCheck(commandLine);
+            if (!commandLine.hasOption("manifest") && !(commandLine.hasOption('I') && commandLine.hasOption('O'))) {
+                printHelp(options);
+            }
+            if (statsInterval > 0 || commandLine.hasOption("jmx")) {
+                startMetrics(settings, statsInterval, commandLine.hasOption("jmx"));
+            }
+            if (settings.throttle != null && commandLine.hasOption("jmx")) {
+                try {
+                    settings.throttle.register("BuuttiBufferCopy");
+                } catch (JMException e) {
+                    System.out.println("Could not register the throttle MBean: " + e.getMessage());
+                }
+            }
+            if (commandLine.hasOption("fan-in") || commandLine.hasOption("fan-out")) {
+                doFan(commandLine, settings);
+                printStats(settings);
+                System.out.println("Done!");
+                return;
+            }
+            if (isBatch(commandLine)) {
+                doBatch(commandLine, settings);
+                printStats(settings);
+                System.out.println("Done!");
+                return;
+            }
+
+            // A delta copy to a missing output is a full copy, an empty output would be hashed for nothing.
+            fileArgsCheck(commandLine, settings.deltaBlockSize == 0);
 
             String in = commandLine.getOptionValue('I');
             String out = commandLine.getOptionValue('O');
 
             // Start copy.
             try {
-                doCopy(in, out, bufferSize, bufferTimeout);
+                if (STDIO.equals(in) || STDIO.equals(out)) {
+                    copyStdio(in, out, settings);
+                } else {
+                    settings.createEngine().copy(Paths.get(in), Paths.get(out));
+                }
             } catch (OutOfMemoryError e) {
                 System.out.println("Memory error occurred, try a smaller buffer size?");
                 e.printStackTrace();
                 System.exit(1);
+            } catch (SyncBufferTimeoutException e) {
+                System.out.println("Buffer timeout while copying!");
+                System.exit(1);
+            } catch (IOException e) {
+                System.out.println("IO error occurred while copying: " + e.getMessage());
+                System.exit(1);
             }
+            printStats(settings);
             System.out.println("Done!");
         } catch (ParseException e) {
             printHelp(options);
@@ -59,6 +182,192 @@ public class BuuttiBufferCopy {
 
     }
 
+    /**
+     * Starts collecting buffer metrics, optionally printing a stats line every interval and exposing them over JMX.
+     * @param settings copy settings, the metrics are attached to every buffer they create.
+     * @param statsInterval seconds between stats lines, 0 = no periodic stats lines.
+     * @param jmx whether to register the metrics MBean.
+     */
+    private static void startMetrics(final CopySettings settings, final long statsInterval, final boolean jmx) {
+        SyncBufferMetrics metrics = new SyncBufferMetrics();
+        settings.metrics = metrics;
+        if (jmx) {
+            try {
+                metrics.register("BuuttiBufferCopy");
+            } catch (JMException e) {
+                System.out.println("Could not register the buffer metrics MBean: " + e.getMessage());
+            }
+        }
+        if (statsInterval > 0) {
+            ScheduledExecutorService statsPrinter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "buffer-stats");
+                t.setDaemon(true);
+                return t;
+            });
+            statsPrinter.scheduleAtFixedRate(() -> System.out.println("Buffer stats: " + metrics),
+                    statsInterval, statsInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Prints the final stats line when metrics are collected.
+     * @param settings copy settings.
+     */
+    private static void printStats(final CopySettings settings) {
+        if (settings.metrics != null) {
+            System.out.println("Buffer stats: " + settings.metrics);
+        }
+        if (settings.metrics != null && settings.throttle != null) {
+            System.out.println("Throttle stats: " + settings.throttle);
+        }
+    }
+
+    /**
+     * Checks whether the arguments describe a batch; a manifest, multiple inputs or an input directory.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return boolean
+     */
+    private static boolean isBatch(final CommandLine commandLine) {
+        if (commandLine.hasOption("manifest")) {
+            return true;
+        }
+        String[] inputs = commandLine.getOptionValues('I');
+        try {
+            return inputs.length > 1 || Files.isDirectory(Paths.get(inputs[0]));
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Concatenates several inputs into one output (fan-in), or copies one input to several outputs (fan-out).
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @param settings copy settings.
+     * @throws InterruptedException on thread interruption.
+     */
+    private static void doFan(final CommandLine commandLine, final CopySettings settings) throws InterruptedException {
+        boolean fanIn = commandLine.hasOption("fan-in");
+        String[] inputs = commandLine.getOptionValues('I');
+        String[] outputs = commandLine.getOptionValues('O');
+        if (fanIn == commandLine.hasOption("fan-out") || (fanIn ? outputs.length != 1 : inputs.length != 1)) {
+            System.out.println("Fan-in takes several inputs and one output, fan-out one input and several outputs.");
+            printHelp(getCLIOptions());
+        }
+        List<Path> inputPaths = new ArrayList<>(), outputPaths = new ArrayList<>();
+        try {
+            for (String input : inputs) {
+                inputPaths.add(Paths.get(input));
+            }
+            for (String output : outputs) {
+                outputPaths.add(Paths.get(output));
+            }
+        } catch (InvalidPathException e) {
+            System.out.println("Invalid path: " + e.getMessage());
+            System.exit(1);
+        }
+        if (inputPaths.contains(Paths.get(STDIO)) || outputPaths.contains(Paths.get(STDIO))) {
+            System.out.println("Fan-in and fan-out copy files, not stdin/stdout.");
+            System.exit(1);
+        }
+
+        try {
+            FanCopier copier = settings.createFanCopier();
+            if (fanIn) {
+                copier.concat(inputPaths, outputPaths.get(0));
+            } else {
+                copier.tee(inputPaths.get(0), outputPaths);
+            }
+        } catch (IOException e) {
+            System.out.println("IO error occurred while copying: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Copies a batch of files concurrently and reports the failed ones.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @param settings copy settings.
+     * @throws InterruptedException on thread interruption.
+     */
+    private static void doBatch(final CommandLine commandLine, final CopySettings settings) throws InterruptedException {
+        List<BatchCopier.CopyTask> tasks = null;
+        try {
+            if (commandLine.hasOption("manifest")) {
+                tasks = BatchCopier.fromManifest(Paths.get(commandLine.getOptionValue("manifest")));
+            } else {
+                Path outputDir = Paths.get(commandLine.getOptionValue('O'));
+                if (Files.exists(outputDir) && !Files.isDirectory(outputDir)) {
+                    System.out.println("The output must be a directory when copying multiple files or a directory.");
+                    System.exit(1);
+                }
+                List<Path> inputs = new ArrayList<>();
+                for (String input : commandLine.getOptionValues('I')) {
+                    inputs.add(Paths.get(input));
+                }
+                tasks = BatchCopier.fromInputs(inputs, outputDir);
+            }
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("Could not list the files to copy: " + e.getMessage());
+            System.exit(1);
+        }
+
+        BatchCopier copier = new BatchCopier(settings.createEngine(), settings.jobs, settings.maxMemory,
+                settings.memoryPerCopy());
+        copier.setVirtualThreads(settings.virtualThreads);
+        Map<BatchCopier.CopyTask, Exception> failures = copier.copyAll(tasks);
+        failures.forEach((task, e) ->
+                System.out.println("Failed to copy " + task.in() + " to " + task.out() + ": " + e));
+        System.out.println("Copied " + (tasks.size() - failures.size()) + "/" + tasks.size() + " files.");
+        if (!failures.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Copies with the buffered pipeline, compresses/decompresses or transcodes, when the input or output is
+     * stdin/stdout.
+     * A checksum is printed, and
+     * written to a sidecar file and verified when the output is a file.
+     * @param in input file or -
+     * @param out output file or -
+     * @param settings copy settings.
+     * @throws IOException on read/write error.
+     * @throws InterruptedException on thread interruption.
+     */
+    private static void copyStdio(final String in, final String out, final CopySettings settings)
+            throws IOException, InterruptedException {
+        byte[] digest;
+        try (ReadableByteChannel src = STDIO.equals(in)
+                ? new FileInputStream(FileDescriptor.in).getChannel() : FileChannel.open(Paths.get(in));
+             WritableByteChannel dst = STDIO.equals(out)
+                     ? new FileOutputStream(FileDescriptor.out).getChannel()
+                     : FileChannel.open(Paths.get(out), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                             StandardOpenOption.TRUNCATE_EXISTING)) {
+            CompressionCopyEngine compression = settings.createCompressionEngine();
+            if (compression != null) {
+                compression.copy(src, dst);
+                return;
+            }
+            TextCopyEngine text = settings.createTextEngine();
+            if (text != null) {
+                text.copy(src, dst);
+                return;
+            }
+            if (settings.checksum == null) {
+                settings.createBufferedEngine().copy(src, dst);
+                return;
+            }
+            digest = settings.createBufferedEngine().copy(src, dst, settings.checksum);
+        }
+        System.out.println(settings.checksum + ": " + HexFormat.of().formatHex(digest));
+        if (!STDIO.equals(out)) {
+            ChecksumCopyEngine.writeSidecar(Paths.get(out), settings.checksum, digest);
+            if (settings.verify) {
+                ChecksumCopyEngine.verify(Paths.get(out), settings.checksum, digest);
+            }
+        }
+    }
+
     /**
      * Parses and validated the buffer timeout option.
      * @param commandLine CommandLine object containing parsed arguments.
@@ -74,6 +383,416 @@ public class BuuttiBufferCopy {
         return -1;
     }
 
+    /**
+     * Parses and validated the buffer type option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return String bufferType
+     */
+    private static String parseBufferType(final CommandLine commandLine) {
+        String s = commandLine.getOptionValue('S', CopySettings.BUFFER_RING);
+        if (!(s.equals(CopySettings.BUFFER_RING) || s.equals(CopySettings.BUFFER_SPSC))) {
+            printHelp(getCLIOptions());
+        }
+        return s;
+    }
+
+    /**
+     * Parses and validated the wait strategy option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return String waitStrategy
+     */
+    private static String parseWaitStrategy(final CommandLine commandLine) {
+        String s = commandLine.getOptionValue('W', WaitStrategies.BLOCKING);
+        try {
+            WaitStrategies.byName(s);
+        } catch (IllegalArgumentException e) {
+            printHelp(getCLIOptions());
+        }
+        return s;
+    }
+
+    /**
+     * Parses and validated the copy mode option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return String mode
+     */
+    private static String parseMode(final CommandLine commandLine) {
+        String s = commandLine.getOptionValue('M', CopySettings.MODE_BUFFERED);
+        if (!(s.equals(CopySettings.MODE_BUFFERED) || s.equals(CopySettings.MODE_TRANSFER)
+                || s.equals(CopySettings.MODE_MMAP) || s.equals(CopySettings.MODE_POOLED)
+                || s.equals(CopySettings.MODE_PARALLEL) || s.equals(CopySettings.MODE_ASYNC))) {
+            printHelp(getCLIOptions());
+        }
+        return s;
+    }
+
+    /**
+     * Parses and validated the mmap window size option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return long mmapWindow
+     */
+    private static long parseMmapWindow(final CommandLine commandLine) {
+        String s = commandLine.getOptionValue("mmap-window", String.valueOf(MappedCopyEngine.DEFAULT_WINDOW_SIZE));
+        try {
+            long retval = parseSize(s);
+            if (retval < 1 || retval > Integer.MAX_VALUE) {
+                printHelp(getCLIOptions());
+            }
+            return retval;
+        } catch (NumberFormatException e) {
+            printHelp(getCLIOptions());
+        }
+        return MappedCopyEngine.DEFAULT_WINDOW_SIZE;
+    }
+
+    /**
+     * Parses and validated the chunk size option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return int chunkSize
+     */
+    private static int parseChunkSize(final CommandLine commandLine) {
+        String s = commandLine.getOptionValue("chunk-size", String.valueOf(CopySettings.DEFAULT_CHUNK_SIZE));
+        try {
+            long retval = parseSize(s);
+            if (retval < 1 || retval > Integer.MAX_VALUE) {
+                printHelp(getCLIOptions());
+            }
+            return (int) retval;
+        } catch (NumberFormatException e) {
+            printHelp(getCLIOptions());
+        }
+        return CopySettings.DEFAULT_CHUNK_SIZE;
+    }
+
+    /**
+     * Parses and validated the queue depth option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return int queueDepth
+     */
+    private static int parseQueueDepth(final CommandLine commandLine) {
+        String s = commandLine.getOptionValue("queue-depth", String.valueOf(AsyncCopyEngine.DEFAULT_QUEUE_DEPTH));
+        try {
+            int retval = Integer.parseInt(s);
+            if (retval < 1) {
+                printHelp(getCLIOptions());
+            }
+            return retval;
+        } catch (NumberFormatException e) {
+            printHelp(getCLIOptions());
+        }
+        return AsyncCopyEngine.DEFAULT_QUEUE_DEPTH;
+    }
+
+    /**
+     * Parses and validated the parallel threads option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @param defaultThreads value when the option is not given.
+     * @return int threads
+     */
+    private static int parseThreads(final CommandLine commandLine, final int defaultThreads) {
+        String s = commandLine.getOptionValue('P', String.valueOf(defaultThreads));
+        try {
+            int retval = Integer.parseInt(s);
+            if (retval < 1) {
+                printHelp(getCLIOptions());
+            }
+            return retval;
+        } catch (NumberFormatException e) {
+            printHelp(getCLIOptions());
+        }
+        return defaultThreads;
+    }
+
+    /**
+     * Parses and validated the batch jobs option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @param defaultJobs value when the option is not given.
+     * @return int jobs
+     */
+    private static int parseJobs(final CommandLine commandLine, final int defaultJobs) {
+        String s = commandLine.getOptionValue("jobs", String.valueOf(defaultJobs));
+        try {
+            int retval = Integer.parseInt(s);
+            if (retval < 1) {
+                printHelp(getCLIOptions());
+            }
+            return retval;
+        } catch (NumberFormatException e) {
+            printHelp(getCLIOptions());
+        }
+        return defaultJobs;
+    }
+
+    /**
+     * Parses and validated the batch memory cap option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return long maxMemory, -1 = no cap.
+     */
+    private static long parseMaxMemory(final CommandLine commandLine) {
+        String s = commandLine.getOptionValue("max-memory", "-1").trim();
+        if (s.equals("-1")) {
+            return -1L;
+        }
+        try {
+            long retval = parseSize(s);
+            if (retval < 1) {
+                printHelp(getCLIOptions());
+            }
+            return retval;
+        } catch (NumberFormatException e) {
+            printHelp(getCLIOptions());
+        }
+        return -1L;
+    }
+
+    /**
+     * Parses and validated the max rate option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return long maxRate in bytes per second, 0 = unlimited.
+     */
+    private static long parseMaxRate(final CommandLine commandLine) {
+        String s = commandLine.getOptionValue("max-rate", "0");
+        try {
+            long retval = parseSize(s);
+            if (retval < 0) {
+                printHelp(getCLIOptions());
+            }
+            return retval;
+        } catch (NumberFormatException e) {
+            printHelp(getCLIOptions());
+        }
+        return 0L;
+    }
+
+    /**
+     * Parses and validated the max IOPS option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return long maxIops in writes per second, 0 = unlimited.
+     */
+    private static long parseMaxIops(final CommandLine commandLine) {
+        String s = commandLine.getOptionValue("max-iops", "0");
+        try {
+            long retval = Long.parseLong(s);
+            if (retval < 0) {
+                printHelp(getCLIOptions());
+            }
+            return retval;
+        } catch (NumberFormatException e) {
+            printHelp(getCLIOptions());
+        }
+        return 0L;
+    }
+
+    /**
+     * Parses and validated the flush policy option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return FlushPolicy flushPolicy
+     */
+    private static FlushPolicy parseFlushPolicy(final CommandLine commandLine) {
+        String s = commandLine.getOptionValue("flush", FlushPolicy.IDLE.name());
+        try {
+            return FlushPolicy.valueOf(s.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            printHelp(getCLIOptions());
+        }
+        return FlushPolicy.IDLE;
+    }
+
+    /**
+     * Parses and validated the sync option; none, end, dsync, or a size for the INTERVAL policy.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return SyncPolicy syncPolicy
+     */
+    private static SyncPolicy parseSyncPolicy(final CommandLine commandLine) {
+        String s = commandLine.getOptionValue("sync", SyncPolicy.NONE.name()).toUpperCase(Locale.ROOT);
+        if (s.equals(SyncPolicy.NONE.name()) || s.equals(SyncPolicy.END.name()) || s.equals(SyncPolicy.DSYNC.name())) {
+            return SyncPolicy.valueOf(s);
+        }
+        try {
+            if (parseSize(s) < 1) {
+                printHelp(getCLIOptions());
+            }
+            return SyncPolicy.INTERVAL;
+        } catch (NumberFormatException e) {
+            printHelp(getCLIOptions());
+        }
+        return SyncPolicy.NONE;
+    }
+
+    /**
+     * Parses and validated the write batch option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return int writeBatch, 0 when not given.
+     */
+    private static int parseWriteBatch(final CommandLine commandLine) {
+        String s = commandLine.getOptionValue("write-batch", "0");
+        try {
+            long retval = parseSize(s);
+            if (retval < 0 || retval > Integer.MAX_VALUE - (1 << 16)) {
+                printHelp(getCLIOptions());
+            }
+            return (int) retval;
+        } catch (NumberFormatException e) {
+            printHelp(getCLIOptions());
+        }
+        return 0;
+    }
+
+    /**
+     * Parses and validated the resume and checkpoint interval options.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return long checkpointInterval, 0 when not resumable.
+     */
+    private static long parseCheckpointInterval(final CommandLine commandLine) {
+        if (!commandLine.hasOption("resume")) {
+            return 0L;
+        }
+        String s = commandLine.getOptionValue("checkpoint-interval", String.valueOf(ResumableCopyEngine.DEFAULT_INTERVAL));
+        try {
+            long retval = parseSize(s);
+            if (retval < 1) {
+                printHelp(getCLIOptions());
+            }
+            return retval;
+        } catch (NumberFormatException e) {
+            printHelp(getCLIOptions());
+        }
+        return ResumableCopyEngine.DEFAULT_INTERVAL;
+    }
+
+    /**
+     * Parses and validated the delta and delta block size options.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return int deltaBlockSize, 0 when not incremental.
+     */
+    private static int parseDeltaBlockSize(final CommandLine commandLine) {
+        if (!commandLine.hasOption("delta")) {
+            return 0;
+        }
+        String s = commandLine.getOptionValue("delta-block-size", String.valueOf(DeltaCopyEngine.DEFAULT_BLOCK_SIZE));
+        try {
+            long retval = parseSize(s);
+            if (retval < 1 || retval > (1 << 30)) {
+                printHelp(getCLIOptions());
+            }
+            return (int) retval;
+        } catch (NumberFormatException e) {
+            printHelp(getCLIOptions());
+        }
+        return DeltaCopyEngine.DEFAULT_BLOCK_SIZE;
+    }
+
+    /**
+     * Parses and validated the compress option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return Compression output format, null when not given.
+     */
+    private static Compression parseCompress(final CommandLine commandLine) {
+        if (!commandLine.hasOption("compress")) {
+            return null;
+        }
+        try {
+            return Compression.valueOf(commandLine.getOptionValue("compress").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            printHelp(getCLIOptions());
+        }
+        return null;
+    }
+
+    /**
+     * Parses and validated a charset option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @param option from-charset or to-charset.
+     * @return Charset charset, UTF-8 when not given.
+     */
+    private static Charset parseCharset(final CommandLine commandLine, final String option) {
+        if (!commandLine.hasOption(option)) {
+            return StandardCharsets.UTF_8;
+        }
+        try {
+            return Charset.forName(commandLine.getOptionValue(option));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unsupported charset: " + commandLine.getOptionValue(option));
+            printHelp(getCLIOptions());
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Parses and validated the line endings option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return LineEnding lineEnding
+     */
+    private static LineEnding parseLineEnding(final CommandLine commandLine) {
+        String s = commandLine.getOptionValue("line-endings", LineEnding.KEEP.name());
+        try {
+            return LineEnding.valueOf(s.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            printHelp(getCLIOptions());
+        }
+        return LineEnding.KEEP;
+    }
+
+    /**
+     * Parses and validated the checksum option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return ChecksumAlgorithm checksum, null when not given.
+     */
+    private static ChecksumAlgorithm parseChecksum(final CommandLine commandLine) {
+        if (!commandLine.hasOption("checksum")) {
+            return null;
+        }
+        try {
+            return ChecksumAlgorithm.valueOf(commandLine.getOptionValue("checksum").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            printHelp(getCLIOptions());
+        }
+        return null;
+    }
+
+    /**
+     * Parses and validated the stats interval option.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @return long statsInterval in seconds, 0 = no periodic stats.
+     */
+    private static long parseStatsInterval(final CommandLine commandLine) {
+        String s = commandLine.getOptionValue("stats", "0");
+        try {
+            long retval = Long.parseLong(s);
+            if (retval < 0) {
+                printHelp(getCLIOptions());
+            }
+            return retval;
+        } catch (NumberFormatException e) {
+            printHelp(getCLIOptions());
+        }
+        return 0L;
+    }
+
+    /**
+     * Parses a byte size with an optional K, M or G (binary) suffix, e.g. 64M.
+     * @param s size string.
+     * @return long size in bytes.
+     * @throws NumberFormatException on an invalid size.
+     */
+    static long parseSize(final String s) {
+        String size = s.trim().toUpperCase(Locale.ROOT);
+        int shift = switch (size.isEmpty() ? ' ' : size.charAt(size.length() - 1)) {
+            case 'K' -> 10;
+            case 'M' -> 20;
+            case 'G' -> 30;
+            default -> 0;
+        };
+        if (shift > 0) {
+            size = size.substring(0, size.length() - 1);
+        }
+        long value = Long.parseLong(size);
+        if (value > (Long.MAX_VALUE >> shift)) {
+            throw new NumberFormatException("Size too large: " + s);
+        }
+        return value << shift;
+    }
+
     /**
      * Parses and validated the buffer size option.
      * @param commandLine CommandLine object containing parsed arguments.
@@ -94,22 +813,59 @@ public class BuuttiBufferCopy {
     }
 
     /**
-     * Checks whether in/out files are read/writable and valid.
+     * Parses and validated the maximum buffer size option.
      * @param commandLine CommandLine object containing parsed arguments.
+     * @param bufferSize parsed (minimum) buffer size.
+     * @return int maxBufferSize, 0 = fixed size buffer.
      */
-    private static void fileArgsCheck(final CommandLine commandLine) {
+    private static int parseMaxBufferSize(final CommandLine commandLine, final int bufferSize) {
+        if (!commandLine.hasOption("max-buffer-size")) {
+            return 0;
+        }
         try {
-            Path inputPath = Paths.get(commandLine.getOptionValue('I'));
-            if (!(Files.exists(inputPath) && Files.isReadable(inputPath))) {
-                System.out.println("The input file specified is not a valid file or cannot be read.");
-                System.exit(1);
+            int retval = Integer.parseInt(commandLine.getOptionValue("max-buffer-size"));
+            if (retval < bufferSize) {
+                printHelp(getCLIOptions());
+            }
+            return retval;
+        } catch (NumberFormatException e) {
+            printHelp(getCLIOptions());
+        }
+        return 0;
+    }
+
+    /**
+     * Checks whether in/out files are read/writable and valid. - (stdin/stdout) is always valid.
+     * @param commandLine CommandLine object containing parsed arguments.
+     * @param create whether a missing output is created, otherwise its directory must be writable.
+     */
+    private static void fileArgsCheck(final CommandLine commandLine, final boolean create) {
+        try {
+            String input = commandLine.getOptionValue('I');
+            if (!STDIO.equals(input)) {
+                Path inputPath = Paths.get(input);
+                if (!(Files.exists(inputPath) && Files.isReadable(inputPath))) {
+                    System.out.println("The input file specified is not a valid file or cannot be read.");
+                    System.exit(1);
+                }
             }
         } catch (InvalidPathException e) {
             System.out.println("The input file specified is not a valid file/path.");
             System.exit(1);
         }
         try {
+            if (STDIO.equals(commandLine.getOptionValue('O'))) {
+                return;
+            }
             Path outputPath = Paths.get(commandLine.getOptionValue('O'));
+            if (!create && !Files.exists(outputPath)) {
+                Path directory = outputPath.toAbsolutePath().getParent();
+                if (directory == null || !Files.isWritable(directory)) {
+                    System.out.println("The output file specified is not in a writable directory.");
+                    System.exit(1);
+                }
+                return;
+            }
             File file = outputPath.toFile();
             file.createNewFile();
             if (!Files.isWritable(outputPath)) {
@@ -142,31 +898,289 @@ public class BuuttiBufferCopy {
      */
     private static Options getCLIOptions() {
         Option option_I = Option.builder("I")
-                .required(true)
+                .required(false)
                 .hasArg()
-                .desc("The input file.")
+                .desc("The input file, - for stdin. Repeat for multiple inputs, or give a directory to copy it "
+                        + "recursively; the output is then a directory. Required without a manifest.")
                 .longOpt("input")
                 .build();
         Option option_O = Option.builder("O")
-                .required(true)
+                .required(false)
                 .hasArg()
-                .desc("The output file.")
+                .desc("The output file, - for stdout. Repeat for multiple outputs with fan-out. Required without a manifest.")
                 .longOpt("output")
                 .build();
+        Option option_manifest = Option.builder()
+                .required(false)
+                .hasArg()
+                .desc("Manifest file of copies to make, one tab separated input/output pair per line.")
+                .longOpt("manifest")
+                .build();
+        Option option_jobs = Option.builder()
+                .required(false)
+                .hasArg()
+                .type(Number.class)
+                .desc("The amount of concurrent copies of a batch. Default is the amount of processors.")
+                .longOpt("jobs")
+                .build();
+        Option option_maxMemory = Option.builder()
+                .required(false)
+                .hasArg()
+                .desc("Cap on the buffer memory of all copies of a batch in flight, K/M/G suffixes allowed. "
+                        + "Min: 1. Default is -1 (no cap).")
+                .longOpt("max-memory")
+                .build();
         Option option_B = Option.builder("B")
                 .required(false)
                 .hasArg()
                 .type(Number.class)
-                .desc("The buffer size. Default is 16. Min: 1. Max: " + Integer.MAX_VALUE)
+                .desc("The buffer size. Default is 16. Min: 1. Max: " + Integer.MAX_VALUE
+                        + ". The amount of chunks in the " + CopySettings.MODE_POOLED + " mode.")
                 .longOpt("buffer-size")
                 .build();
         Option option_T =  Option.builder("T")
                 .required(false)
                 .hasArg()
                 .type(Number.class)
-                .desc("The buffer IO timeout in millis. Any value below 0 = (wait forever/until supplier is done).")
+                .desc("The buffer IO timeout in millis. 0 or any value below = (wait forever/until supplier is done).")
                 .longOpt("buffer-timeout")
                 .build();
+        Option option_maxB =  Option.builder()
+                .required(false)
+                .hasArg()
+                .type(Number.class)
+                .desc("Makes the " + CopySettings.BUFFER_RING + " buffer adaptive; it starts at the buffer size and grows "
+                        + "up to this size while the reader keeps waiting on a full buffer, shrinking back while the "
+                        + "writer keeps waiting on an empty one.")
+                .longOpt("max-buffer-size")
+                .build();
+        Option option_S =  Option.builder("S")
+                .required(false)
+                .hasArg()
+                .desc("The buffer type. " + CopySettings.BUFFER_RING
+                        + " (default): locking ring buffer, safe for any amount of threads. " + CopySettings.BUFFER_SPSC + ": lock-free single producer/single consumer ring buffer.")
+                .longOpt("buffer-type")
+                .build();
+        Option option_W =  Option.builder("W")
+                .required(false)
+                .hasArg()
+                .desc("The wait strategy of the " + CopySettings.BUFFER_SPSC + " buffer: " + WaitStrategies.BUSY_SPIN + ", "
+                        + WaitStrategies.YIELD + ", " + WaitStrategies.PARK + " or " + WaitStrategies.BLOCKING
+                        + " (default).")
+                .longOpt("wait-strategy")
+                .build();
+        Option option_M =  Option.builder("M")
+                .required(false)
+                .hasArg()
+                .desc("The copy mode. " + CopySettings.MODE_BUFFERED + " (default): reader/writer threads through the buffer. "
+                        + CopySettings.MODE_TRANSFER + ": zero-copy kernel transfer. "
+                        + CopySettings.MODE_MMAP + ": memory-mapped input windows. "
+                        + CopySettings.MODE_POOLED + ": pool of buffer size direct chunks recycled between the threads. "
+                        + CopySettings.MODE_PARALLEL + ": chunk size regions copied by parallel threads. "
+                        + CopySettings.MODE_ASYNC + ": queue depth asynchronous chunk size reads and writes in flight. "
+                        + "The " + CopySettings.MODE_TRANSFER + ", " + CopySettings.MODE_MMAP + ", "
+                        + CopySettings.MODE_PARALLEL + " and " + CopySettings.MODE_ASYNC + " modes fall back to " + CopySettings.MODE_BUFFERED
+                        + " when the input is not a regular file.")
+                .longOpt("mode")
+                .build();
+        Option option_mmapWindow =  Option.builder()
+                .required(false)
+                .hasArg()
+                .desc("The mapped window size in bytes of the " + CopySettings.MODE_MMAP
+                        + " mode, K/M/G suffixes allowed. Default is 64M.")
+                .longOpt("mmap-window")
+                .build();
+        Option option_chunkSize =  Option.builder()
+                .required(false)
+                .hasArg()
+                .desc("The chunk size in bytes of the " + CopySettings.MODE_POOLED + " and " + CopySettings.MODE_ASYNC
+                        + " modes and the region size of the " + CopySettings.MODE_PARALLEL
+                        + " mode, K/M/G suffixes allowed. Default is 1M.")
+                .longOpt("chunk-size")
+                .build();
+        Option option_queueDepth =  Option.builder()
+                .required(false)
+                .hasArg()
+                .type(Number.class)
+                .desc("The amount of reads and writes in flight in the " + CopySettings.MODE_ASYNC + " mode. Default is "
+                        + AsyncCopyEngine.DEFAULT_QUEUE_DEPTH + ".")
+                .longOpt("queue-depth")
+                .build();
+        Option option_P =  Option.builder("P")
+                .required(false)
+                .hasArg()
+                .type(Number.class)
+                .desc("The amount of threads of the " + CopySettings.MODE_PARALLEL
+                        + " mode. Default is the amount of processors.")
+                .longOpt("parallel-threads")
+                .build();
+        Option option_flush =  Option.builder()
+                .required(false)
+                .hasArg()
+                .desc("When the " + CopySettings.MODE_BUFFERED + " mode writes consumed data. always: every block "
+                        + "immediately. idle (default): as soon as the buffer runs empty or a block is full. "
+                        + "end: full blocks only, and the rest at the end.")
+                .longOpt("flush")
+                .build();
+        Option option_resume =  Option.builder()
+                .required(false)
+                .desc("Resumable copy of regular files. Checkpoints the progress next to the output (out.checkpoint); "
+                        + "running the same copy again after an interruption validates what was written and "
+                        + "continues from there.")
+                .longOpt("resume")
+                .build();
+        Option option_checkpointInterval =  Option.builder()
+                .required(false)
+                .hasArg()
+                .desc("Bytes between checkpoints of a resumable copy, each forces the output to disk. "
+                        + "K/M/G suffixes allowed. Default is 64M.")
+                .longOpt("checkpoint-interval")
+                .build();
+        Option option_delta =  Option.builder()
+                .required(false)
+                .desc("Incremental copy of regular files onto an earlier copy. Input and output are hashed in blocks, "
+                        + "both at once, and only the blocks that differ are written; the output is then truncated to "
+                        + "the input size. Outputs that don't exist yet are copied in full.")
+                .longOpt("delta")
+                .build();
+        Option option_deltaBlockSize =  Option.builder()
+                .required(false)
+                .hasArg()
+                .desc("Bytes per compared block of an incremental copy. K/M/G suffixes allowed. Default is 1M.")
+                .longOpt("delta-block-size")
+                .build();
+        Option option_deltaIndex =  Option.builder()
+                .required(false)
+                .desc("Keep the block hashes of incremental copies next to the output (out.blockindex), so the next "
+                        + "copy only reads the output again when it was changed since. Forces the output to disk. "
+                        + "A change is seen by the output size, modification time and its first and last block, so "
+                        + "a change elsewhere with the modification time restored needs the index deleted.")
+                .longOpt("delta-index")
+                .build();
+        Option option_checksum =  Option.builder()
+                .required(false)
+                .hasArg()
+                .desc("Compute a crc32c, sha256 or xxh64 checksum while copying, on a thread of its own, and write it "
+                        + "to a sidecar file next to the output (out.sha256 etc.). The output is then read back and "
+                        + "verified. Copies with the " + CopySettings.MODE_BUFFERED + " mode.")
+                .longOpt("checksum")
+                .build();
+        Option option_noVerify =  Option.builder()
+                .required(false)
+                .desc("Skip reading the output back to verify the checksum.")
+                .longOpt("no-verify")
+                .build();
+        Option option_compress =  Option.builder()
+                .required(false)
+                .hasArg()
+                .desc("Compress to gzip or deflate (zlib) while copying, in a single pass. Blocks are compressed in "
+                        + "parallel on -P threads. Replaces the copy mode.")
+                .longOpt("compress")
+                .build();
+        Option option_decompress =  Option.builder()
+                .required(false)
+                .desc("Decompress gzip or deflate (zlib) input while copying, detected from its header. Replaces "
+                        + "the copy mode.")
+                .longOpt("decompress")
+                .build();
+        Option option_fanIn =  Option.builder()
+                .required(false)
+                .desc("Concatenate all inputs into the single output; a reader thread per input, -P writer threads, "
+                        + "-B pooled chunks of --chunk-size.")
+                .longOpt("fan-in")
+                .build();
+        Option option_fanOut =  Option.builder()
+                .required(false)
+                .desc("Copy the single input to every output; -P writer threads, -B pooled chunks of --chunk-size.")
+                .longOpt("fan-out")
+                .build();
+        Option option_stats =  Option.builder()
+                .required(false)
+                .hasArg()
+                .type(Number.class)
+                .desc("Print a buffer stats line every N seconds; elements supplied/consumed, high-water mark, "
+                        + "producer/consumer waits and timeouts.")
+                .longOpt("stats")
+                .build();
+        Option option_jmx =  Option.builder()
+                .required(false)
+                .desc("Expose the buffer stats as the JMX MBean buutti.buffer:type=SyncBuffer,name=\"BuuttiBufferCopy\", "
+                        + "and the limits of --max-rate/--max-iops as buutti.buffer:type=Throttle,name=\"BuuttiBufferCopy\".")
+                .longOpt("jmx")
+                .build();
+        Option option_fromCharset =  Option.builder()
+                .required(false)
+                .hasArg()
+                .desc("Text mode; charset of the input, e.g. UTF-16 or ISO-8859-1. Default is UTF-8. The input is "
+                        + "decoded, converted and encoded on a transcoder thread between the reader and writer; "
+                        + "invalid input or characters the output charset lacks fail the copy. Replaces the copy mode.")
+                .longOpt("from-charset")
+                .build();
+        Option option_toCharset =  Option.builder()
+                .required(false)
+                .hasArg()
+                .desc("Text mode; charset of the output. Default is UTF-8.")
+                .longOpt("to-charset")
+                .build();
+        Option option_lineEndings =  Option.builder()
+                .required(false)
+                .hasArg()
+                .desc("Text mode; line ending conversion. keep (default), lf: CRLF to LF, crlf: LF to CRLF.")
+                .longOpt("line-endings")
+                .build();
+        Option option_sparse =  Option.builder()
+                .required(false)
+                .desc("Keep outputs sparse; 4 KiB blocks of zeros are skipped instead of written, so holes of VM "
+                        + "images and preallocated files stay holes. Regular file outputs only, copies with the "
+                        + CopySettings.MODE_BUFFERED + " mode.")
+                .longOpt("sparse")
+                .build();
+        Option option_sync =  Option.builder()
+                .required(false)
+                .hasArg()
+                .desc("When regular file outputs are forced to disk. none (default): left to the page cache, "
+                        + "end: fsync once written, a size like 64M: fsync every 64 MiB and at the end, dsync: open "
+                        + "with O_DSYNC so every write is durable. Writes go through --write-batch batches. "
+                        + "Copies with the " + CopySettings.MODE_BUFFERED + " mode.")
+                .longOpt("sync")
+                .build();
+        Option option_direct =  Option.builder()
+                .required(false)
+                .desc("Write regular file outputs with direct IO (O_DIRECT) in file system block aligned batches, "
+                        + "bypassing the page cache, where the file system supports it. Copies with the "
+                        + CopySettings.MODE_BUFFERED + " mode.")
+                .longOpt("direct")
+                .build();
+        Option option_writeBatch =  Option.builder()
+                .required(false)
+                .hasArg()
+                .desc("Write-behind; collect written data into batches of this size, written by a thread of their "
+                        + "own while the next batch is collected. K/M/G suffixes allowed. Default is 1M with "
+                        + "--sync or --direct. Copies with the " + CopySettings.MODE_BUFFERED + " mode.")
+                .longOpt("write-batch")
+                .build();
+        Option option_maxRate =  Option.builder()
+                .required(false)
+                .hasArg()
+                .desc("Write at most this many bytes per second, over all copies of a batch. K/M/G suffixes allowed. "
+                        + "Adjustable at runtime over JMX with --jmx. Throttles the " + CopySettings.MODE_BUFFERED
+                        + " and " + CopySettings.MODE_POOLED + " modes, compressed, resumable and fan copies; "
+                        + "other modes copy with the " + CopySettings.MODE_BUFFERED + " mode.")
+                .longOpt("max-rate")
+                .build();
+        Option option_maxIops =  Option.builder()
+                .required(false)
+                .hasArg()
+                .type(Number.class)
+                .desc("Issue at most this many writes per second, over all copies of a batch. Like --max-rate.")
+                .longOpt("max-iops")
+                .build();
+        Option option_virtualThreads =  Option.builder()
+                .required(false)
+                .desc("Run copies and their reader/writer stages on virtual threads instead of OS threads, so a batch "
+                        + "can run thousands of --jobs at once.")
+                .longOpt("virtual-threads")
+                .build();
         Option option_h =  Option.builder("h")
                 .required(false)
                 .desc("Request this help printout.")
@@ -175,94 +1189,44 @@ public class BuuttiBufferCopy {
         Options options = new Options();
         options.addOption(option_I);
         options.addOption(option_O);
+        options.addOption(option_manifest);
+        options.addOption(option_jobs);
+        options.addOption(option_maxMemory);
         options.addOption(option_B);
+        options.addOption(option_maxB);
         options.addOption(option_T);
+        options.addOption(option_S);
+        options.addOption(option_W);
+        options.addOption(option_M);
+        options.addOption(option_mmapWindow);
+        options.addOption(option_chunkSize);
+        options.addOption(option_queueDepth);
+        options.addOption(option_P);
+        options.addOption(option_flush);
+        options.addOption(option_resume);
+        options.addOption(option_checkpointInterval);
+        options.addOption(option_delta);
+        options.addOption(option_deltaBlockSize);
+        options.addOption(option_deltaIndex);
+        options.addOption(option_checksum);
+        options.addOption(option_noVerify);
+        options.addOption(option_compress);
+        options.addOption(option_decompress);
+        options.addOption(option_fanIn);
+        options.addOption(option_fanOut);
+        options.addOption(option_stats);
+        options.addOption(option_jmx);
+        options.addOption(option_fromCharset);
+        options.addOption(option_toCharset);
+        options.addOption(option_lineEndings);
+        options.addOption(option_sparse);
+        options.addOption(option_sync);
+        options.addOption(option_direct);
+        options.addOption(option_writeBatch);
+        options.addOption(option_maxRate);
+        options.addOption(option_maxIops);
+        options.addOption(option_virtualThreads);
         options.addOption(option_h);
         return options;
     }
-
-    /**
-     * Starts the read/write threads together with parsing through the buffer. Awaits threads to finish before exit.
-     * @param in input file
-     * @param out output file
-     * @param bufferSize buffer size
-     * @param bufferTimeout buffer timeout
-     * @throws InterruptedException on thread interruption.
-     */
-    private static void doCopy(final String in, final String out,
-                               final int bufferSize, final long bufferTimeout) throws InterruptedException {
-        CountDownLatch cdl = new CountDownLatch(2);
-        try (AbstractSyncBuffer<Character> sb = new SyncBufferImpl<>(bufferSize, bufferTimeout)) {
-            Thread t1 = new Thread(() ->
-            {
-                try {
-                    read(sb, new File(in));
-                } catch (IOException | InterruptedException e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    cdl.countDown();
-                }
-            });
-            Thread t2 = new Thread(() ->
-            {
-                try {
-                    write(sb, new File(out));
-                } catch (IOException | InterruptedException e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    cdl.countDown();
-                }
-            });
-            t1.start();
-            t2.start();
-            cdl.await();
-        }
-    }
-
-    /**
-     * Read method. Reads from the input file and writes to the buffer.
-     * @param sb SyncBuffer object for writing buffer.
-     * @param f File object to read from.
-     * @throws IOException on file read/buffer error.
-     * @throws InterruptedException on thread interruption.
-     */
-    private static void read(final AbstractSyncBuffer<Character> sb, final File f) throws IOException, InterruptedException {
-        try (sb; FileInputStream fis = new FileInputStream(f)) {
-            int r = 0;
-            while ((r = fis.read()) != -1) {
-                try {
-                    sb.supply((char) r);
-                } catch (SyncBufferTimeoutException e) {
-                    System.out.println("Buffer timeout while reading. Buffer full!");
-                    System.exit(1);
-                }
-            }
-        }
-    }
-
-    /**
-     * Write method. Reads from the buffer and writes to the output file.
-     * @param sb SyncBuffer object for reading buffer.
-     * @param f File object to write to.
-     * @throws IOException on file write/buffer error.
-     * @throws InterruptedException on thread interruption.
-     */
-    private static void write(final SyncBuffer<Character> sb, final File f) throws IOException, InterruptedException {
-        try (FileOutputStream fos = new FileOutputStream(f)) {
-            while (true) {
-                try {
-                    fos.write(sb.consume());
-                } catch (SyncBufferTimeoutException e) {
-                    if (sb.isEmpty() && sb.isSupplierIsExhausted()) {
-                        break;
-                    }
-                    System.out.println("Buffer timeout while writing/supplier not exhausted? Buffer empty!");
-                    System.exit(1);
-                } catch (SyncBufferSupplierExhaustedException e) {
-                    // No more items.
-                    break;
-                }
-            }
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,445 @@
+package buutti.buffer.src;
+
+import buutti.buffer.engine.ChecksumAlgorithm;
+import buutti.buffer.engine.Compression;
+import buutti.buffer.engine.FlushPolicy;
+import buutti.buffer.engine.LineEnding;
+import buutti.buffer.engine.SyncPolicy;
+import buutti.buffer.util.SyncBufferMetrics;
+import buutti.buffer.util.Throttle;
+import buutti.buffer.util.WaitStrategies;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs copies in-process, the library counterpart of the command line. Configured once with the same settings as
+ * the CLI options, see {@link Builder}; every submitted {@link CopyJob} runs on a pool of jobs workers and
+ * completes a {@link CompletableFuture} with its {@link CopyResult}, or with the exception that failed it.
+ * <p>
+ * Cancelling the future interrupts the copy: its stages stop at their next blocking buffer or channel call and are
+ * joined, so every buffer and channel of the copy is closed, before the worker takes the next job. The partial
+ * output is left in place, a resumable copy continues from its last checkpoint when submitted again.
+ */
+public final class Copier implements AutoCloseable {
+    private final CopySettings settings;
+
+    private final ExecutorService pool;
+
+    /**
+     * Results of the submitted copies that haven't completed, cancelled when closing is interrupted.
+     */
+    private final Set<CompletableFuture<CopyResult>> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Calls the progress listeners of the running copies.
+     */
+    private final ScheduledExecutorService progress;
+
+    /**
+     * @param settings settings of every copy.
+     */
+    private Copier(final CopySettings settings) {
+        this.settings = settings;
+        this.pool = settings.virtualThreads
+                ? Executors.newFixedThreadPool(settings.jobs, Thread.ofVirtual().name("copier-", 0).factory())
+                : Executors.newFixedThreadPool(settings.jobs);
+        this.progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "copy-progress");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @return Builder of a copier with the CLI defaults; buffered mode, 16 byte ring buffer, a job per processor.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Throttle shared by all copies, null when unthrottled. Its limits can be changed while copying.
+     */
+    public Throttle getThrottle() {
+        return settings.throttle;
+    }
+
+    /**
+     * Submits a copy without progress calls.
+     * @param in input path.
+     * @param out output path, replaced.
+     * @return CompletableFuture of the result; cancel it to stop the copy.
+     */
+    public CompletableFuture<CopyResult> copy(final Path in, final Path out) {
+        return submit(CopyJob.of(in, out));
+    }
+
+    /**
+     * Submits a copy, which starts as soon as a job is free.
+     * @param job the copy.
+     * @return CompletableFuture of the result, completed exceptionally with the IOException or
+     * InterruptedException failing the copy; cancel it to stop the copy.
+     */
+    public CompletableFuture<CopyResult> submit(final CopyJob job) {
+        CompletableFuture<CopyResult> result = new CompletableFuture<>();
+        pending.add(result);
+        Future<?> task = pool.submit(() -> run(job, result));
+        result.whenComplete((r, e) -> {
+            pending.remove(result);
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs a copy on a worker, metering its writes for the progress calls and the result.
+     * @param job the copy.
+     * @param result completed with the outcome, unless cancelled.
+     */
+    private void run(final CopyJob job, final CompletableFuture<CopyResult> result) {
+        if (result.isDone()) {
+            return;
+        }
+        Throttle meter = new Throttle(0L, 0L, settings.throttle);
+        CopySettings copySettings = settings.withThrottle(meter);
+        Instant started = Instant.now();
+        long start = System.nanoTime();
+        ScheduledFuture<?> reporter = null;
+        if (job.listener() != null) {
+            long interval = job.progressInterval().toNanos();
+            reporter = progress.scheduleAtFixedRate(() -> job.listener().progress(job, meter.getBytes(),
+                    Duration.ofNanos(System.nanoTime() - start)), interval, interval, TimeUnit.NANOSECONDS);
+        }
+        try {
+            copySettings.createEngine().copy(job.in(), job.out());
+            long bytes = meter.getBytes();
+            if (bytes == 0L && !copySettings.isThrottleable() && Files.isRegularFile(job.out())) {
+                bytes = Files.size(job.out());
+            }
+            result.complete(new CopyResult(job, bytes, started, Duration.ofNanos(System.nanoTime() - start)));
+        } catch (Throwable e) {
+            // The future is the only way out of the worker; a no-op when cancelled.
+            result.completeExceptionally(e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            if (reporter != null) {
+                reporter.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Stops taking copies and waits for the submitted ones to complete. Interruption cancels the remaining copies
+     * and returns with the interrupt flag of the calling thread set.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Keep waiting, a copy can take hours.
+            }
+        } catch (InterruptedException e) {
+            for (CompletableFuture<CopyResult> result : pending) {
+                result.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+            progress.shutdownNow();
+        }
+    }
+
+    /**
+     * Settings of the copies of a copier, one method per CLI option. Conflicting settings fail the build; as in the
+     * CLI, settings that only the buffered mode supports, such as sparse copies or throttling, copy with it instead.
+     */
+    public static final class Builder {
+        private final CopySettings settings = new CopySettings();
+
+        private Builder() {
+        }
+
+        /**
+         * @param mode buffered, transfer, mmap, pooled, parallel or async; as with the -M option.
+         * @return Builder
+         */
+        public Builder mode(final String mode) {
+            if (!List.of(CopySettings.MODE_BUFFERED, CopySettings.MODE_TRANSFER, CopySettings.MODE_MMAP,
+                    CopySettings.MODE_POOLED, CopySettings.MODE_PARALLEL, CopySettings.MODE_ASYNC).contains(mode)) {
+                throw new IllegalArgumentException("Unknown copy mode: " + mode);
+            }
+            settings.mode = mode;
+            return this;
+        }
+
+        /**
+         * @param bufferType ring or spsc; as with the -S option.
+         * @param waitStrategy wait strategy of the spsc buffer; as with the -W option.
+         * @return Builder
+         */
+        public Builder buffer(final String bufferType, final String waitStrategy) {
+            if (!bufferType.equals(CopySettings.BUFFER_RING) && !bufferType.equals(CopySettings.BUFFER_SPSC)) {
+                throw new IllegalArgumentException("Unknown buffer type: " + bufferType);
+            }
+            WaitStrategies.byName(waitStrategy);
+            settings.bufferType = bufferType;
+            settings.waitStrategy = waitStrategy;
+            return this;
+        }
+
+        /**
+         * @param bufferSize buffer size in elements, the amount of pooled chunks in the pooled mode; as with -B.
+         * @param maxBufferSize upper bound of an adaptive ring buffer, 0 = fixed size; as with --max-buffer-size.
+         * @return Builder
+         */
+        public Builder bufferSize(final int bufferSize, final int maxBufferSize) {
+            if (bufferSize < 1 || (maxBufferSize != 0 && maxBufferSize < bufferSize)) {
+                throw new IllegalArgumentException("Buffer size must be at least 1, and the max buffer size 0 or "
+                        + "at least the buffer size.");
+            }
+            settings.bufferSize = bufferSize;
+            settings.maxBufferSize = maxBufferSize;
+            return this;
+        }
+
+        /**
+         * @param bufferTimeout buffer IO timeout in millis, 0 or -1 = none; as with the -T option.
+         * @return Builder
+         */
+        public Builder bufferTimeout(final long bufferTimeout) {
+            settings.bufferTimeout = bufferTimeout;
+            return this;
+        }
+
+        /**
+         * @param mmapWindow mapped window size of the mmap mode; as with --mmap-window.
+         * @return Builder
+         */
+        public Builder mmapWindow(final long mmapWindow) {
+            settings.mmapWindow = mmapWindow;
+            return this;
+        }
+
+        /**
+         * @param chunkSize chunk size of the pooled and async modes, region size of the parallel mode; as with
+         *                  --chunk-size.
+         * @return Builder
+         */
+        public Builder chunkSize(final int chunkSize) {
+            settings.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * @param queueDepth reads and writes in flight of the async mode; as with --queue-depth.
+         * @return Builder
+         */
+        public Builder queueDepth(final int queueDepth) {
+            settings.queueDepth = queueDepth;
+            return this;
+        }
+
+        /**
+         * @param threads worker threads of the parallel mode and compression; as with the -P option.
+         * @return Builder
+         */
+        public Builder threads(final int threads) {
+            settings.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param jobs copies running at once, further submitted copies wait; as with --jobs.
+         * @return Builder
+         */
+        public Builder jobs(final int jobs) {
+            if (jobs < 1) {
+                throw new IllegalArgumentException("Jobs must be at least 1.");
+            }
+            settings.jobs = jobs;
+            return this;
+        }
+
+        /**
+         * @param flushPolicy when the buffered pipeline writes consumed data; as with --flush.
+         * @return Builder
+         */
+        public Builder flushPolicy(final FlushPolicy flushPolicy) {
+            settings.flushPolicy = Objects.requireNonNull(flushPolicy);
+            return this;
+        }
+
+        /**
+         * @param checksum checksum written to a sidecar file; as with --checksum.
+         * @param verify whether the output is read back and verified; false as with --no-verify.
+         * @return Builder
+         */
+        public Builder checksum(final ChecksumAlgorithm checksum, final boolean verify) {
+            settings.checksum = Objects.requireNonNull(checksum);
+            settings.verify = verify;
+            return this;
+        }
+
+        /**
+         * @param checkpointInterval bytes between checkpoints of resumable copies; as with --resume and
+         *                           --checkpoint-interval.
+         * @return Builder
+         */
+        public Builder resume(final long checkpointInterval) {
+            if (checkpointInterval < 1) {
+                throw new IllegalArgumentException("Checkpoint interval must be at least 1.");
+            }
+            settings.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        /**
+         * @param blockSize bytes per compared block of incremental copies; as with --delta and --delta-block-size.
+         * @param index whether the output block hashes are kept in a sidecar index; as with --delta-index.
+         * @return Builder
+         */
+        public Builder delta(final int blockSize, final boolean index) {
+            if (blockSize < 1) {
+                throw new IllegalArgumentException("Block size must be at least 1.");
+            }
+            settings.deltaBlockSize = blockSize;
+            settings.deltaIndex = index;
+            return this;
+        }
+
+        /**
+         * @param compress format the outputs are compressed to; as with --compress.
+         * @return Builder
+         */
+        public Builder compress(final Compression compress) {
+            settings.compress = Objects.requireNonNull(compress);
+            return this;
+        }
+
+        /**
+         * Decompresses gzip or zlib inputs; as with --decompress.
+         * @return Builder
+         */
+        public Builder decompress() {
+            settings.decompress = true;
+            return this;
+        }
+
+        /**
+         * @param from charset of the inputs; as with --from-charset.
+         * @param to charset of the outputs; as with --to-charset.
+         * @param lineEnding line ending conversion; as with --line-endings.
+         * @return Builder
+         */
+        public Builder text(final Charset from, final Charset to, final LineEnding lineEnding) {
+            settings.text = true;
+            settings.fromCharset = Objects.requireNonNull(from);
+            settings.toCharset = Objects.requireNonNull(to);
+            settings.lineEnding = Objects.requireNonNull(lineEnding);
+            return this;
+        }
+
+        /**
+         * Keeps regular file outputs sparse; as with --sparse.
+         * @return Builder
+         */
+        public Builder sparse() {
+            settings.sparse = true;
+            return this;
+        }
+
+        /**
+         * @param syncPolicy when regular file outputs are forced to disk; as with --sync.
+         * @param syncInterval bytes between forces of the INTERVAL policy.
+         * @return Builder
+         */
+        public Builder sync(final SyncPolicy syncPolicy, final long syncInterval) {
+            if (syncPolicy == SyncPolicy.INTERVAL && syncInterval < 1) {
+                throw new IllegalArgumentException("Sync interval must be at least 1.");
+            }
+            settings.syncPolicy = Objects.requireNonNull(syncPolicy);
+            settings.syncInterval = syncInterval;
+            return this;
+        }
+
+        /**
+         * Writes regular file outputs with direct IO where supported; as with --direct.
+         * @return Builder
+         */
+        public Builder direct() {
+            settings.direct = true;
+            return this;
+        }
+
+        /**
+         * @param writeBatch bytes per write-behind batch; as with --write-batch.
+         * @return Builder
+         */
+        public Builder writeBatch(final int writeBatch) {
+            if (writeBatch < 0) {
+                throw new IllegalArgumentException("Write batch can't be negative.");
+            }
+            settings.writeBatch = writeBatch;
+            return this;
+        }
+
+        /**
+         * @param maxRate bytes per second over all copies, 0 = unlimited; as with --max-rate.
+         * @param maxIops writes per second over all copies, 0 = unlimited; as with --max-iops.
+         * @return Builder
+         */
+        public Builder throttle(final long maxRate, final long maxIops) {
+            settings.throttle = maxRate > 0 || maxIops > 0 ? new Throttle(maxRate, maxIops) : null;
+            return this;
+        }
+
+        /**
+         * Runs the copies and their stages on virtual threads; as with --virtual-threads.
+         * @return Builder
+         */
+        public Builder virtualThreads() {
+            settings.virtualThreads = true;
+            return this;
+        }
+
+        /**
+         * @param metrics counters attached to the buffers of every copy, null = not collected.
+         * @return Builder
+         */
+        public Builder metrics(final SyncBufferMetrics metrics) {
+            settings.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * @return Copier running copies with these settings; close it when done.
+         * @throws IllegalArgumentException on settings that can't be combined, by the same rules as the CLI.
+         */
+        public Copier build() {
+            settings.validate(false, false);
+            // Fails on invalid engine settings before any copy is submitted.
+            settings.createEngine();
+            return new Copier(settings);
+        }
+    }
+}
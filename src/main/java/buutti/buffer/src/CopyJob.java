@@ -0,0 +1,62 @@
+package buutti.buffer.src;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * A single copy submitted to a {@link Copier}.
+ * @param in input path.
+ * @param out output path, replaced.
+ * @param listener called with the progress of the copy every progress interval, null = no progress.
+ * @param progressInterval time between progress calls.
+ */
+public record CopyJob(Path in, Path out, ProgressListener listener, Duration progressInterval) {
+    /**
+     * Default time between progress calls.
+     */
+    public static final Duration DEFAULT_PROGRESS_INTERVAL = Duration.ofSeconds(1);
+
+    /**
+     * Progress of a running copy.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * Called on the progress thread of the copier, so a slow listener delays the progress of other copies but
+         * never the copies. A listener throwing an exception gets no further calls for the copy.
+         * @param job the copy.
+         * @param bytes bytes written so far. Kernel transfers, mapped copies and the parallel and async modes
+         *              report 0 until they are done.
+         * @param elapsed time since the copy started.
+         */
+        void progress(CopyJob job, long bytes, Duration elapsed);
+    }
+
+    public CopyJob {
+        Objects.requireNonNull(in, "in");
+        Objects.requireNonNull(out, "out");
+        Objects.requireNonNull(progressInterval, "progressInterval");
+        if (progressInterval.isNegative() || progressInterval.isZero()) {
+            throw new IllegalArgumentException("Progress interval must be positive.");
+        }
+    }
+
+    /**
+     * @param in input path.
+     * @param out output path, replaced.
+     * @return CopyJob without progress calls.
+     */
+    public static CopyJob of(final Path in, final Path out) {
+        return new CopyJob(in, out, null, DEFAULT_PROGRESS_INTERVAL);
+    }
+
+    /**
+     * @param listener called with the progress of the copy every interval.
+     * @param interval time between progress calls.
+     * @return CopyJob the same copy with progress calls.
+     */
+    public CopyJob withProgress(final ProgressListener listener, final Duration interval) {
+        return new CopyJob(in, out, listener, interval);
+    }
+}
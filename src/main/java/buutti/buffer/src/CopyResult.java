@@ -0,0 +1,23 @@
+package buutti.buffer.src;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Outcome of a completed copy of a {@link Copier}.
+ * @param job the copy.
+ * @param bytes bytes written to the output. Differs from the input size for compressed, transcoded, sparse and
+ *              delta copies, and counts the output size for kernel transfers, mapped copies and the parallel and
+ *              async modes, which are not metered.
+ * @param started when the copy started, after waiting for a free job.
+ * @param elapsed time from start to completion.
+ */
+public record CopyResult(CopyJob job, long bytes, Instant started, Duration elapsed) {
+    /**
+     * @return double average bytes written per second.
+     */
+    public double bytesPerSecond() {
+        long nanos = Math.max(1L, elapsed.toNanos());
+        return bytes * 1e9d / nanos;
+    }
+}
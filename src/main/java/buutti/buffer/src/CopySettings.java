@@ -0,0 +1,471 @@
+package buutti.buffer.src;
+
+import buutti.buffer.engine.AsyncCopyEngine;
+import buutti.buffer.engine.BufferedCopyEngine;
+import buutti.buffer.engine.ChecksumAlgorithm;
+import buutti.buffer.engine.ChecksumCopyEngine;
+import buutti.buffer.engine.Compression;
+import buutti.buffer.engine.CompressionCopyEngine;
+import buutti.buffer.engine.DeltaCopyEngine;
+import buutti.buffer.engine.FanCopier;
+import buutti.buffer.engine.FlushPolicy;
+import buutti.buffer.engine.LineEnding;
+import buutti.buffer.engine.MappedCopyEngine;
+import buutti.buffer.engine.ParallelCopyEngine;
+import buutti.buffer.engine.PooledCopyEngine;
+import buutti.buffer.engine.ResumableCopyEngine;
+import buutti.buffer.engine.SyncPolicy;
+import buutti.buffer.engine.TextCopyEngine;
+import buutti.buffer.engine.TransferCopyEngine;
+import buutti.buffer.engine.VirtualThreadCopyEngine;
+import buutti.buffer.interfaces.ByteSyncBuffer;
+import buutti.buffer.interfaces.CopyEngine;
+import buutti.buffer.interfaces.SyncBuffer;
+import buutti.buffer.util.AbstractSyncBuffer;
+import buutti.buffer.util.ByteSyncBufferImpl;
+import buutti.buffer.util.SpscByteSyncBuffer;
+import buutti.buffer.util.SpscSyncBuffer;
+import buutti.buffer.util.SyncBufferImpl;
+import buutti.buffer.util.SyncBufferMetrics;
+import buutti.buffer.util.Throttle;
+import buutti.buffer.util.WaitStrategies;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Settings of a copy as parsed from the CLI options, and the factories creating the engine and buffers from them.
+ * Field defaults match the CLI defaults.
+ */
+final class CopySettings implements Cloneable {
+    /**
+     * Buffer types selectable with the buffer type option.
+     */
+    static final String BUFFER_RING = "ring", BUFFER_SPSC = "spsc";
+
+    /**
+     * Copy modes selectable with the mode option.
+     */
+    static final String MODE_BUFFERED = "buffered", MODE_TRANSFER = "transfer", MODE_MMAP = "mmap",
+            MODE_POOLED = "pooled", MODE_PARALLEL = "parallel", MODE_ASYNC = "async";
+
+    /**
+     * Default chunk size of the pooled mode, 1 MiB.
+     */
+    static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    String mode = MODE_BUFFERED;
+
+    String bufferType = BUFFER_RING;
+
+    /**
+     * Buffer size in elements; the amount of pooled chunks in the pooled mode.
+     */
+    int bufferSize = 16;
+
+    /**
+     * Upper bound of an adaptive ring byte buffer, which starts at bufferSize; 0 = fixed size.
+     */
+    int maxBufferSize = 0;
+
+    long bufferTimeout = -1L;
+
+    String waitStrategy = WaitStrategies.BLOCKING;
+
+    long mmapWindow = MappedCopyEngine.DEFAULT_WINDOW_SIZE;
+
+    /**
+     * Chunk size of the pooled and async modes; region size of the parallel mode.
+     */
+    int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Reads and writes in flight in the async mode.
+     */
+    int queueDepth = AsyncCopyEngine.DEFAULT_QUEUE_DEPTH;
+
+    /**
+     * Worker threads of the parallel mode.
+     */
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Concurrent copies of a batch.
+     */
+    int jobs = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Cap in bytes on the buffer memory of all copies of a batch in flight, -1 = no cap.
+     */
+    long maxMemory = -1L;
+
+    /**
+     * When the buffered pipeline writes consumed data.
+     */
+    FlushPolicy flushPolicy = FlushPolicy.IDLE;
+
+    /**
+     * Checksum computed inline and written to a sidecar file, null = none. Copies go through the buffered pipeline.
+     */
+    ChecksumAlgorithm checksum;
+
+    /**
+     * Whether the output is read back and compared against the checksum.
+     */
+    boolean verify = true;
+
+    /**
+     * Bytes between checkpoints of a resumable copy, 0 = not resumable.
+     */
+    long checkpointInterval = 0L;
+
+    /**
+     * Bytes per block of incremental copies, which only write the blocks of an existing output that differ;
+     * 0 = full copies.
+     */
+    int deltaBlockSize = 0;
+
+    /**
+     * Whether incremental copies keep the block hashes of the output in a sidecar index.
+     */
+    boolean deltaIndex;
+
+    /**
+     * Format the output is compressed to, null = not compressed.
+     */
+    Compression compress;
+
+    /**
+     * Whether gzip or zlib input is decompressed.
+     */
+    boolean decompress;
+
+    /**
+     * Whether copies and their stages run on virtual threads instead of platform threads.
+     */
+    boolean virtualThreads;
+
+    /**
+     * Whether copies are transcoded from the from charset to the to charset, converting line endings.
+     */
+    boolean text;
+
+    Charset fromCharset = StandardCharsets.UTF_8;
+
+    Charset toCharset = StandardCharsets.UTF_8;
+
+    LineEnding lineEnding = LineEnding.KEEP;
+
+    /**
+     * Whether the buffered mode seeks over all-zero blocks instead of writing them, keeping outputs sparse.
+     */
+    boolean sparse;
+
+    /**
+     * When the buffered mode forces regular file outputs to the device.
+     */
+    SyncPolicy syncPolicy = SyncPolicy.NONE;
+
+    /**
+     * Bytes between forces of the INTERVAL sync policy.
+     */
+    long syncInterval = 0L;
+
+    /**
+     * Whether the buffered mode writes regular file outputs with direct IO.
+     */
+    boolean direct;
+
+    /**
+     * Bytes per write-behind batch of the buffered mode, 0 = the default when syncing or writing directly.
+     */
+    int writeBatch = 0;
+
+    /**
+     * Write throttle shared by every copy created from these settings, null = unthrottled.
+     * Only the modes whose writers are metered can be throttled, see {@link #isThrottleable()}.
+     */
+    Throttle throttle;
+
+    /**
+     * Counters attached to every buffer created from these settings, null = not collected.
+     */
+    SyncBufferMetrics metrics;
+
+    /**
+     * @param throttle throttle of the copy.
+     * @return CopySettings copy of these settings with the throttle; the other fields are shared.
+     */
+    CopySettings withThrottle(final Throttle throttle) {
+        try {
+            CopySettings settings = (CopySettings) clone();
+            settings.throttle = throttle;
+            return settings;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Estimates the buffer memory a single copy of the copy mode holds.
+     * Mapped windows are not counted, as they live in the page cache rather than the heap.
+     * @return long bytes
+     */
+    long memoryPerCopy() {
+        if (text) {
+            // Two buffers, the read/write blocks and the transcoder's byte, char, converted and output chunks.
+            return 2L * Math.max(bufferSize, maxBufferSize) + 10L * TextCopyEngine.CHUNK_SIZE;
+        }
+        if (compress != null) {
+            // Input blocks and their compressed form in flight, twice the threads of each.
+            return 4L * threads * CompressionCopyEngine.BLOCK_SIZE;
+        }
+        if (decompress) {
+            // Compressed and decompressed chunks in flight, and the inflating stream buffers.
+            return 12L * CompressionCopyEngine.BLOCK_SIZE;
+        }
+        if (checkpointInterval > 0) {
+            return ResumableCopyEngine.CHUNK_SIZE;
+        }
+        if (deltaBlockSize > 0) {
+            // A read chunk per hashing thread and the write chunk, the block hashes are not counted.
+            return 3L * Math.max(DeltaCopyEngine.READ_SIZE, deltaBlockSize);
+        }
+        if (checksum != null) {
+            // The chunk pool of the checksum pipeline.
+            return (long) BufferedCopyEngine.CHECKSUM_CHUNKS * BufferedCopyEngine.CHUNK_SIZE;
+        }
+        return switch (mode) {
+            case MODE_POOLED -> (long) bufferSize * chunkSize;
+            case MODE_PARALLEL -> (long) threads * chunkSize;
+            case MODE_ASYNC -> (long) queueDepth * chunkSize;
+            case MODE_TRANSFER, MODE_MMAP -> 0L;
+            default -> Math.max(bufferSize, maxBufferSize) + 2L * BufferedCopyEngine.CHUNK_SIZE
+                    + (hasWritePolicy() ? (long) BufferedCopyEngine.WRITE_BEHIND_BATCHES
+                    * (writeBatch > 0 ? writeBatch : BufferedCopyEngine.DEFAULT_WRITE_BATCH) : 0L);
+        };
+    }
+
+    /**
+     * Checks that the settings can be combined, the rules shared by the CLI and {@link Copier.Builder}. Settings
+     * that only the buffered mode supports switch the copy mode to it.
+     * @param fan whether the settings are for a fan-in/fan-out copy, whose writers are throttled in any mode.
+     * @param stdio whether the input or the output is stdin/stdout, which are streamed without the file engines.
+     * @return String message about the switch to the buffered mode, null when the mode is kept.
+     * @throws IllegalArgumentException on settings that can't be combined.
+     */
+    String validate(final boolean fan, final boolean stdio) {
+        boolean compressed = compress != null || decompress;
+        if (maxBufferSize > 0 && !bufferType.equals(BUFFER_RING)) {
+            throw new IllegalArgumentException("An adaptive buffer size needs the " + BUFFER_RING + " buffer type.");
+        }
+        if (checksum != null && checkpointInterval > 0) {
+            throw new IllegalArgumentException("Resumable copies keep their own checksums, --checksum can't be "
+                    + "combined with --resume.");
+        }
+        if (compress != null && decompress) {
+            throw new IllegalArgumentException("--compress and --decompress can't be combined.");
+        }
+        if (compressed && (checksum != null || checkpointInterval > 0)) {
+            throw new IllegalArgumentException("Compressed copies can't be combined with --checksum or --resume.");
+        }
+        if (deltaBlockSize > 0 && (compressed || checksum != null || checkpointInterval > 0 || text || sparse
+                || hasWritePolicy())) {
+            throw new IllegalArgumentException("--delta can't be combined with compression, --checksum, --resume, "
+                    + "text copies, --sparse, --sync, --direct or --write-batch.");
+        }
+        if (text && (compressed || checksum != null || checkpointInterval > 0 || sparse)) {
+            throw new IllegalArgumentException("Text copies can't be combined with compression, --checksum, --resume "
+                    + "or --sparse.");
+        }
+        if (sparse && (compressed || checksum != null || checkpointInterval > 0)) {
+            throw new IllegalArgumentException("--sparse can't be combined with compression, --checksum or --resume.");
+        }
+        if (hasWritePolicy() && (compressed || checksum != null || checkpointInterval > 0 || text || sparse)) {
+            throw new IllegalArgumentException("--sync, --direct and --write-batch can't be combined with "
+                    + "compression, --checksum, --resume, text copies or --sparse.");
+        }
+        if (stdio && checkpointInterval > 0) {
+            throw new IllegalArgumentException("--resume needs an input and an output file, stdin/stdout can't be "
+                    + "resumed.");
+        }
+        if (stdio && hasWritePolicy()) {
+            throw new IllegalArgumentException("--sync, --direct and --write-batch need an input and an output file, "
+                    + "stdin/stdout are streamed without them.");
+        }
+        if (stdio && deltaBlockSize > 0) {
+            throw new IllegalArgumentException("--delta needs an input and an output file, stdin/stdout can't be "
+                    + "compared block by block.");
+        }
+        if (mode.equals(MODE_BUFFERED)) {
+            return null;
+        }
+        String modeSwitch;
+        if (checksum != null) {
+            modeSwitch = "Checksums are computed by the " + MODE_BUFFERED + " pipeline, copying with it.";
+        } else if (sparse) {
+            modeSwitch = "Sparse copies are written by the " + MODE_BUFFERED + " mode, copying with it.";
+        } else if (hasWritePolicy()) {
+            modeSwitch = "Write policies are applied by the " + MODE_BUFFERED + " mode, copying with it.";
+        } else if (throttle != null && !fan && !isThrottleable()) {
+            modeSwitch = "Throttled writes need the " + MODE_BUFFERED + " or " + MODE_POOLED + " mode, copying with the "
+                    + MODE_BUFFERED + " mode.";
+        } else {
+            return null;
+        }
+        mode = MODE_BUFFERED;
+        return modeSwitch;
+    }
+
+    /**
+     * @return boolean whether the buffered mode writes regular file outputs through write-behind batches, i.e.
+     * whether a sync policy, direct IO or a write batch was requested.
+     */
+    boolean hasWritePolicy() {
+        return syncPolicy != SyncPolicy.NONE || direct || writeBatch > 0;
+    }
+
+    /**
+     * Creates the fan-in/fan-out copier; the pool holds buffer size chunks of chunk size, written by threads writers.
+     * @return FanCopier
+     */
+    FanCopier createFanCopier() {
+        FanCopier copier = new FanCopier(bufferSize, chunkSize, threads);
+        copier.setMetrics(metrics);
+        copier.setThrottle(throttle);
+        return copier;
+    }
+
+    /**
+     * Creates the byte buffer used between the read/write threads.
+     * @return ByteSyncBuffer
+     */
+    ByteSyncBuffer createBuffer() {
+        if (bufferType.equals(BUFFER_SPSC)) {
+            SpscByteSyncBuffer buffer = new SpscByteSyncBuffer(bufferSize, bufferTimeout, WaitStrategies.byName(waitStrategy));
+            buffer.setMetrics(metrics);
+            return buffer;
+        }
+        ByteSyncBufferImpl buffer = new ByteSyncBufferImpl(bufferSize, Math.max(bufferSize, maxBufferSize), bufferTimeout);
+        buffer.setMetrics(metrics);
+        return buffer;
+    }
+
+    /**
+     * Creates a queue of chunks between two threads, of buffer size capacity. The metrics count the remaining bytes
+     * of every chunk.
+     * @return SyncBuffer
+     */
+    SyncBuffer<ByteBuffer> createChunkQueue() {
+        AbstractSyncBuffer<ByteBuffer> queue = bufferType.equals(BUFFER_SPSC)
+                ? new SpscSyncBuffer<>(bufferSize, bufferTimeout, WaitStrategies.byName(waitStrategy))
+                : new SyncBufferImpl<>(bufferSize, bufferTimeout);
+        queue.setMetrics(metrics, ByteBuffer::remaining);
+        return queue;
+    }
+
+    /**
+     * Creates the reader/writer pipeline engine, used for the buffered mode and stdin/stdout.
+     * @return BufferedCopyEngine
+     */
+    BufferedCopyEngine createBufferedEngine() {
+        BufferedCopyEngine engine = new BufferedCopyEngine(this::createBuffer, flushPolicy);
+        engine.setThrottle(throttle);
+        engine.setSparse(sparse);
+        engine.setSyncPolicy(syncPolicy, syncInterval);
+        engine.setDirect(direct);
+        engine.setWriteBatch(writeBatch);
+        return engine;
+    }
+
+    /**
+     * @return boolean whether the writes of the copy can be throttled; kernel transfers, mapped copies and the
+     * parallel and async modes write without a metered writer. Compressed, checksummed, resumable and delta copies
+     * don't depend on the copy mode.
+     */
+    boolean isThrottleable() {
+        return text || compress != null || decompress || checksum != null || checkpointInterval > 0
+                || deltaBlockSize > 0 || mode.equals(MODE_BUFFERED) || mode.equals(MODE_POOLED);
+    }
+
+    /**
+     * Creates the compressing or decompressing engine, used instead of the copy mode when either is requested.
+     * @return CompressionCopyEngine, null when neither compressing nor decompressing.
+     */
+    CompressionCopyEngine createCompressionEngine() {
+        CompressionCopyEngine engine = compress != null ? CompressionCopyEngine.compressing(compress, threads)
+                : decompress ? CompressionCopyEngine.decompressing() : null;
+        if (engine != null) {
+            engine.setThrottle(throttle);
+        }
+        return engine;
+    }
+
+    /**
+     * Creates the transcoding engine, used instead of the copy mode for text copies.
+     * @return TextCopyEngine, null when not copying text.
+     */
+    TextCopyEngine createTextEngine() {
+        if (!text) {
+            return null;
+        }
+        TextCopyEngine engine = new TextCopyEngine(this::createBuffer, fromCharset, toCharset, lineEnding);
+        engine.setThrottle(throttle);
+        return engine;
+    }
+
+    /**
+     * Creates the copy engine for the copy mode, run on virtual threads when requested.
+     * @return CopyEngine
+     */
+    CopyEngine createEngine() {
+        CopyEngine engine = createModeEngine();
+        return virtualThreads ? new VirtualThreadCopyEngine(engine) : engine;
+    }
+
+    /**
+     * Creates the copy engine for the copy mode.
+     * @return CopyEngine
+     */
+    private CopyEngine createModeEngine() {
+        CompressionCopyEngine compression = createCompressionEngine();
+        if (compression != null) {
+            return compression;
+        }
+        TextCopyEngine textEngine = createTextEngine();
+        if (textEngine != null) {
+            return textEngine;
+        }
+        BufferedCopyEngine buffered = createBufferedEngine();
+        if (checksum != null) {
+            return new ChecksumCopyEngine(buffered, checksum, verify);
+        }
+        if (checkpointInterval > 0) {
+            ResumableCopyEngine resumable = new ResumableCopyEngine(checkpointInterval, buffered);
+            resumable.setThrottle(throttle);
+            return resumable;
+        }
+        if (deltaBlockSize > 0) {
+            DeltaCopyEngine delta = new DeltaCopyEngine(deltaBlockSize, deltaIndex, buffered);
+            delta.setThrottle(throttle);
+            return delta;
+        }
+        return switch (mode) {
+            case MODE_TRANSFER -> new TransferCopyEngine(buffered);
+            case MODE_MMAP -> new MappedCopyEngine(mmapWindow, buffered);
+            case MODE_POOLED -> {
+                PooledCopyEngine pooled = new PooledCopyEngine(bufferSize, chunkSize, this::createChunkQueue);
+                pooled.setThrottle(throttle);
+                yield pooled;
+            }
+            case MODE_PARALLEL -> new ParallelCopyEngine(threads, chunkSize, buffered);
+            case MODE_ASYNC -> {
+                AsyncCopyEngine async = new AsyncCopyEngine(queueDepth, chunkSize, buffered);
+                async.setMetrics(metrics);
+                yield async;
+            }
+            default -> buffered;
+        };
+    }
+}
@@ -0,0 +1,438 @@
+package buutti.buffer.util;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.exceptions.SyncBufferTimeoutException;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Abstract ring syncBuffer, holds the positional bookkeeping and the waiting/signalling logic shared by the
+ * generic and primitive ring buffer implementations. Subclasses only store and load elements at the
+ * indexes handed out by {@link #nextPutIndex()} and {@link #nextTakeIndex()}, and expose their backing
+ * array through {@link #storage()} so bulk transfers can be done with wraparound-aware array copies.
+ * All state is guarded by {@link #lock}.
+ * <p>
+ * Producers wait on a not-full and consumers on a not-empty condition. A waiter is only signalled on the
+ * empty to non-empty and full to non-full transitions; a woken waiter passes the signal on while elements or
+ * room remain and others are still waiting. Timed waits loop until their deadline, so spurious wakeups do not
+ * time out early.
+ * <p>
+ * An adaptive buffer (minCapacity &lt; maxCapacity) starts at minCapacity and doubles its ring when the producer
+ * keeps finding it full, and halves it when the consumer keeps finding it empty while occupancy stayed low.
+ * Resizing copies the elements in FIFO order into a new ring under the lock.
+ * @param <T>
+ */
+public abstract class AbstractRingSyncBuffer<T> extends AbstractSyncBuffer<T> {
+    /**
+     * Consecutive full (producer) or empty (consumer) waits after which an adaptive buffer is resized.
+     */
+    static final int RESIZE_THRESHOLD = 4;
+
+    /**
+     * Current maximum amount of elements in the buffer.
+     */
+    private int capacity;
+
+    /**
+     * Bounds of the capacity, equal for a fixed size buffer.
+     */
+    private final int minCapacity, maxCapacity;
+
+    /**
+     * ioTimeout, time to wait in millis for supply/consume operation. 0 or -1 = No timeout.
+     */
+    protected final long ioTimeout;
+
+    /**
+     * Guards all buffer state, subclasses hold it around element stores and loads.
+     */
+    protected final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notFull = lock.newCondition(), notEmpty = lock.newCondition();
+
+    /**
+     * Positional and size counters for navigating the buffer.
+     */
+    private int putPosition, takePosition, itemsInBuffer;
+
+    /**
+     * Threads currently waiting on notFull and notEmpty.
+     */
+    private int waitingProducers, waitingConsumers;
+
+    /**
+     * Adaptive sizing state; consecutive full and empty waits, and the highest occupancy since the last empty wait streak.
+     */
+    private int fullWaits, emptyWaits, peakItems;
+
+    /**
+     * @param minCapacity Initial and minimum size of the buffer for N elements
+     * @param maxCapacity Maximum size of the buffer for N elements, equal to minCapacity for a fixed size buffer
+     * @param ioTimeout ioTimeout, time to wait in millis for supply/consume operation. 0 or -1 = No timeout.
+     */
+    protected AbstractRingSyncBuffer(int minCapacity, int maxCapacity, long ioTimeout) {
+        if (minCapacity < 1) {
+            throw new IllegalArgumentException("Buffer capacity must be at least 1.");
+        }
+        if (maxCapacity < minCapacity) {
+            throw new IllegalArgumentException("Maximum buffer capacity must be at least the minimum capacity.");
+        }
+        this.capacity = minCapacity;
+        this.minCapacity = minCapacity;
+        this.maxCapacity = maxCapacity;
+        this.ioTimeout = ioTimeout;
+    }
+
+    /**
+     * The backing array of the ring, of length capacity. Used for bulk transfers with {@link System#arraycopy}.
+     * @return Object array (Object[] or a primitive array).
+     */
+    protected abstract Object storage();
+
+    /**
+     * Replaces the backing array of the ring with a new, empty one. Only called on adaptive buffers.
+     * @param capacity length of the new array.
+     * @return Object the previous backing array.
+     */
+    protected abstract Object replaceStorage(int capacity);
+
+    /**
+     * @return int current capacity of the buffer.
+     */
+    public int getCapacity() {
+        lock.lock();
+        try {
+            return capacity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Loads a single element as its (boxed) generic type.
+     * @param index slot index
+     * @return T
+     */
+    protected abstract T load(int index);
+
+    /**
+     * Clears the slots in [from, to) after they were consumed. Only needed for reference storage.
+     * @param from first index, inclusive
+     * @param to last index, exclusive
+     */
+    protected void clear(int from, int to) {
+    }
+
+    @Override
+    public int drainTo(final Collection<? super T> collection, final int maxElements) {
+        lock.lock();
+        try {
+            int n = Math.min(maxElements, itemsInBuffer);
+            for (int i = 0; i < n; i++) {
+                int index = nextTakeIndex();
+                T element = load(index);
+                consumedBytes(element);
+                collection.add(element);
+                clear(index, index + 1);
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isFull() {
+        lock.lock();
+        try {
+            return itemsInBuffer == capacity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return itemsInBuffer == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isSupplierIsExhausted() {
+        return supplierIsExhausted;
+    }
+
+    @Override
+    public void supplierIsExhausted() {
+        lock.lock();
+        try {
+            if (!supplierIsExhausted) {
+                supplierIsExhausted = true;
+                notFull.signalAll();
+                notEmpty.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until there is room for at least one element. Caller must hold the lock.
+     * @exception SyncBufferSupplierExhaustedException when supplying to an exhausted buffer.
+     * @exception SyncBufferTimeoutException on supply timeout, when buffer is full.
+     */
+    protected final void awaitNotFull() throws InterruptedException, IOException {
+        if (supplierIsExhausted) {
+            throw new SyncBufferSupplierExhaustedException();
+        }
+        if (itemsInBuffer < capacity) {
+            return;
+        }
+        emptyWaits = 0;
+        if (++fullWaits >= RESIZE_THRESHOLD && capacity < maxCapacity) {
+            resize((int) Math.min(maxCapacity, 2L * capacity));
+            return;
+        }
+        long start = metrics != null ? System.nanoTime() : 0L;
+        long nanos = TimeUnit.MILLISECONDS.toNanos(ioTimeout);
+        waitingProducers++;
+        try {
+            while (itemsInBuffer == capacity && !supplierIsExhausted) {
+                if (ioTimeout <= 0L) {
+                    notFull.await();
+                } else if (nanos > 0L) {
+                    nanos = notFull.awaitNanos(nanos);
+                } else {
+                    if (metrics != null) {
+                        metrics.supplyTimedOut();
+                    }
+                    throw new SyncBufferTimeoutException();
+                }
+            }
+        } finally {
+            waitingProducers--;
+            if (metrics != null) {
+                metrics.producerWaited(System.nanoTime() - start);
+            }
+        }
+        if (supplierIsExhausted) {
+            throw new SyncBufferSupplierExhaustedException();
+        }
+    }
+
+    /**
+     * Waits until there is at least one element to consume. Caller must hold the lock.
+     * @exception SyncBufferSupplierExhaustedException when the buffer is empty and the supplier is exhausted.
+     * @exception SyncBufferTimeoutException on consume timeout, when buffer is empty.
+     */
+    protected final void awaitNotEmpty() throws InterruptedException, IOException {
+        if (itemsInBuffer == 0 && !supplierIsExhausted) {
+            fullWaits = 0;
+            if (++emptyWaits >= RESIZE_THRESHOLD) {
+                if (capacity > minCapacity && peakItems <= capacity / 4) {
+                    resize(Math.max(minCapacity, capacity / 2));
+                }
+                emptyWaits = 0;
+                peakItems = 0;
+            }
+            long start = metrics != null ? System.nanoTime() : 0L;
+            long nanos = TimeUnit.MILLISECONDS.toNanos(ioTimeout);
+            waitingConsumers++;
+            try {
+                while (itemsInBuffer == 0 && !supplierIsExhausted) {
+                    if (ioTimeout <= 0L) {
+                        notEmpty.await();
+                    } else if (nanos > 0L) {
+                        nanos = notEmpty.awaitNanos(nanos);
+                    } else {
+                        if (metrics != null) {
+                            metrics.consumeTimedOut();
+                        }
+                        throw new SyncBufferTimeoutException();
+                    }
+                }
+            } finally {
+                waitingConsumers--;
+                if (metrics != null) {
+                    metrics.consumerWaited(System.nanoTime() - start);
+                }
+            }
+        }
+        if (itemsInBuffer == 0) {
+            throw new SyncBufferSupplierExhaustedException();
+        }
+    }
+
+    /**
+     * Supplies len elements of the src array, waiting for free room as needed. Every chunk that fits in
+     * the free room is moved at once.
+     * @param src array of the same component type as the storage.
+     * @param off offset in src.
+     * @param len amount of elements to supply.
+     * @param srcLength length of the src array.
+     * @exception SyncBufferSupplierExhaustedException when supplying to an exhausted buffer.
+     * @exception SyncBufferTimeoutException on supply timeout, elements supplied before the timeout stay in the buffer.
+     */
+    protected final void supplyArray(final Object src, int off, int len, final int srcLength)
+            throws InterruptedException, IOException {
+        Objects.checkFromIndexSize(off, len, srcLength);
+        lock.lock();
+        try {
+            while (len > 0) {
+                awaitNotFull();
+                int n = Math.min(len, capacity - itemsInBuffer);
+                int first = Math.min(n, capacity - putPosition);
+                System.arraycopy(src, off, storage(), putPosition, first);
+                System.arraycopy(src, off + first, storage(), 0, n - first);
+                if (countsElementBytes()) {
+                    for (int i = 0; i < n; i++) {
+                        suppliedBytes(load((putPosition + i) % capacity));
+                    }
+                }
+                putPosition = (putPosition + n) % capacity;
+                added(n);
+                off += n;
+                len -= n;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Consumes up to maxLen elements into the dst array, waiting until at least one element is available.
+     * @param dst array of the same component type as the storage.
+     * @param off offset in dst.
+     * @param maxLen maximum amount of elements to consume.
+     * @param dstLength length of the dst array.
+     * @return int amount of elements consumed, only 0 when maxLen is 0.
+     * @exception SyncBufferSupplierExhaustedException when the buffer is empty and the supplier is exhausted.
+     * @exception SyncBufferTimeoutException on consume timeout, when buffer is empty.
+     */
+    protected final int consumeArray(final Object dst, final int off, final int maxLen, final int dstLength)
+            throws InterruptedException, IOException {
+        Objects.checkFromIndexSize(off, maxLen, dstLength);
+        if (maxLen == 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            awaitNotEmpty();
+            int n = Math.min(maxLen, itemsInBuffer);
+            int first = Math.min(n, capacity - takePosition);
+            System.arraycopy(storage(), takePosition, dst, off, first);
+            System.arraycopy(storage(), 0, dst, off + first, n - first);
+            if (countsElementBytes()) {
+                for (int i = 0; i < n; i++) {
+                    consumedBytes(load((takePosition + i) % capacity));
+                }
+            }
+            clear(takePosition, takePosition + first);
+            clear(0, n - first);
+            takePosition = (takePosition + n) % capacity;
+            taken(n);
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the elements in FIFO order to the start of a new ring of newCapacity. Caller must hold the lock.
+     * @param newCapacity new capacity, at least itemsInBuffer.
+     */
+    private void resize(final int newCapacity) {
+        Object old = replaceStorage(newCapacity);
+        int first = Math.min(itemsInBuffer, capacity - takePosition);
+        System.arraycopy(old, takePosition, storage(), 0, first);
+        System.arraycopy(old, 0, storage(), first, itemsInBuffer - first);
+        capacity = newCapacity;
+        takePosition = 0;
+        putPosition = itemsInBuffer == capacity ? 0 : itemsInBuffer;
+        fullWaits = 0;
+        if (metrics != null) {
+            metrics.resized(newCapacity);
+        }
+    }
+
+    /**
+     * Claims the next free slot. Caller must hold the lock and have checked the buffer is not full.
+     * Waiters are only woken once the lock is released, so the element can be stored after claiming.
+     * @return int index to store the supplied element at.
+     */
+    protected final int nextPutIndex() {
+        int index = putPosition;
+        if (++putPosition == capacity) {
+            putPosition = 0;
+        }
+        added(1);
+        return index;
+    }
+
+    /**
+     * Releases the oldest slot. Caller must hold the lock and have checked the buffer is not empty.
+     * @return int index to load the consumed element from.
+     */
+    protected final int nextTakeIndex() {
+        int index = takePosition;
+        if (++takePosition == capacity) {
+            takePosition = 0;
+        }
+        taken(1);
+        return index;
+    }
+
+    /**
+     * Counts n supplied elements. Signals a consumer on the empty to non-empty transition, and passes the
+     * not-full signal on to the next waiting producer while room remains.
+     * @param n amount of elements.
+     */
+    private void added(final int n) {
+        boolean wasEmpty = itemsInBuffer == 0;
+        itemsInBuffer += n;
+        peakItems = Math.max(peakItems, itemsInBuffer);
+        if (wasEmpty) {
+            notEmpty.signal();
+        }
+        if (waitingProducers > 0 && itemsInBuffer < capacity) {
+            notFull.signal();
+        }
+        if (metrics != null) {
+            metrics.supplied(n, itemsInBuffer);
+            if (countsBytes()) {
+                metrics.suppliedBytes(n);
+            }
+        }
+    }
+
+    /**
+     * Counts n consumed elements. Signals a producer on the full to non-full transition, and passes the
+     * not-empty signal on to the next waiting consumer while elements remain.
+     * @param n amount of elements.
+     */
+    private void taken(final int n) {
+        boolean wasFull = itemsInBuffer == capacity;
+        itemsInBuffer -= n;
+        if (wasFull) {
+            notFull.signal();
+        }
+        if (waitingConsumers > 0 && itemsInBuffer > 0) {
+            notEmpty.signal();
+        }
+        if (metrics != null) {
+            metrics.consumed(n);
+            if (countsBytes()) {
+                metrics.consumedBytes(n);
+            }
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package buutti.buffer.util;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.exceptions.SyncBufferTimeoutException;
+import buutti.buffer.interfaces.WaitStrategy;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * Abstract lock-free single-producer/single-consumer ring syncBuffer.
+ * The producer owns the tail sequence and the consumer owns the head sequence, each on its own cache line.
+ * Elements are published with release/acquire ordering on the sequences, waiting is delegated to a {@link WaitStrategy}.
+ * Only one thread may supply and only one thread may consume at a time; the full/empty/exhausted/timeout
+ * semantics are the same as {@link AbstractRingSyncBuffer}.
+ * @param <T>
+ */
+public abstract class AbstractSpscSyncBuffer<T> extends AbstractSyncBuffer<T> {
+    /**
+     * Maximum amount of elements in the buffer.
+     */
+    protected final int capacity;
+
+    /**
+     * Index mask when the capacity is a power of two, -1 otherwise.
+     */
+    private final int mask;
+
+    /**
+     * ioTimeout in nanos, time to wait for supply/consume operation. -1 = No timeout, also for a 0 millis ioTimeout.
+     */
+    private final long ioTimeoutNanos;
+
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * head: next sequence to consume, tail: next sequence to supply.
+     */
+    private final PaddedSequence head = new PaddedSequence(), tail = new PaddedSequence();
+
+    /**
+     * @param capacity Maximum size of the buffer for N elements
+     * @param ioTimeout ioTimeout, time to wait in millis for supply/consume operation. 0 or -1 = No timeout.
+     * @param waitStrategy strategy to wait with when the buffer is full or empty.
+     */
+    protected AbstractSpscSyncBuffer(int capacity, long ioTimeout, WaitStrategy waitStrategy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Buffer capacity must be at least 1.");
+        }
+        this.capacity = capacity;
+        this.mask = Integer.bitCount(capacity) == 1 ? capacity - 1 : -1;
+        this.ioTimeoutNanos = WaitStrategies.toNanos(ioTimeout);
+        this.waitStrategy = Objects.requireNonNull(waitStrategy);
+    }
+
+    /**
+     * The backing array of the ring, of length capacity. Used for bulk transfers with {@link System#arraycopy}.
+     * @return Object array (Object[] or a primitive array).
+     */
+    protected abstract Object storage();
+
+    /**
+     * Loads a single element as its (boxed) generic type.
+     * @param index slot index
+     * @return T
+     */
+    protected abstract T load(int index);
+
+    /**
+     * Clears the slots in [from, to) after they were consumed. Only needed for reference storage.
+     * @param from first index, inclusive
+     * @param to last index, exclusive
+     */
+    protected void clear(int from, int to) {
+    }
+
+    @Override
+    public boolean isFull() {
+        return tail.get() - head.get() >= capacity;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    @Override
+    public boolean isSupplierIsExhausted() {
+        return supplierIsExhausted;
+    }
+
+    @Override
+    public void supplierIsExhausted() {
+        if (!supplierIsExhausted) {
+            supplierIsExhausted = true;
+            waitStrategy.signalAll();
+        }
+    }
+
+    /**
+     * Waits for at least one free slot. Producer thread only.
+     * The cached head is only refreshed when it shows less than the wanted amount of free slots.
+     * @param wanted amount of free slots the caller would like.
+     * @return long the amount of free slots, at least 1.
+     * @exception SyncBufferSupplierExhaustedException when supplying to an exhausted buffer.
+     * @exception SyncBufferTimeoutException on supply timeout, when buffer is full.
+     */
+    private long awaitFree(final long wanted) throws InterruptedException, IOException {
+        if (supplierIsExhausted) {
+            throw new SyncBufferSupplierExhaustedException();
+        }
+        long t = tail.getPlain();
+        long free = capacity - (t - tail.cachedOpposite);
+        if (free >= wanted) {
+            return free;
+        }
+        tail.cachedOpposite = head.get();
+        free = capacity - (t - tail.cachedOpposite);
+        if (free > 0L) {
+            return free;
+        }
+        long start = metrics != null ? System.nanoTime() : 0L;
+        // Like the ring buffer, a producer waiting on a full buffer stops once the buffer is exhausted.
+        boolean ready = waitStrategy.await(() -> t - head.get() < capacity || supplierIsExhausted, ioTimeoutNanos);
+        if (metrics != null) {
+            metrics.producerWaited(System.nanoTime() - start);
+            if (!ready) {
+                metrics.supplyTimedOut();
+            }
+        }
+        if (!ready) {
+            throw new SyncBufferTimeoutException();
+        }
+        if (supplierIsExhausted) {
+            throw new SyncBufferSupplierExhaustedException();
+        }
+        tail.cachedOpposite = head.get();
+        return capacity - (t - tail.cachedOpposite);
+    }
+
+    /**
+     * Waits for at least one available element. Consumer thread only.
+     * The cached tail is only refreshed when it shows less than the wanted amount of elements.
+     * @param wanted amount of elements the caller would like.
+     * @return long the amount of available elements, at least 1.
+     * @exception SyncBufferSupplierExhaustedException when the buffer is empty and the supplier is exhausted.
+     * @exception SyncBufferTimeoutException on consume timeout, when buffer is empty.
+     */
+    private long awaitAvailable(final long wanted) throws InterruptedException, IOException {
+        long h = head.getPlain();
+        long available = head.cachedOpposite - h;
+        if (available >= wanted) {
+            return available;
+        }
+        head.cachedOpposite = tail.get();
+        available = head.cachedOpposite - h;
+        if (available > 0L) {
+            return available;
+        }
+        long start = metrics != null ? System.nanoTime() : 0L;
+        waitStrategy.await(() -> tail.get() != h || supplierIsExhausted, ioTimeoutNanos);
+        if (metrics != null) {
+            metrics.consumerWaited(System.nanoTime() - start);
+        }
+        // Read the flag before the tail, so a set flag guarantees the final tail is visible.
+        boolean exhausted = supplierIsExhausted;
+        head.cachedOpposite = tail.get();
+        available = head.cachedOpposite - h;
+        if (available > 0L) {
+            return available;
+        }
+        if (exhausted) {
+            throw new SyncBufferSupplierExhaustedException();
+        }
+        if (metrics != null) {
+            metrics.consumeTimedOut();
+        }
+        throw new SyncBufferTimeoutException();
+    }
+
+    private int index(final long sequence) {
+        return mask >= 0 ? (int) (sequence & mask) : (int) (sequence % capacity);
+    }
+
+    /**
+     * Claims the next free slot, waiting if the buffer is full. Producer thread only;
+     * must be followed by storing the element and {@link #publishPut()}.
+     * @return int index to store the supplied element at.
+     */
+    protected final int claimPut() throws InterruptedException, IOException {
+        awaitFree(1L);
+        return index(tail.getPlain());
+    }
+
+    /**
+     * Publishes the element stored at the slot returned by {@link #claimPut()}.
+     */
+    protected final void publishPut() {
+        long t = tail.getPlain() + 1L;
+        tail.setRelease(t);
+        if (metrics != null) {
+            metrics.supplied(1, t - head.get());
+            if (countsBytes()) {
+                metrics.suppliedBytes(1);
+            }
+        }
+        waitStrategy.signalAll();
+    }
+
+    /**
+     * Claims the oldest slot, waiting if the buffer is empty. Consumer thread only;
+     * must be followed by loading the element and {@link #publishTake()}.
+     * @return int index to load the consumed element from.
+     */
+    protected final int claimTake() throws InterruptedException, IOException {
+        awaitAvailable(1L);
+        return index(head.getPlain());
+    }
+
+    /**
+     * Releases the slot returned by {@link #claimTake()} to the producer.
+     */
+    protected final void publishTake() {
+        head.setRelease(head.getPlain() + 1L);
+        if (metrics != null) {
+            metrics.consumed(1);
+            if (countsBytes()) {
+                metrics.consumedBytes(1);
+            }
+        }
+        waitStrategy.signalAll();
+    }
+
+    /**
+     * Supplies len elements of the src array, waiting for free room as needed. Producer thread only.
+     * @param src array of the same component type as the storage.
+     * @param off offset in src.
+     * @param len amount of elements to supply.
+     * @param srcLength length of the src array.
+     * @exception SyncBufferSupplierExhaustedException when supplying to an exhausted buffer.
+     * @exception SyncBufferTimeoutException on supply timeout, elements supplied before the timeout stay in the buffer.
+     */
+    protected final void supplyArray(final Object src, int off, int len, final int srcLength)
+            throws InterruptedException, IOException {
+        Objects.checkFromIndexSize(off, len, srcLength);
+        while (len > 0) {
+            int n = (int) Math.min(len, awaitFree(len));
+            long t = tail.getPlain();
+            int position = index(t);
+            int first = Math.min(n, capacity - position);
+            System.arraycopy(src, off, storage(), position, first);
+            System.arraycopy(src, off + first, storage(), 0, n - first);
+            if (countsElementBytes()) {
+                for (int i = 0; i < n; i++) {
+                    suppliedBytes(load(index(t + i)));
+                }
+            }
+            tail.setRelease(t + n);
+            if (metrics != null) {
+                metrics.supplied(n, t + n - head.get());
+                if (countsBytes()) {
+                    metrics.suppliedBytes(n);
+                }
+            }
+            waitStrategy.signalAll();
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Consumes up to maxLen elements into the dst array, waiting until at least one element is available.
+     * Consumer thread only.
+     * @param dst array of the same component type as the storage.
+     * @param off offset in dst.
+     * @param maxLen maximum amount of elements to consume.
+     * @param dstLength length of the dst array.
+     * @return int amount of elements consumed, only 0 when maxLen is 0.
+     * @exception SyncBufferSupplierExhaustedException when the buffer is empty and the supplier is exhausted.
+     * @exception SyncBufferTimeoutException on consume timeout, when buffer is empty.
+     */
+    protected final int consumeArray(final Object dst, final int off, final int maxLen, final int dstLength)
+            throws InterruptedException, IOException {
+        Objects.checkFromIndexSize(off, maxLen, dstLength);
+        if (maxLen == 0) {
+            return 0;
+        }
+        int n = (int) Math.min(maxLen, awaitAvailable(maxLen));
+        long h = head.getPlain();
+        int position = index(h);
+        int first = Math.min(n, capacity - position);
+        System.arraycopy(storage(), position, dst, off, first);
+        System.arraycopy(storage(), 0, dst, off + first, n - first);
+        if (countsElementBytes()) {
+            for (int i = 0; i < n; i++) {
+                consumedBytes(load(index(h + i)));
+            }
+        }
+        clear(position, position + first);
+        clear(0, n - first);
+        head.setRelease(h + n);
+        if (metrics != null) {
+            metrics.consumed(n);
+            if (countsBytes()) {
+                metrics.consumedBytes(n);
+            }
+        }
+        waitStrategy.signalAll();
+        return n;
+    }
+
+    /**
+     * Moves up to maxElements of the currently buffered objects into the collection, without waiting.
+     * Consumer thread only.
+     */
+    @Override
+    public int drainTo(final Collection<? super T> collection, final int maxElements) {
+        long h = head.getPlain();
+        int n = (int) Math.min(maxElements, tail.get() - h);
+        for (int i = 0; i < n; i++) {
+            int index = index(h + i);
+            T element = load(index);
+            consumedBytes(element);
+            collection.add(element);
+            clear(index, index + 1);
+        }
+        if (n > 0) {
+            head.setRelease(h + n);
+            if (metrics != null) {
+                metrics.consumed(n);
+                if (countsBytes()) {
+                    metrics.consumedBytes(n);
+                }
+            }
+            waitStrategy.signalAll();
+        }
+        return n;
+    }
+}
@@ -3,13 +3,85 @@ package buutti.buffer.util;
 import buutti.buffer.interfaces.SyncBuffer;
 
 import java.io.Closeable;
+import java.util.function.ToLongFunction;
 
 /**
  * Abstract syncBuffer, implements closable for easier use with try-resource.
  * @param <T>
  */
 public abstract class AbstractSyncBuffer<T> implements SyncBuffer<T>, Closeable {
-    boolean supplierIsExhausted = false;
+    volatile boolean supplierIsExhausted = false;
+
+    /**
+     * Runtime counters, null = not collected.
+     */
+    SyncBufferMetrics metrics;
+
+    /**
+     * Bytes of an element for the byte counters, null = elements are not counted in bytes.
+     */
+    ToLongFunction<? super T> elementBytes;
+
+    /**
+     * Attaches runtime counters to the buffer. Must be called before the buffer is shared between threads.
+     * Only byte buffers count bytes, see {@link #setMetrics(SyncBufferMetrics, ToLongFunction)} for others.
+     * @param metrics counters to record into, may be shared by several buffers. null to stop collecting.
+     */
+    public void setMetrics(final SyncBufferMetrics metrics) {
+        setMetrics(metrics, null);
+    }
+
+    /**
+     * Attaches runtime counters that also count the bytes of every supplied and consumed element, e.g.
+     * ByteBuffer::remaining for a queue of filled chunks. Must be called before the buffer is shared between threads.
+     * @param metrics counters to record into, may be shared by several buffers. null to stop collecting.
+     * @param elementBytes bytes of an element, null = elements are not counted in bytes.
+     */
+    public void setMetrics(final SyncBufferMetrics metrics, final ToLongFunction<? super T> elementBytes) {
+        this.metrics = metrics;
+        this.elementBytes = elementBytes;
+    }
+
+    /**
+     * @return SyncBufferMetrics the attached counters, or null.
+     */
+    public SyncBufferMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return boolean whether every element counts as a single byte; true for the primitive byte buffers.
+     */
+    boolean countsBytes() {
+        return false;
+    }
+
+    /**
+     * @return boolean whether the bytes of every element are counted; check before loading elements to count.
+     */
+    final boolean countsElementBytes() {
+        return metrics != null && elementBytes != null;
+    }
+
+    /**
+     * Records the bytes of a supplied element, when counted.
+     * @param element supplied element.
+     */
+    final void suppliedBytes(final T element) {
+        if (countsElementBytes()) {
+            metrics.suppliedBytes(elementBytes.applyAsLong(element));
+        }
+    }
+
+    /**
+     * Records the bytes of a consumed element, when counted.
+     * @param element consumed element.
+     */
+    final void consumedBytes(final T element) {
+        if (countsElementBytes()) {
+            metrics.consumedBytes(elementBytes.applyAsLong(element));
+        }
+    }
 
     @Override
     public void supplierIsExhausted() {
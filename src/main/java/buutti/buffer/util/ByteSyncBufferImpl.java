@@ -0,0 +1,89 @@
+package buutti.buffer.util;
+
+import buutti.buffer.interfaces.ByteSyncBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Ring buffer of primitive bytes, same full/empty/exhausted/timeout semantics as {@link SyncBufferImpl}.
+ */
+public class ByteSyncBufferImpl extends AbstractRingSyncBuffer<Byte> implements ByteSyncBuffer, Closeable {
+    /**
+     * The byte array buffer of N size.
+     */
+    private byte[] buffer;
+
+    /**
+     * @param size Maximum size of the buffer for N bytes
+     * @param ioTimeout ioTimeout, time to wait in millis for supply/consume operation. 0 or -1 = No timeout.
+     */
+    public ByteSyncBufferImpl(int size, long ioTimeout) {
+        this(size, size, ioTimeout);
+    }
+
+    /**
+     * Adaptive buffer, resized between the given bounds depending on how often the producer and consumer wait.
+     * @param minSize Initial and minimum size of the buffer for N bytes
+     * @param maxSize Maximum size of the buffer for N bytes
+     * @param ioTimeout ioTimeout, time to wait in millis for supply/consume operation. 0 or -1 = No timeout.
+     */
+    public ByteSyncBufferImpl(int minSize, int maxSize, long ioTimeout) {
+        super(minSize, maxSize, ioTimeout);
+        buffer = new byte[minSize];
+    }
+
+    @Override
+    protected Object storage() {
+        return buffer;
+    }
+
+    @Override
+    protected Object replaceStorage(final int capacity) {
+        Object old = buffer;
+        buffer = new byte[capacity];
+        return old;
+    }
+
+    @Override
+    protected Byte load(final int index) {
+        return buffer[index];
+    }
+
+    @Override
+    boolean countsBytes() {
+        return true;
+    }
+
+    @Override
+    public void supply(final byte[] src, final int off, final int len) throws InterruptedException, IOException {
+        supplyArray(src, off, len, src.length);
+    }
+
+    @Override
+    public int consume(final byte[] dst, final int off, final int maxLen) throws InterruptedException, IOException {
+        return consumeArray(dst, off, maxLen, dst.length);
+    }
+
+    @Override
+    public void supplyByte(final byte b) throws InterruptedException, IOException {
+        lock.lock();
+        try {
+            awaitNotFull();
+            buffer[nextPutIndex()] = b;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public byte consumeByte() throws InterruptedException, IOException {
+        lock.lock();
+        try {
+            awaitNotEmpty();
+            return buffer[nextTakeIndex()];
+        } finally {
+            lock.unlock();
+        }
+    }
+}
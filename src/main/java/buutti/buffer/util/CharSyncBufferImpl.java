@@ -0,0 +1,84 @@
+package buutti.buffer.util;
+
+import buutti.buffer.interfaces.CharSyncBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Ring buffer of primitive chars, same full/empty/exhausted/timeout semantics as {@link SyncBufferImpl}.
+ */
+public class CharSyncBufferImpl extends AbstractRingSyncBuffer<Character> implements CharSyncBuffer, Closeable {
+    /**
+     * The char array buffer of N size.
+     */
+    private char[] buffer;
+
+    /**
+     * @param size Maximum size of the buffer for N chars
+     * @param ioTimeout ioTimeout, time to wait in millis for supply/consume operation. 0 or -1 = No timeout.
+     */
+    public CharSyncBufferImpl(int size, long ioTimeout) {
+        this(size, size, ioTimeout);
+    }
+
+    /**
+     * Adaptive buffer, resized between the given bounds depending on how often the producer and consumer wait.
+     * @param minSize Initial and minimum size of the buffer for N chars
+     * @param maxSize Maximum size of the buffer for N chars
+     * @param ioTimeout ioTimeout, time to wait in millis for supply/consume operation. 0 or -1 = No timeout.
+     */
+    public CharSyncBufferImpl(int minSize, int maxSize, long ioTimeout) {
+        super(minSize, maxSize, ioTimeout);
+        buffer = new char[minSize];
+    }
+
+    @Override
+    protected Object storage() {
+        return buffer;
+    }
+
+    @Override
+    protected Object replaceStorage(final int capacity) {
+        Object old = buffer;
+        buffer = new char[capacity];
+        return old;
+    }
+
+    @Override
+    protected Character load(final int index) {
+        return buffer[index];
+    }
+
+    @Override
+    public void supply(final char[] src, final int off, final int len) throws InterruptedException, IOException {
+        supplyArray(src, off, len, src.length);
+    }
+
+    @Override
+    public int consume(final char[] dst, final int off, final int maxLen) throws InterruptedException, IOException {
+        return consumeArray(dst, off, maxLen, dst.length);
+    }
+
+    @Override
+    public void supplyChar(final char c) throws InterruptedException, IOException {
+        lock.lock();
+        try {
+            awaitNotFull();
+            buffer[nextPutIndex()] = c;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public char consumeChar() throws InterruptedException, IOException {
+        lock.lock();
+        try {
+            awaitNotEmpty();
+            return buffer[nextTakeIndex()];
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package buutti.buffer.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Cache line padding in front of the sequence value. Padding is split over the class hierarchy,
+ * as the JVM does not reorder fields across super/subclass boundaries.
+ */
+abstract class PaddedSequenceLhs {
+    long p01, p02, p03, p04, p05, p06, p07;
+}
+
+/**
+ * The sequence value and the owning thread's cached view of the opposite sequence.
+ */
+abstract class PaddedSequenceValue extends PaddedSequenceLhs {
+    volatile long value;
+
+    /**
+     * Last observed value of the opposite sequence, only touched by the thread owning this sequence.
+     */
+    long cachedOpposite;
+}
+
+/**
+ * A monotonically increasing sequence on its own cache line, written by a single thread.
+ * Used as head/tail of the single-producer/single-consumer buffers so the producer and consumer
+ * never write to the same cache line.
+ */
+public final class PaddedSequence extends PaddedSequenceValue {
+    long p11, p12, p13, p14, p15, p16, p17;
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(PaddedSequenceValue.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * @return long the current value, with acquire semantics.
+     */
+    public long get() {
+        return (long) VALUE.getAcquire(this);
+    }
+
+    /**
+     * @return long the current value, without ordering. Only meaningful for the owning thread.
+     */
+    public long getPlain() {
+        return (long) VALUE.get(this);
+    }
+
+    /**
+     * Publishes a new value with release semantics, making prior writes visible to acquiring readers.
+     * @param newValue long
+     */
+    public void setRelease(final long newValue) {
+        VALUE.setRelease(this, newValue);
+    }
+}
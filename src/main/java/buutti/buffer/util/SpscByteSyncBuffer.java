@@ -0,0 +1,65 @@
+package buutti.buffer.util;
+
+import buutti.buffer.interfaces.ByteSyncBuffer;
+import buutti.buffer.interfaces.WaitStrategy;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Lock-free single-producer/single-consumer ring buffer of primitive bytes.
+ */
+public class SpscByteSyncBuffer extends AbstractSpscSyncBuffer<Byte> implements ByteSyncBuffer, Closeable {
+    /**
+     * The byte array buffer of N size.
+     */
+    private final byte[] buffer;
+
+    /**
+     * @param size Maximum size of the buffer for N bytes
+     * @param ioTimeout ioTimeout, time to wait in millis for supply/consume operation. 0 or -1 = No timeout.
+     * @param waitStrategy strategy to wait with when the buffer is full or empty.
+     */
+    public SpscByteSyncBuffer(int size, long ioTimeout, WaitStrategy waitStrategy) {
+        super(size, ioTimeout, waitStrategy);
+        buffer = new byte[size];
+    }
+
+    @Override
+    protected Object storage() {
+        return buffer;
+    }
+
+    @Override
+    protected Byte load(final int index) {
+        return buffer[index];
+    }
+
+    @Override
+    boolean countsBytes() {
+        return true;
+    }
+
+    @Override
+    public void supplyByte(final byte b) throws InterruptedException, IOException {
+        buffer[claimPut()] = b;
+        publishPut();
+    }
+
+    @Override
+    public byte consumeByte() throws InterruptedException, IOException {
+        byte b = buffer[claimTake()];
+        publishTake();
+        return b;
+    }
+
+    @Override
+    public void supply(final byte[] src, final int off, final int len) throws InterruptedException, IOException {
+        supplyArray(src, off, len, src.length);
+    }
+
+    @Override
+    public int consume(final byte[] dst, final int off, final int maxLen) throws InterruptedException, IOException {
+        return consumeArray(dst, off, maxLen, dst.length);
+    }
+}
@@ -0,0 +1,72 @@
+package buutti.buffer.util;
+
+import buutti.buffer.interfaces.WaitStrategy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Lock-free single-producer/single-consumer ring buffer of generic objects.
+ * @param <T>
+ */
+public class SpscSyncBuffer<T> extends AbstractSpscSyncBuffer<T> implements Closeable {
+    /**
+     * The object array buffer of N size.
+     */
+    private final T[] buffer;
+
+    /**
+     * @param size Maximum size of the buffer for N generic objects
+     * @param ioTimeout ioTimeout, time to wait in millis for supply/consume operation. 0 or -1 = No timeout.
+     * @param waitStrategy strategy to wait with when the buffer is full or empty.
+     */
+    @SuppressWarnings("unchecked")
+    public SpscSyncBuffer(int size, long ioTimeout, WaitStrategy waitStrategy) {
+        super(size, ioTimeout, waitStrategy);
+        buffer = (T[]) new Object[size];
+    }
+
+    @Override
+    protected Object storage() {
+        return buffer;
+    }
+
+    @Override
+    protected T load(final int index) {
+        return buffer[index];
+    }
+
+    @Override
+    protected void clear(final int from, final int to) {
+        // Drop the references so consumed objects can be collected.
+        Arrays.fill(buffer, from, to, null);
+    }
+
+    @Override
+    public void supply(final T object) throws InterruptedException, IOException {
+        buffer[claimPut()] = object;
+        suppliedBytes(object);
+        publishPut();
+    }
+
+    @Override
+    public T consume() throws InterruptedException, IOException {
+        int index = claimTake();
+        T element = buffer[index];
+        buffer[index] = null;
+        consumedBytes(element);
+        publishTake();
+        return element;
+    }
+
+    @Override
+    public void supply(final T[] src, final int off, final int len) throws InterruptedException, IOException {
+        supplyArray(src, off, len, src.length);
+    }
+
+    @Override
+    public int consume(final T[] dst, final int off, final int maxLen) throws InterruptedException, IOException {
+        return consumeArray(dst, off, maxLen, dst.length);
+    }
+}
@@ -0,0 +1,309 @@
+package buutti.buffer.util;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.exceptions.SyncBufferTimeoutException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Multi producer/multi consumer buffer. Elements are stored in stripes with their own lock; producers add to
+ * and consumers start taking from the stripe of their thread, so threads mostly touch different locks.
+ * Free room and available elements are counted by two fair semaphores, waiting producers and consumers are
+ * served in arrival order.
+ * <p>
+ * The buffer is exhausted once every registered supplier called {@link #supplierIsExhausted()}; consumers then
+ * drain the remaining elements and get a {@link SyncBufferSupplierExhaustedException}.
+ * There is no global FIFO order between stripes, null elements are not allowed.
+ * @param <T>
+ */
+public class StripedSyncBuffer<T> extends AbstractSyncBuffer<T> implements Closeable {
+    /**
+     * A single stripe of the buffer.
+     * @param <T>
+     */
+    private static final class Stripe<T> {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final ArrayDeque<T> elements = new ArrayDeque<>();
+    }
+
+    private final int capacity;
+
+    /**
+     * ioTimeout, time to wait in millis for supply/consume operation. 0 or -1 = No timeout.
+     */
+    private final long ioTimeout;
+
+    private final Stripe<T>[] stripes;
+
+    /**
+     * Permits for free room and for available elements. Once exhausted, elements holds one extra permit
+     * handed from consumer to consumer so no consumer stays blocked.
+     */
+    private final Semaphore slots, elements;
+
+    /**
+     * Registered suppliers that are not exhausted yet.
+     */
+    private final AtomicInteger suppliers;
+
+    /**
+     * Buffer with a single supplier and a stripe per processor.
+     * @param capacity Maximum size of the buffer for N generic objects
+     * @param ioTimeout ioTimeout, time to wait in millis for supply/consume operation. 0 or -1 = No timeout.
+     */
+    public StripedSyncBuffer(int capacity, long ioTimeout) {
+        this(capacity, Runtime.getRuntime().availableProcessors(), 1, ioTimeout);
+    }
+
+    /**
+     * @param capacity Maximum size of the buffer for N generic objects
+     * @param stripes amount of stripes, capped at capacity.
+     * @param suppliers amount of suppliers that have to be exhausted before the buffer is exhausted.
+     * @param ioTimeout ioTimeout, time to wait in millis for supply/consume operation. 0 or -1 = No timeout.
+     */
+    public StripedSyncBuffer(int capacity, int stripes, int suppliers, long ioTimeout) {
+        if (capacity < 1 || stripes < 1 || suppliers < 1) {
+            throw new IllegalArgumentException("Buffer capacity, stripes and suppliers must be at least 1.");
+        }
+        this.capacity = capacity;
+        this.ioTimeout = ioTimeout;
+        @SuppressWarnings("unchecked")
+        Stripe<T>[] array = (Stripe<T>[]) new Stripe<?>[Math.min(stripes, capacity)];
+        this.stripes = array;
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe<>();
+        }
+        this.slots = new Semaphore(capacity, true);
+        this.elements = new Semaphore(0, true);
+        this.suppliers = new AtomicInteger(suppliers);
+    }
+
+    /**
+     * Registers one more supplier, which has to be exhausted as well before the buffer is exhausted.
+     * @exception IllegalStateException when the buffer is already exhausted.
+     */
+    public void registerSupplier() {
+        if (suppliers.getAndUpdate(n -> n > 0 ? n + 1 : n) == 0) {
+            throw new IllegalStateException("Buffer is already exhausted.");
+        }
+    }
+
+    /**
+     * @return int amount of suppliers that are not exhausted yet.
+     */
+    public int getSuppliers() {
+        return suppliers.get();
+    }
+
+    @Override
+    public void supply(final T object) throws InterruptedException, IOException {
+        Objects.requireNonNull(object);
+        if (supplierIsExhausted) {
+            throw new SyncBufferSupplierExhaustedException();
+        }
+        acquire(slots, true);
+        Stripe<T> stripe = stripes[home()];
+        stripe.lock.lock();
+        try {
+            stripe.elements.addLast(object);
+        } finally {
+            stripe.lock.unlock();
+        }
+        elements.release();
+        if (metrics != null) {
+            metrics.supplied(1, capacity - slots.availablePermits());
+            suppliedBytes(object);
+        }
+    }
+
+    @Override
+    public T consume() throws InterruptedException, IOException {
+        acquire(elements, false);
+        return take();
+    }
+
+    @Override
+    public int consume(final T[] dst, final int off, final int maxLen) throws InterruptedException, IOException {
+        Objects.checkFromIndexSize(off, maxLen, dst.length);
+        if (maxLen == 0) {
+            return 0;
+        }
+        acquire(elements, false);
+        dst[off] = take();
+        int n = 1;
+        try {
+            while (n < maxLen && elements.tryAcquire()) {
+                dst[off + n] = take();
+                n++;
+            }
+        } catch (SyncBufferSupplierExhaustedException e) {
+            // Drained, return what was taken.
+        }
+        return n;
+    }
+
+    @Override
+    public int drainTo(final Collection<? super T> collection, final int maxElements) {
+        int n = 0;
+        while (n < maxElements && elements.tryAcquire()) {
+            T element = poll();
+            if (element == null) {
+                // The exhausted permit, pass it on.
+                elements.release();
+                break;
+            }
+            slots.release();
+            consumedBytes(element);
+            collection.add(element);
+            n++;
+        }
+        if (metrics != null && n > 0) {
+            metrics.consumed(n);
+        }
+        return n;
+    }
+
+    @Override
+    public boolean isFull() {
+        return slots.availablePermits() == 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return slots.availablePermits() == capacity;
+    }
+
+    @Override
+    public boolean isSupplierIsExhausted() {
+        return supplierIsExhausted;
+    }
+
+    /**
+     * Marks one registered supplier as exhausted. The buffer is exhausted when the last one is.
+     */
+    @Override
+    public void supplierIsExhausted() {
+        if (suppliers.getAndUpdate(n -> Math.max(0, n - 1)) == 1) {
+            exhaust();
+        }
+    }
+
+    /**
+     * Exhausts the buffer regardless of the suppliers still registered.
+     */
+    @Override
+    public void close() {
+        if (suppliers.getAndSet(0) > 0) {
+            exhaust();
+        }
+    }
+
+    private void exhaust() {
+        supplierIsExhausted = true;
+        elements.release();
+    }
+
+    /**
+     * Takes an element after acquiring an elements permit. The permit guarantees an element that no other
+     * consumer claims, but it may sit in a stripe that was already passed, so stripes are scanned until found.
+     * @return T
+     * @exception SyncBufferSupplierExhaustedException when the permit was the exhausted permit.
+     */
+    private T take() throws SyncBufferSupplierExhaustedException {
+        while (true) {
+            boolean exhausted = supplierIsExhausted;
+            T element = poll();
+            if (element != null) {
+                slots.release();
+                if (metrics != null) {
+                    metrics.consumed(1);
+                    consumedBytes(element);
+                }
+                return element;
+            }
+            if (exhausted) {
+                // Nothing is added after exhaustion, so this was the exhausted permit.
+                elements.release();
+                throw new SyncBufferSupplierExhaustedException();
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Takes the oldest element of the first non-empty stripe, starting at the stripe of the thread.
+     * @return T element, or null when every stripe was empty.
+     */
+    private T poll() {
+        int start = home();
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe<T> stripe = stripes[(start + i) % stripes.length];
+            stripe.lock.lock();
+            try {
+                T element = stripe.elements.pollFirst();
+                if (element != null) {
+                    return element;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return int stripe index of the current thread.
+     */
+    private int home() {
+        return (Thread.currentThread().hashCode() & Integer.MAX_VALUE) % stripes.length;
+    }
+
+    /**
+     * Acquires a permit, waiting up to the ioTimeout.
+     * @param permits slots or elements.
+     * @param producer whether waits count as producer or consumer waits.
+     * @exception SyncBufferTimeoutException on timeout.
+     */
+    private void acquire(final Semaphore permits, final boolean producer) throws InterruptedException, IOException {
+        // A zero timeout tryAcquire honours the fairness, unlike the untimed one.
+        if (permits.tryAcquire(0L, TimeUnit.MILLISECONDS)) {
+            return;
+        }
+        long start = metrics != null ? System.nanoTime() : 0L;
+        boolean acquired = true;
+        try {
+            if (ioTimeout <= 0L) {
+                permits.acquire();
+            } else {
+                acquired = permits.tryAcquire(ioTimeout, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            if (metrics != null) {
+                if (producer) {
+                    metrics.producerWaited(System.nanoTime() - start);
+                } else {
+                    metrics.consumerWaited(System.nanoTime() - start);
+                }
+            }
+        }
+        if (!acquired) {
+            if (metrics != null) {
+                if (producer) {
+                    metrics.supplyTimedOut();
+                } else {
+                    metrics.consumeTimedOut();
+                }
+            }
+            throw new SyncBufferTimeoutException();
+        }
+    }
+}
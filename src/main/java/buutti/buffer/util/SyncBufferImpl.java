@@ -1,128 +1,93 @@
 package buutti.buffer.util;
 
-import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
-import buutti.buffer.exceptions.SyncBufferTimeoutException;
-
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Arrays;
 
-public class SyncBufferImpl<T> extends AbstractSyncBuffer<T> implements Closeable {
+public class SyncBufferImpl<T> extends AbstractRingSyncBuffer<T> implements Closeable {
     /**
      * The object array buffer of N size.
      */
-    private final T[] buffer;
+    private T[] buffer;
 
     /**
-     * ioTimeout, time to wait in millis for supply/consume operation. -1 = No timeout.
-     */
-    private final long ioTimeout;
-
-    /**
-     * Positional and size counters for navigating the buffer.
+     * @param size Maximum size of the buffer for N generic objects
+     * @param ioTimeout ioTimeout, time to wait in millis for supply/consume operation. 0 or -1 = No timeout.
      */
-    private int putPosition, takePosition, itemsInBuffer;
-
-    private boolean supplierIsExhausted = false;
+    public SyncBufferImpl(int size, long ioTimeout) {
+        this(size, size, ioTimeout);
+    }
 
     /**
-     * @param size Maximum size of the buffer for N generic objects
-     * @param ioTimeout ioTimeout, time to wait in millis for supply/consume operation. -1 = No timeout.
+     * Adaptive buffer, resized between the given bounds depending on how often the producer and consumer wait.
+     * @param minSize Initial and minimum size of the buffer for N generic objects
+     * @param maxSize Maximum size of the buffer for N generic objects
+     * @param ioTimeout ioTimeout, time to wait in millis for supply/consume operation. 0 or -1 = No timeout.
      */
-    public SyncBufferImpl(int size, long ioTimeout) {
-        buffer = (T[]) new Object[size];
-        this.ioTimeout = ioTimeout;
+    @SuppressWarnings("unchecked")
+    public SyncBufferImpl(int minSize, int maxSize, long ioTimeout) {
+        super(minSize, maxSize, ioTimeout);
+        buffer = (T[]) new Object[minSize];
     }
 
     @Override
-    public synchronized void supply(final T object) throws InterruptedException, IOException {
-        if (isSupplierIsExhausted()) {
-            throw new SyncBufferSupplierExhaustedException();
-        }
-        if (ioTimeout < 0L) {
-            while (isFull()) {
-                wait();
-            }
-        } else {
-            if (isFull()) {
-                wait(ioTimeout);
-            }
-            if (isFull()) {
-                throw new SyncBufferTimeoutException();
-            }
-        }
-        doSupply(object);
-        notifyAll();
+    protected Object storage() {
+        return buffer;
     }
 
+    @SuppressWarnings("unchecked")
     @Override
-    public synchronized T consume() throws IOException, InterruptedException {
-        if (ioTimeout < 0L) {
-            while (isEmpty() && !supplierIsExhausted) {
-                wait();
-            }
-            if (supplierIsExhausted && isEmpty()) {
-                throw new SyncBufferSupplierExhaustedException();
-            }
-        } else {
-            if (isEmpty() && !supplierIsExhausted) {
-                wait(ioTimeout);
-            }
-            if (supplierIsExhausted && isEmpty()) {
-                throw new SyncBufferSupplierExhaustedException();
-            } else if (isEmpty()) {
-                throw new SyncBufferTimeoutException();
-            }
-        }
-        T element = doConsume();
-        notifyAll();
-        return element;
+    protected Object replaceStorage(final int capacity) {
+        Object old = buffer;
+        buffer = (T[]) new Object[capacity];
+        return old;
     }
 
     @Override
-    public synchronized boolean isFull() {
-        return itemsInBuffer == buffer.length;
+    protected T load(final int index) {
+        return buffer[index];
     }
 
     @Override
-    public synchronized boolean isEmpty() {
-        return itemsInBuffer == 0;
+    protected void clear(final int from, final int to) {
+        // Drop the references so consumed objects can be collected.
+        Arrays.fill(buffer, from, to, null);
     }
 
     @Override
-    public synchronized boolean isSupplierIsExhausted() {
-        return supplierIsExhausted;
+    public void supply(final T[] src, final int off, final int len) throws InterruptedException, IOException {
+        supplyArray(src, off, len, src.length);
     }
 
     @Override
-    public synchronized void supplierIsExhausted() {
-        if (!isSupplierIsExhausted()) {
-            this.supplierIsExhausted = true;
-            notifyAll();
-        }
+    public int consume(final T[] dst, final int off, final int maxLen) throws InterruptedException, IOException {
+        return consumeArray(dst, off, maxLen, dst.length);
     }
 
-    /**
-     * Supply the buffer with a Generic object.
-     * @param object T
-     */
-    private synchronized void doSupply(final T object) {
-        buffer[putPosition] = object;
-        if (++putPosition == buffer.length) {
-            putPosition = 0;
+    @Override
+    public void supply(final T object) throws InterruptedException, IOException {
+        lock.lock();
+        try {
+            awaitNotFull();
+            buffer[nextPutIndex()] = object;
+            suppliedBytes(object);
+        } finally {
+            lock.unlock();
         }
-        ++itemsInBuffer;
     }
 
-    /**
-     * Consume a Generic object from the buffer
-     * @return T
-     */
-    private synchronized T doConsume() {
-        T element = buffer[takePosition];
-        if (++takePosition == buffer.length) {
-            takePosition = 0;
+    @Override
+    public T consume() throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            awaitNotEmpty();
+            int index = nextTakeIndex();
+            T element = buffer[index];
+            clear(index, index + 1);
+            consumedBytes(element);
+            return element;
+        } finally {
+            lock.unlock();
         }
-        --itemsInBuffer;
-        return element;
     }
 }
@@ -0,0 +1,234 @@
+package buutti.buffer.util;
+
+import buutti.buffer.interfaces.SyncBufferMetricsMXBean;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low overhead runtime counters of SyncBuffers, attached with {@link AbstractSyncBuffer#setMetrics}.
+ * Counters are {@link LongAdder}s, so producers and consumers never contend on them; a single instance may be
+ * shared by many buffers to aggregate them. Buffers without metrics pay a single null check per operation.
+ */
+public class SyncBufferMetrics implements SyncBufferMetricsMXBean {
+    private final LongAdder supplied = new LongAdder(), consumed = new LongAdder();
+
+    private final LongAdder bytesSupplied = new LongAdder(), bytesConsumed = new LongAdder();
+
+    private final LongAdder producerWaits = new LongAdder(), producerWaitNanos = new LongAdder();
+
+    private final LongAdder consumerWaits = new LongAdder(), consumerWaitNanos = new LongAdder();
+
+    private final LongAdder supplyTimeouts = new LongAdder(), consumeTimeouts = new LongAdder();
+
+    private final LongAdder resizes = new LongAdder();
+
+    private final AtomicLong highWaterMark = new AtomicLong(), capacity = new AtomicLong();
+
+    /**
+     * Records supplied elements.
+     * @param n amount of elements.
+     * @param occupancy amount of elements in the buffer after supplying.
+     */
+    public void supplied(final long n, final long occupancy) {
+        supplied.add(n);
+        // Plain read first, the CAS is only needed when the mark actually rises.
+        if (occupancy > highWaterMark.get()) {
+            highWaterMark.accumulateAndGet(occupancy, Math::max);
+        }
+    }
+
+    /**
+     * Records consumed elements.
+     * @param n amount of elements.
+     */
+    public void consumed(final long n) {
+        consumed.add(n);
+    }
+
+    /**
+     * Records the bytes of supplied elements; the elements themselves of byte buffers, the chunk sizes of chunk queues.
+     * @param bytes amount of bytes.
+     */
+    public void suppliedBytes(final long bytes) {
+        bytesSupplied.add(bytes);
+    }
+
+    /**
+     * Records the bytes of consumed elements.
+     * @param bytes amount of bytes.
+     */
+    public void consumedBytes(final long bytes) {
+        bytesConsumed.add(bytes);
+    }
+
+    /**
+     * Records a producer wait on a full buffer.
+     * @param nanos time blocked.
+     */
+    public void producerWaited(final long nanos) {
+        producerWaits.increment();
+        producerWaitNanos.add(nanos);
+    }
+
+    /**
+     * Records a consumer wait on an empty buffer.
+     * @param nanos time blocked.
+     */
+    public void consumerWaited(final long nanos) {
+        consumerWaits.increment();
+        consumerWaitNanos.add(nanos);
+    }
+
+    /**
+     * Records a timed out supply.
+     */
+    public void supplyTimedOut() {
+        supplyTimeouts.increment();
+    }
+
+    /**
+     * Records a timed out consume.
+     */
+    public void consumeTimedOut() {
+        consumeTimeouts.increment();
+    }
+
+    /**
+     * Records a resize of an adaptive buffer.
+     * @param newCapacity capacity after the resize.
+     */
+    public void resized(final long newCapacity) {
+        resizes.increment();
+        capacity.set(newCapacity);
+    }
+
+    @Override
+    public long getSupplied() {
+        return supplied.sum();
+    }
+
+    @Override
+    public long getConsumed() {
+        return consumed.sum();
+    }
+
+    @Override
+    public long getBytesSupplied() {
+        return bytesSupplied.sum();
+    }
+
+    @Override
+    public long getBytesConsumed() {
+        return bytesConsumed.sum();
+    }
+
+    @Override
+    public long getProducerWaits() {
+        return producerWaits.sum();
+    }
+
+    @Override
+    public long getProducerWaitNanos() {
+        return producerWaitNanos.sum();
+    }
+
+    @Override
+    public long getConsumerWaits() {
+        return consumerWaits.sum();
+    }
+
+    @Override
+    public long getConsumerWaitNanos() {
+        return consumerWaitNanos.sum();
+    }
+
+    @Override
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    @Override
+    public long getSupplyTimeouts() {
+        return supplyTimeouts.sum();
+    }
+
+    @Override
+    public long getConsumeTimeouts() {
+        return consumeTimeouts.sum();
+    }
+
+    @Override
+    public long getResizes() {
+        return resizes.sum();
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity.get();
+    }
+
+    @Override
+    public void reset() {
+        supplied.reset();
+        consumed.reset();
+        bytesSupplied.reset();
+        bytesConsumed.reset();
+        producerWaits.reset();
+        producerWaitNanos.reset();
+        consumerWaits.reset();
+        consumerWaitNanos.reset();
+        supplyTimeouts.reset();
+        consumeTimeouts.reset();
+        resizes.reset();
+        highWaterMark.set(0L);
+        capacity.set(0L);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server as buutti.buffer:type=SyncBuffer,name=name.
+     * @param name name of the buffer(s).
+     * @return ObjectName registered name, for {@link #unregister(ObjectName)}.
+     * @throws JMException on registration error, or when the name is already registered.
+     */
+    public ObjectName register(final String name) throws JMException {
+        ObjectName objectName = new ObjectName("buutti.buffer:type=SyncBuffer,name=" + ObjectName.quote(name));
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (InstanceAlreadyExistsException e) {
+            throw new JMException("Metrics already registered as " + objectName);
+        }
+        return objectName;
+    }
+
+    /**
+     * Unregisters metrics registered with {@link #register(String)}, if still registered.
+     * @param objectName registered name.
+     */
+    public static void unregister(final ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            // Not registered anymore.
+        }
+    }
+
+    /**
+     * @return String a single stats line.
+     */
+    @Override
+    public String toString() {
+        return "supplied=" + getSupplied() + " consumed=" + getConsumed()
+                + " bytes-supplied=" + getBytesSupplied() + " bytes-consumed=" + getBytesConsumed()
+                + " high-water=" + getHighWaterMark()
+                + " producer-waits=" + getProducerWaits() + " (" + TimeUnit.NANOSECONDS.toMillis(getProducerWaitNanos()) + " ms)"
+                + " consumer-waits=" + getConsumerWaits() + " (" + TimeUnit.NANOSECONDS.toMillis(getConsumerWaitNanos()) + " ms)"
+                + " timeouts=" + getSupplyTimeouts() + "/" + getConsumeTimeouts()
+                + (getResizes() > 0 ? " resizes=" + getResizes() + " capacity=" + getCapacity() : "");
+    }
+}
@@ -0,0 +1,233 @@
+package buutti.buffer.util;
+
+import buutti.buffer.interfaces.ThrottleMXBean;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Token bucket limiting the bytes and writes per second of every writer sharing it, e.g. all copies of a batch.
+ * Both buckets are kept as a theoretical arrival time (GCRA): a write reserves its cost in nanos with a single
+ * CAS and the writer parks until its reservation falls within the burst allowance, so waiting writers don't
+ * contend and the rate holds with nanosecond precision. Writes are only metered, never split; a write larger
+ * than the burst waits for its whole cost. Without limits a write costs two counter updates, so an unlimited
+ * throttle doubles as a meter. A throttle with a parent passes every write on to it, e.g. a single copy with its
+ * own counters within the limits of its batch.
+ */
+public class Throttle implements ThrottleMXBean {
+    /**
+     * Writes up to this many nanos worth of the limits pass without waiting after an idle period.
+     */
+    public static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private volatile long maxRate, maxIops;
+
+    /**
+     * Meters every write as well, null = none.
+     */
+    private final Throttle parent;
+
+    /**
+     * Theoretical arrival times of the byte and write buckets, in System.nanoTime.
+     */
+    private final AtomicLong bytesTat = new AtomicLong(System.nanoTime()), writesTat = new AtomicLong(System.nanoTime());
+
+    private final LongAdder bytes = new LongAdder(), writes = new LongAdder(), waits = new LongAdder(),
+            waitNanos = new LongAdder();
+
+    /**
+     * @param maxRate bytes per second at most, 0 = unlimited.
+     * @param maxIops writes per second at most, 0 = unlimited.
+     */
+    public Throttle(final long maxRate, final long maxIops) {
+        this(maxRate, maxIops, null);
+    }
+
+    /**
+     * @param maxRate bytes per second at most, 0 = unlimited.
+     * @param maxIops writes per second at most, 0 = unlimited.
+     * @param parent throttle every write must pass as well, null = none.
+     */
+    public Throttle(final long maxRate, final long maxIops, final Throttle parent) {
+        this.parent = parent;
+        this.maxRate = nonNegative(maxRate, "Max rate can't be negative.");
+        this.maxIops = nonNegative(maxIops, "Max IOPS can't be negative.");
+    }
+
+    /**
+     * @param limit limit to check.
+     * @param message message of the exception.
+     * @return long the limit.
+     * @throws IllegalArgumentException when the limit is negative.
+     */
+    private static long nonNegative(final long limit, final String message) {
+        if (limit < 0L) {
+            throw new IllegalArgumentException(message);
+        }
+        return limit;
+    }
+
+    /**
+     * Meters a write, waiting as long as the limits of this throttle and then of its parent require before it may
+     * be issued.
+     * @param n bytes about to be written.
+     * @throws InterruptedException on thread interruption.
+     */
+    public void acquire(final long n) throws InterruptedException {
+        bytes.add(n);
+        writes.increment();
+        long rate = maxRate, iops = maxIops;
+        if (rate == 0L && iops == 0L) {
+            if (parent != null) {
+                parent.acquire(n);
+            }
+            return;
+        }
+        long now = System.nanoTime();
+        long until = now;
+        if (rate > 0L) {
+            until = later(until, reserve(bytesTat, cost(n, rate), now));
+        }
+        if (iops > 0L) {
+            until = later(until, reserve(writesTat, cost(1L, iops), now));
+        }
+        if (until - now > 0L) {
+            waits.increment();
+            parkUntil(until);
+            waitNanos.add(System.nanoTime() - now);
+        }
+        if (parent != null) {
+            parent.acquire(n);
+        }
+    }
+
+    /**
+     * @param amount bytes or writes.
+     * @param perSecond limit.
+     * @return long nanos the amount takes at the limit.
+     */
+    private static long cost(final long amount, final long perSecond) {
+        return (long) (amount * 1e9d / perSecond);
+    }
+
+    /**
+     * Reserves the cost in a bucket.
+     * @param tat theoretical arrival time of the bucket.
+     * @param cost nanos to reserve.
+     * @param now current nanoTime.
+     * @return long nanoTime from which the write may be issued.
+     */
+    private static long reserve(final AtomicLong tat, final long cost, final long now) {
+        while (true) {
+            long current = tat.get();
+            // Idle time is not banked beyond the burst allowance.
+            long next = later(current, now) + cost;
+            if (tat.compareAndSet(current, next)) {
+                return next - BURST_NANOS;
+            }
+        }
+    }
+
+    private static long later(final long a, final long b) {
+        return a - b > 0L ? a : b;
+    }
+
+    private static void parkUntil(final long deadline) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0L) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    @Override
+    public long getMaxRate() {
+        return maxRate;
+    }
+
+    @Override
+    public void setMaxRate(final long maxRate) {
+        nonNegative(maxRate, "Max rate can't be negative.");
+        // Reservations made at the old rate no longer apply.
+        bytesTat.set(System.nanoTime());
+        this.maxRate = maxRate;
+    }
+
+    @Override
+    public long getMaxIops() {
+        return maxIops;
+    }
+
+    @Override
+    public void setMaxIops(final long maxIops) {
+        nonNegative(maxIops, "Max IOPS can't be negative.");
+        writesTat.set(System.nanoTime());
+        this.maxIops = maxIops;
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    @Override
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    @Override
+    public long getWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    /**
+     * Registers the throttle with the platform MBean server as buutti.buffer:type=Throttle,name="name".
+     * @param name name of the throttle.
+     * @return ObjectName registered name, for {@link #unregister(ObjectName)}.
+     * @throws JMException on registration error, or when the name is already registered.
+     */
+    public ObjectName register(final String name) throws JMException {
+        ObjectName objectName = new ObjectName("buutti.buffer:type=Throttle,name=" + ObjectName.quote(name));
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (InstanceAlreadyExistsException e) {
+            throw new JMException("Throttle already registered as " + objectName);
+        }
+        return objectName;
+    }
+
+    /**
+     * Unregisters a throttle registered with {@link #register(String)}, if still registered.
+     * @param objectName registered name.
+     */
+    public static void unregister(final ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            // Not registered anymore.
+        }
+    }
+
+    /**
+     * @return String a single stats line.
+     */
+    @Override
+    public String toString() {
+        return "max-rate=" + getMaxRate() + " max-iops=" + getMaxIops() + " bytes=" + getBytes()
+                + " writes=" + getWrites()
+                + " waits=" + getWaits() + " (" + TimeUnit.NANOSECONDS.toMillis(getWaitNanos()) + " ms)";
+    }
+}
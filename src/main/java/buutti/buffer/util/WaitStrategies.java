@@ -0,0 +1,170 @@
+package buutti.buffer.util;
+
+import buutti.buffer.interfaces.WaitStrategy;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Factory for the available wait strategies.
+ * Busy spin has the lowest latency but burns a core per waiting thread, blocking is the cheapest on CPU.
+ */
+public final class WaitStrategies {
+    /**
+     * Names of the strategies, as accepted by {@link #byName(String)}.
+     */
+    public static final String BUSY_SPIN = "spin", YIELD = "yield", PARK = "park", BLOCKING = "blocking";
+
+    private WaitStrategies() {
+    }
+
+    /**
+     * Creates a wait strategy by name.
+     * @param name one of spin, yield, park or blocking.
+     * @return WaitStrategy
+     * @throws IllegalArgumentException on an unknown name.
+     */
+    public static WaitStrategy byName(final String name) {
+        return switch (name) {
+            case BUSY_SPIN -> busySpin();
+            case YIELD -> yielding();
+            case PARK -> parking();
+            case BLOCKING -> blocking();
+            default -> throw new IllegalArgumentException("Unknown wait strategy: " + name);
+        };
+    }
+
+    /**
+     * @return WaitStrategy that spins on the condition.
+     */
+    public static WaitStrategy busySpin() {
+        return new PollingWaitStrategy() {
+            @Override
+            void idle() {
+                Thread.onSpinWait();
+            }
+        };
+    }
+
+    /**
+     * @return WaitStrategy that yields the thread between condition checks.
+     */
+    public static WaitStrategy yielding() {
+        return new PollingWaitStrategy() {
+            @Override
+            void idle() {
+                Thread.yield();
+            }
+        };
+    }
+
+    /**
+     * @return WaitStrategy that parks the thread for a short while between condition checks.
+     */
+    public static WaitStrategy parking() {
+        return new PollingWaitStrategy() {
+            @Override
+            void idle() {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        };
+    }
+
+    /**
+     * @return WaitStrategy that blocks on a lock condition until signalled.
+     */
+    public static WaitStrategy blocking() {
+        return new BlockingWaitStrategy();
+    }
+
+    /**
+     * Polls the condition, idling in between. Signalling is a no-op.
+     */
+    private abstract static class PollingWaitStrategy implements WaitStrategy {
+        static final long PARK_NANOS = 10_000L;
+
+        abstract void idle();
+
+        @Override
+        public boolean await(final BooleanSupplier condition, final long timeoutNanos) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (!condition.getAsBoolean()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (timeoutNanos >= 0L && System.nanoTime() - deadline >= 0L) {
+                    return false;
+                }
+                idle();
+            }
+            return true;
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    /**
+     * Waits on a lock condition. Signallers only take the lock when somebody is waiting.
+     */
+    private static final class BlockingWaitStrategy implements WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition progress = lock.newCondition();
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        @Override
+        public boolean await(final BooleanSupplier condition, final long timeoutNanos) throws InterruptedException {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            lock.lockInterruptibly();
+            // Counted under the lock, so an interrupted lock call doesn't leave a waiter behind.
+            waiters.incrementAndGet();
+            try {
+                long remaining = timeoutNanos;
+                while (!condition.getAsBoolean()) {
+                    if (timeoutNanos < 0L) {
+                        progress.await();
+                    } else if (remaining <= 0L) {
+                        return false;
+                    } else {
+                        remaining = progress.awaitNanos(remaining);
+                    }
+                }
+                return true;
+            } finally {
+                waiters.decrementAndGet();
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void signalAll() {
+            // Order the caller's sequence publish before the waiter check, else a waiter may be missed.
+            VarHandle.fullFence();
+            if (waiters.get() > 0) {
+                lock.lock();
+                try {
+                    progress.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a millisecond buffer timeout to the nanosecond timeout of {@link WaitStrategy#await}.
+     * @param ioTimeout timeout in millis, 0 or below = no timeout.
+     * @return long timeout in nanos.
+     */
+    static long toNanos(final long ioTimeout) {
+        return ioTimeout <= 0L ? -1L : TimeUnit.MILLISECONDS.toNanos(ioTimeout);
+    }
+}
@@ -0,0 +1,122 @@
+package buutti.buffer.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * Streaming XXH64 with seed 0, as a {@link Checksum}. Input is processed in 32 byte stripes over four
+ * accumulators; a partial stripe is kept until the next update or {@link #getValue()}.
+ */
+public final class XxHash64 implements Checksum {
+    private static final long P1 = 0x9E3779B185EBCA87L, P2 = 0xC2B2AE3D27D4EB4FL, P3 = 0x165667B19E3779F9L,
+            P4 = 0x85EBCA77C2B2AE63L, P5 = 0x27D4EB2F165667C5L;
+
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private long v1, v2, v3, v4, total;
+
+    /**
+     * Bytes of the current partial stripe.
+     */
+    private final byte[] stripe = new byte[32];
+
+    private int stripeLength;
+
+    public XxHash64() {
+        reset();
+    }
+
+    @Override
+    public void update(final int b) {
+        update(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void update(final byte[] b, int off, int len) {
+        total += len;
+        if (stripeLength > 0) {
+            int n = Math.min(len, 32 - stripeLength);
+            System.arraycopy(b, off, stripe, stripeLength, n);
+            stripeLength += n;
+            off += n;
+            len -= n;
+            if (stripeLength < 32) {
+                return;
+            }
+            consumeStripe(stripe, 0);
+            stripeLength = 0;
+        }
+        for (; len >= 32; off += 32, len -= 32) {
+            consumeStripe(b, off);
+        }
+        System.arraycopy(b, off, stripe, 0, len);
+        stripeLength = len;
+    }
+
+    private void consumeStripe(final byte[] b, final int off) {
+        v1 = round(v1, (long) LONG.get(b, off));
+        v2 = round(v2, (long) LONG.get(b, off + 8));
+        v3 = round(v3, (long) LONG.get(b, off + 16));
+        v4 = round(v4, (long) LONG.get(b, off + 24));
+    }
+
+    @Override
+    public long getValue() {
+        long h;
+        if (total >= 32) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = P5;
+        }
+        h += total;
+        int i = 0;
+        for (; i + 8 <= stripeLength; i += 8) {
+            h ^= round(0L, (long) LONG.get(stripe, i));
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+        }
+        if (i + 4 <= stripeLength) {
+            h ^= ((int) INT.get(stripe, i) & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            i += 4;
+        }
+        for (; i < stripeLength; i++) {
+            h ^= (stripe[i] & 0xFFL) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+        }
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    @Override
+    public void reset() {
+        v1 = P1 + P2;
+        v2 = P2;
+        v3 = 0L;
+        v4 = -P1;
+        total = 0L;
+        stripeLength = 0;
+    }
+
+    private static long round(long acc, final long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    private static long merge(long acc, final long v) {
+        acc ^= round(0L, v);
+        return acc * P1 + P4;
+    }
+}
@@ -0,0 +1,162 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.interfaces.CopyEngine;
+import buutti.buffer.util.ByteSyncBufferImpl;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+public class BatchCopierTest {
+    /**
+     * Test mirroring a directory tree with a tight memory cap, and that a failing task is reported
+     * without stopping the others.
+     * @throws IOException on file error.
+     * @throws InterruptedException on thread interruption.
+     */
+    @Test
+    public void testBatchCopyTree() throws IOException, InterruptedException {
+        Path root = Files.createTempDirectory("batch");
+        try {
+            Path src = root.resolve("src");
+            Files.createDirectories(src.resolve("a/b"));
+            List<String> names = List.of("x", "a/y", "a/b/z");
+            for (String name : names) {
+                Files.writeString(src.resolve(name), "content of " + name);
+            }
+
+            List<BatchCopier.CopyTask> tasks = BatchCopier.fromInputs(List.of(src), root.resolve("dst"));
+            assertEquals(3, tasks.size());
+            tasks = new ArrayList<>(tasks);
+            BatchCopier.CopyTask missing = new BatchCopier.CopyTask(root.resolve("missing"), root.resolve("dst/m"));
+            tasks.add(missing);
+
+            CopyEngine engine = new TransferCopyEngine((in, out) -> {
+                throw new IOException("not a regular file: " + in);
+            });
+            Map<BatchCopier.CopyTask, Exception> failures = new BatchCopier(engine, 2, 1024, 4096).copyAll(tasks);
+
+            assertEquals(List.of(missing), List.copyOf(failures.keySet()));
+            for (String name : names) {
+                assertEquals("content of " + name, Files.readString(root.resolve("dst").resolve(name)));
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(root)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Test a batch of a thousand concurrent buffered copies on virtual threads, all blocked on tiny buffers
+     * at once.
+     * @throws IOException on file error.
+     * @throws InterruptedException on thread interruption.
+     */
+    @Test
+    public void testBatchCopyVirtualThreads() throws IOException, InterruptedException {
+        Path root = Files.createTempDirectory("batch-virtual");
+        try {
+            Path src = root.resolve("src");
+            Files.createDirectories(src);
+            for (int i = 0; i < 1000; i++) {
+                Files.writeString(src.resolve("f" + i), "content of " + i);
+            }
+            List<BatchCopier.CopyTask> tasks = BatchCopier.fromInputs(List.of(src), root.resolve("dst"));
+            AtomicInteger platformCopies = new AtomicInteger();
+            CopyEngine engine = new BufferedCopyEngine(() -> {
+                if (!Thread.currentThread().isVirtual()) {
+                    platformCopies.incrementAndGet();
+                }
+                return new ByteSyncBufferImpl(2, -1L);
+            });
+            BatchCopier copier = new BatchCopier(new VirtualThreadCopyEngine(engine), 1000, -1L, 0L);
+            copier.setVirtualThreads(true);
+
+            assertTrue(copier.copyAll(tasks).isEmpty());
+            assertEquals(0, platformCopies.get());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("content of " + i, Files.readString(root.resolve("dst").resolve("f" + i)));
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(root)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Test manifest parsing, comments and blank lines are skipped.
+     * @throws IOException on file error.
+     */
+    @Test
+    public void testManifest() throws IOException {
+        Path manifest = Files.createTempFile("manifest", ".tsv");
+        try {
+            Files.writeString(manifest, "# comment\nin 1\tout 1\n\nin2\tdir/out2\n");
+            assertEquals(List.of(new BatchCopier.CopyTask(Path.of("in 1"), Path.of("out 1")),
+                            new BatchCopier.CopyTask(Path.of("in2"), Path.of("dir/out2"))),
+                    BatchCopier.fromManifest(manifest));
+
+            Files.writeString(manifest, "only-input\n");
+            boolean thrown = false;
+            try {
+                BatchCopier.fromManifest(manifest);
+            } catch (IOException e) {
+                thrown = true;
+            }
+            assertTrue(thrown);
+
+            Files.writeString(manifest, "a\tout\nb\t./out\n");
+            thrown = false;
+            try {
+                BatchCopier.fromManifest(manifest);
+            } catch (IOException e) {
+                thrown = true;
+            }
+            assertTrue(thrown);
+        } finally {
+            Files.deleteIfExists(manifest);
+        }
+    }
+
+    /**
+     * Test that inputs of the same name, which would be copied concurrently to the same output, fail the listing.
+     * @throws IOException on file error.
+     */
+    @Test
+    public void testDuplicateOutputsRejected() throws IOException {
+        Path root = Files.createTempDirectory("batch-duplicate");
+        try {
+            Files.createDirectories(root.resolve("a/x"));
+            Files.createDirectories(root.resolve("b/x"));
+            Files.writeString(root.resolve("a/f"), "a");
+            Files.writeString(root.resolve("b/f"), "b");
+            Files.writeString(root.resolve("a/x/g"), "a");
+            Files.writeString(root.resolve("b/x/g"), "b");
+            for (List<Path> inputs : List.of(List.of(root.resolve("a/f"), root.resolve("b/f")),
+                    List.of(root.resolve("a/x"), root.resolve("b/x")))) {
+                try {
+                    BatchCopier.fromInputs(inputs, root.resolve("dst"));
+                    fail("Duplicate outputs of " + inputs + " accepted");
+                } catch (IOException e) {
+                    // Expected.
+                }
+            }
+            assertEquals(2, BatchCopier.fromInputs(List.of(root.resolve("a/f"), root.resolve("b/x")),
+                    root.resolve("dst")).size());
+        } finally {
+            try (Stream<Path> files = Files.walk(root)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,491 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.exceptions.SyncBufferTimeoutException;
+import buutti.buffer.interfaces.CopyEngine;
+import buutti.buffer.util.ByteSyncBufferImpl;
+import buutti.buffer.util.SpscSyncBuffer;
+import buutti.buffer.util.SyncBufferImpl;
+import buutti.buffer.util.TempFiles;
+import buutti.buffer.util.Throttle;
+import buutti.buffer.util.WaitStrategies;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+public class CopyEngineTest {
+    /**
+     * Test that every engine produces an identical copy, including windows that don't divide the file size,
+     * and that an existing longer output is truncated.
+     * @throws Exception on file error.
+     */
+    @Test
+    public void testEnginesCopyIdentically() throws Exception {
+        byte[] data = TempFiles.randomBytes(1_000_003, 1);
+        TempFiles.withTempFiles(data, (in, out) -> {
+            CopyEngine buffered = new BufferedCopyEngine(() -> new ByteSyncBufferImpl(100, -1L));
+            for (CopyEngine engine : List.of(buffered, new TransferCopyEngine(buffered),
+                    new MappedCopyEngine(65_536, buffered),
+                    new PooledCopyEngine(3, 4096, () -> new SyncBufferImpl<>(3, -1L)),
+                    new PooledCopyEngine(2, 65_536, () -> new SpscSyncBuffer<>(2, -1L, WaitStrategies.yielding())),
+                    new ParallelCopyEngine(4, 100_000, buffered),
+                    new AsyncCopyEngine(3, 4096, buffered))) {
+                Files.write(out, new byte[data.length + 10]);
+                engine.copy(in, out);
+                assertArrayEquals(engine.getClass().getSimpleName(), data, Files.readAllBytes(out));
+            }
+        });
+    }
+
+    /**
+     * Test streaming between non-file channels with every flush policy, with a buffer smaller than a block.
+     * @throws IOException on channel error.
+     * @throws InterruptedException on thread interruption.
+     */
+    @Test
+    public void testStreamCopyFlushPolicies() throws IOException, InterruptedException {
+        byte[] data = new byte[300_001];
+        new Random(2).nextBytes(data);
+        for (FlushPolicy flushPolicy : FlushPolicy.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new BufferedCopyEngine(() -> new ByteSyncBufferImpl(1000, -1L), flushPolicy)
+                    .copy(Channels.newChannel(new ByteArrayInputStream(data)), Channels.newChannel(out));
+            assertArrayEquals(flushPolicy.name(), data, out.toByteArray());
+        }
+    }
+
+    /**
+     * Test that a buffer timeout fails the copy with an exception instead of exiting, and interrupts the writer
+     * stuck on a stalled output.
+     * @throws IOException on channel error.
+     * @throws InterruptedException on thread interruption.
+     */
+    @Test
+    public void testBufferTimeoutThrows() throws IOException, InterruptedException {
+        WritableByteChannel stalled = new WritableByteChannel() {
+            private volatile boolean open = true;
+
+            @Override
+            public int write(final ByteBuffer src) throws IOException {
+                try {
+                    Thread.sleep(Long.MAX_VALUE);
+                } catch (InterruptedException e) {
+                    throw new ClosedByInterruptException();
+                }
+                return 0;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return open;
+            }
+
+            @Override
+            public void close() {
+                open = false;
+            }
+        };
+        try {
+            new BufferedCopyEngine(() -> new ByteSyncBufferImpl(1000, 100L), FlushPolicy.ALWAYS)
+                    .copy(Channels.newChannel(new ByteArrayInputStream(new byte[1 << 20])), stalled);
+            fail("Copy to a stalled output completed");
+        } catch (SyncBufferTimeoutException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Test that an error thrown by a stage interrupts the stage blocked on the buffer without a timeout, and is
+     * rethrown from the calling thread.
+     * @throws IOException on channel error.
+     * @throws InterruptedException on thread interruption.
+     */
+    @Test
+    public void testStageErrorInterruptsStages() throws IOException, InterruptedException {
+        ByteSyncBufferImpl sb = new ByteSyncBufferImpl(10, -1L);
+        try {
+            StageThreads.runAll(() -> sb.consumeByte(), () -> {
+                throw new OutOfMemoryError("Direct buffer memory");
+            });
+            fail("Stage error swallowed");
+        } catch (OutOfMemoryError e) {
+            assertEquals("Direct buffer memory", e.getMessage());
+        }
+    }
+
+    /**
+     * Test fan-in concatenates inputs in order and fan-out writes identical copies, with more chunks than the pool.
+     * @throws IOException on file error.
+     * @throws InterruptedException on thread interruption.
+     */
+    @Test
+    public void testFanCopier() throws IOException, InterruptedException {
+        Random random = new Random(5);
+        byte[][] parts = {new byte[100_001], new byte[0], new byte[33_333]};
+        ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+        List<Path> inputs = new ArrayList<>();
+        List<Path> outputs = new ArrayList<>();
+        try {
+            for (byte[] part : parts) {
+                random.nextBytes(part);
+                concatenated.write(part);
+                Path in = Files.createTempFile("fan-in", ".bin");
+                Files.write(in, part);
+                inputs.add(in);
+            }
+            for (int i = 0; i < 3; i++) {
+                outputs.add(Files.createTempFile("fan-out", ".bin"));
+            }
+            FanCopier copier = new FanCopier(3, 4096, 2);
+            Files.write(outputs.get(0), new byte[200_000]);
+            copier.concat(inputs, outputs.get(0));
+            assertArrayEquals(concatenated.toByteArray(), Files.readAllBytes(outputs.get(0)));
+
+            copier.tee(inputs.get(0), outputs);
+            for (Path out : outputs) {
+                assertArrayEquals(parts[0], Files.readAllBytes(out));
+            }
+        } finally {
+            for (Path p : inputs) {
+                Files.deleteIfExists(p);
+            }
+            for (Path p : outputs) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /**
+     * Test that sparse copies skip exactly the aligned zero blocks, including blocks split over chunks, and
+     * that the copy is identical.
+     * @throws Exception on file error.
+     */
+    @Test
+    public void testSparseCopy() throws Exception {
+        int block = SparseWriter.BLOCK_SIZE;
+        byte[] data = new byte[100 * block + 123];
+        Random random = new Random(10);
+        // Data in blocks 0-9 and 50-59, a stray byte in block 70, zeros elsewhere up to the end.
+        for (int i = 0; i < 10 * block; i++) {
+            data[i] = (byte) (random.nextInt(255) + 1);
+            data[50 * block + i] = (byte) (random.nextInt(255) + 1);
+        }
+        data[70 * block + 17] = 1;
+        TempFiles.withTempFiles(data, (in, out) -> {
+            try (FileChannel dst = FileChannel.open(out, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                SparseWriter writer = new SparseWriter(dst, null);
+                // Unaligned chunks, so zero blocks straddle chunk boundaries.
+                for (int off = 0; off < data.length; off += 10_000) {
+                    byte[] chunk = Arrays.copyOfRange(data, off, Math.min(data.length, off + 10_000));
+                    writer.write(chunk, chunk.length);
+                }
+                writer.finish();
+                assertEquals(79L * block, writer.getSkipped());
+            }
+            assertArrayEquals(data, Files.readAllBytes(out));
+
+            BufferedCopyEngine engine = new BufferedCopyEngine(() -> new ByteSyncBufferImpl(3 * block, -1L));
+            engine.setSparse(true);
+            engine.copy(in, out);
+            assertArrayEquals(data, Files.readAllBytes(out));
+
+            // Ending in skipped blocks, the output is still extended to the full length.
+            byte[] whole = Arrays.copyOf(data, 80 * block);
+            Files.write(in, whole);
+            engine.copy(in, out);
+            assertArrayEquals(whole, Files.readAllBytes(out));
+        });
+    }
+
+    /**
+     * Test that write-behind batches are written in order, that an aligned last batch is padded and truncated
+     * back, that the INTERVAL policy forces at every interval and once at the end, and that the engine copies
+     * correctly with every sync policy, with and without direct IO.
+     * @throws Exception on file error.
+     */
+    @Test
+    public void testDurableCopy() throws Exception {
+        byte[] data = TempFiles.randomBytes((1 << 20) + 123, 11);
+        TempFiles.withTempFiles(data, (in, out) -> {
+            try (FileChannel dst = FileChannel.open(out, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                DurableWriter writer = new DurableWriter(dst, 65536, 4096, SyncPolicy.INTERVAL, 256 << 10, null);
+                StageThreads.runAll(() -> {
+                    // Unaligned chunks, so batches fill across chunk boundaries.
+                    for (int off = 0; off < data.length; off += 10_000) {
+                        byte[] chunk = Arrays.copyOfRange(data, off, Math.min(data.length, off + 10_000));
+                        writer.write(chunk, chunk.length);
+                    }
+                    writer.finish();
+                }, writer::flush);
+                // After every 4 batches of the 16 full ones, and at the end for the partial one.
+                assertEquals(5L, writer.getForces());
+            }
+            assertArrayEquals(data, Files.readAllBytes(out));
+
+            for (SyncPolicy policy : SyncPolicy.values()) {
+                for (boolean direct : new boolean[] {false, true}) {
+                    BufferedCopyEngine engine = new BufferedCopyEngine(() -> new ByteSyncBufferImpl(65536, -1L));
+                    engine.setSyncPolicy(policy, 300_000L);
+                    engine.setDirect(direct);
+                    engine.setWriteBatch(policy == SyncPolicy.NONE ? 100_000 : 0);
+                    Files.write(out, new byte[3 << 20]);
+                    engine.copy(in, out);
+                    assertArrayEquals(policy + (direct ? " direct" : ""), data, Files.readAllBytes(out));
+                }
+            }
+        });
+    }
+
+    /**
+     * Test transcoding with line ending conversion over buffers small enough to split multi-byte characters,
+     * surrogate pairs and CRLFs between chunks, and that malformed input and unmappable characters fail.
+     * @throws Exception on stream error.
+     */
+    @Test
+    public void testTextCopy() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(11);
+        String[] pieces = {"abc", "\r\n", "\n", "\r", "\u00e4\u00f6", "\u20ac", "\ud83d\ude00", " "};
+        while (sb.length() < 300_000) {
+            sb.append(pieces[random.nextInt(pieces.length)]);
+        }
+        String text = sb.toString();
+        TextCopyEngine toUtf16Lf = new TextCopyEngine(() -> new ByteSyncBufferImpl(1001, -1L),
+                StandardCharsets.UTF_8, StandardCharsets.UTF_16, LineEnding.LF);
+        byte[] utf16 = transcode(toUtf16Lf, text.getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(text.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_16), utf16);
+
+        TextCopyEngine toUtf8Crlf = new TextCopyEngine(() -> new ByteSyncBufferImpl(1001, -1L),
+                StandardCharsets.UTF_16, StandardCharsets.UTF_8, LineEnding.CRLF);
+        String crlf = text.replace("\r\n", "\n").replaceAll("(?<!\r)\n", "\r\n");
+        assertEquals(crlf, new String(transcode(toUtf8Crlf, utf16), StandardCharsets.UTF_8));
+
+        TextCopyEngine keep = new TextCopyEngine(() -> new ByteSyncBufferImpl(1001, -1L),
+                StandardCharsets.UTF_8, StandardCharsets.UTF_8, LineEnding.KEEP);
+        assertEquals(text, new String(transcode(keep, text.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8));
+
+        TextCopyEngine toLatin1 = new TextCopyEngine(() -> new ByteSyncBufferImpl(1001, -1L),
+                StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, LineEnding.KEEP);
+        assertEquals("\u00e4 ok", new String(transcode(toLatin1, "\u00e4 ok".getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.ISO_8859_1));
+        for (byte[] invalid : new byte[][] {"price \u20ac".getBytes(StandardCharsets.UTF_8), {'a', (byte) 0xff, 'b'}}) {
+            try {
+                transcode(toLatin1, invalid);
+                fail("Invalid text copied");
+            } catch (IOException e) {
+                // Expected.
+            }
+        }
+    }
+
+    private static byte[] transcode(final TextCopyEngine engine, final byte[] input) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        engine.copy(Channels.newChannel(new ByteArrayInputStream(input)), Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    /**
+     * Test that compression writes streams the JDK reads back, also for an empty input and an input of whole
+     * blocks, and that decompression restores the input, also from concatenated gzip members.
+     * @throws Exception on stream error.
+     */
+    @Test
+    public void testCompressionCopy() throws Exception {
+        Random random = new Random(8);
+        for (int size : new int[] {0, 2 * CompressionCopyEngine.BLOCK_SIZE, 1_000_003}) {
+            // Compressible, with back-references across block boundaries.
+            byte[] data = new byte[size];
+            byte[] word = new byte[1000];
+            random.nextBytes(word);
+            for (int i = 0; i < size; i++) {
+                data[i] = random.nextInt(8) == 0 ? (byte) random.nextInt() : word[i % word.length];
+            }
+            for (Compression compression : Compression.values()) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                CompressionCopyEngine.compressing(compression, 3).copy(
+                        Channels.newChannel(new ByteArrayInputStream(data)), Channels.newChannel(compressed));
+                byte[] bytes = compressed.toByteArray();
+                assertTrue(size == 0 || bytes.length < size / 2);
+                InputStream is = compression == Compression.GZIP
+                        ? new GZIPInputStream(new ByteArrayInputStream(bytes))
+                        : new InflaterInputStream(new ByteArrayInputStream(bytes));
+                assertArrayEquals(data, is.readAllBytes());
+
+                ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+                CompressionCopyEngine.decompressing().copy(
+                        Channels.newChannel(new ByteArrayInputStream(bytes)), Channels.newChannel(decompressed));
+                assertArrayEquals(data, decompressed.toByteArray());
+            }
+        }
+
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        for (String s : new String[] {"first ", "second"}) {
+            // Closing a ByteArrayOutputStream has no effect, the next member is appended.
+            try (GZIPOutputStream os = new GZIPOutputStream(members)) {
+                os.write(s.getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        CompressionCopyEngine.decompressing().copy(Channels.newChannel(new ByteArrayInputStream(members.toByteArray())),
+                Channels.newChannel(decompressed));
+        assertEquals("first second", decompressed.toString(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Test that the inline checksum matches a checksum of the input, is written to the sidecar file, and that
+     * verification catches a differing output.
+     * @throws Exception on file error.
+     */
+    @Test
+    public void testChecksumCopy() throws Exception {
+        byte[] data = TempFiles.randomBytes(300_007, 6);
+        TempFiles.withTempFiles(data, (in, out) -> {
+            Path sidecar = ChecksumCopyEngine.sidecar(out, ChecksumAlgorithm.SHA256);
+            BufferedCopyEngine buffered = new BufferedCopyEngine(() -> new ByteSyncBufferImpl(1000, -1L));
+            for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+                new ChecksumCopyEngine(buffered, algorithm, true).copy(in, out);
+                assertArrayEquals(data, Files.readAllBytes(out));
+                ChecksumAlgorithm.Digest digest = algorithm.newDigest();
+                digest.update(data, 0, data.length);
+                String expected = HexFormat.of().formatHex(digest.finish()) + "  " + out.getFileName() + "\n";
+                Path algorithmSidecar = ChecksumCopyEngine.sidecar(out, algorithm);
+                assertEquals(expected, Files.readString(algorithmSidecar));
+                if (algorithm != ChecksumAlgorithm.SHA256) {
+                    Files.delete(algorithmSidecar);
+                }
+            }
+            byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(data);
+            assertTrue(Files.readString(sidecar).startsWith(HexFormat.of().formatHex(sha256)));
+
+            data[0]++;
+            Files.write(out, data);
+            boolean thrown = false;
+            try {
+                ChecksumCopyEngine.verify(out, ChecksumAlgorithm.SHA256, sha256);
+            } catch (IOException e) {
+                thrown = true;
+            }
+            assertTrue(thrown);
+        });
+    }
+
+    /**
+     * Test resuming an interrupted copy; intervals matching the checkpoint are kept, a corrupted interval and
+     * everything after it is copied again, a stale checkpoint of another input is ignored.
+     * @throws Exception on file error.
+     */
+    @Test
+    public void testResumableCopy() throws Exception {
+        int interval = 10_000;
+        byte[] data = TempFiles.randomBytes(45_555, 7);
+        TempFiles.withTempFiles(data, (in, out) -> {
+            Path checkpointFile = ResumableCopyEngine.checkpointFile(out);
+            List<Long> checksums = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                CRC32C crc = new CRC32C();
+                crc.update(data, i * interval, interval);
+                checksums.add(crc.getValue());
+            }
+            // Interrupted after 3 intervals, the third did not reach the disk intact.
+            byte[] partial = Arrays.copyOf(data, 3 * interval);
+            partial[2 * interval + 5]++;
+            Files.write(out, partial);
+            long modified = Files.getLastModifiedTime(in).toMillis();
+            new ResumableCopyEngine.Checkpoint(data.length, modified, interval, checksums).store(checkpointFile);
+            assertEquals(3 * interval, ResumableCopyEngine.Checkpoint.load(checkpointFile).written());
+
+            CopyEngine engine = new ResumableCopyEngine(interval, new BufferedCopyEngine(() -> new ByteSyncBufferImpl(100, -1L)));
+            engine.copy(in, out);
+            assertArrayEquals(data, Files.readAllBytes(out));
+            assertFalse(Files.exists(checkpointFile));
+
+            Files.write(out, new byte[data.length + 10]);
+            new ResumableCopyEngine.Checkpoint(data.length, modified + 1, interval, checksums).store(checkpointFile);
+            engine.copy(in, out);
+            assertArrayEquals(data, Files.readAllBytes(out));
+        });
+    }
+
+    /**
+     * Test that a delta copy rewrites only the changed blocks; a longer output is truncated, an unchanged output is
+     * not written, the index is reused and ignored once the output is modified behind its back, and the first block
+     * is checked again even when the modification time was restored.
+     * @throws Exception on file error.
+     */
+    @Test
+    public void testDeltaCopy() throws Exception {
+        int block = 65536;
+        byte[] data = TempFiles.randomBytes(48 * block + 5000, 25);
+        TempFiles.withTempFiles(data, (in, out) -> {
+            Path indexFile = DeltaCopyEngine.indexFile(out);
+            byte[] old = Arrays.copyOf(data, data.length + 10_000);
+            old[block + 17]++;
+            Files.write(out, old);
+            Throttle meter = new Throttle(0L, 0L);
+            DeltaCopyEngine engine = new DeltaCopyEngine(block, true,
+                    new BufferedCopyEngine(() -> new ByteSyncBufferImpl(100, -1L)));
+            engine.setThrottle(meter);
+            engine.copy(in, out);
+            assertArrayEquals(data, Files.readAllBytes(out));
+            assertEquals(block + 5000, meter.getBytes());
+            assertTrue(Files.exists(indexFile));
+
+            engine.copy(in, out);
+            assertEquals(block + 5000, meter.getBytes());
+
+            data[10 * block]++;
+            Files.write(in, data);
+            engine.copy(in, out);
+            assertArrayEquals(data, Files.readAllBytes(out));
+            assertEquals(2 * block + 5000, meter.getBytes());
+
+            try (FileChannel channel = FileChannel.open(out, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[] {(byte) (data[20 * block] + 1)}), 20L * block);
+            }
+            Files.setLastModifiedTime(out, FileTime.fromMillis(Files.getLastModifiedTime(out).toMillis() + 10_000));
+            engine.copy(in, out);
+            assertArrayEquals(data, Files.readAllBytes(out));
+            assertEquals(3 * block + 5000, meter.getBytes());
+
+            FileTime modified = Files.getLastModifiedTime(out);
+            try (FileChannel channel = FileChannel.open(out, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[] {(byte) (data[0] + 1)}), 0L);
+            }
+            Files.setLastModifiedTime(out, modified);
+            engine.copy(in, out);
+            assertArrayEquals(data, Files.readAllBytes(out));
+            assertEquals(4 * block + 5000, meter.getBytes());
+
+            Files.delete(out);
+            Files.delete(indexFile);
+            new DeltaCopyEngine(block, false, new BufferedCopyEngine(() -> new ByteSyncBufferImpl(100, -1L)))
+                    .copy(in, out);
+            assertArrayEquals(data, Files.readAllBytes(out));
+        });
+    }
+}
@@ -0,0 +1,162 @@
+package buutti.buffer.engine;
+
+import buutti.buffer.interfaces.SyncBuffer;
+import buutti.buffer.util.SyncBufferImpl;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+public class PipelineTest {
+    /**
+     * Test that elements flow through the stages in order over buffers of capacity 1, and that transforms and
+     * sinks finish once after the last element.
+     * @throws Exception on pipeline error.
+     */
+    @Test
+    public void testStagesInOrder() throws Exception {
+        List<String> result = new ArrayList<>();
+        Pipeline.<Integer>from(out -> {
+            for (int i = 0; i < 1000; i++) {
+                out.emit(i);
+            }
+        }).through(1, new Pipeline.Transform<Integer, Integer>() {
+            private int sum;
+
+            @Override
+            public void apply(final Integer element, final Pipeline.Output<Integer> out)
+                    throws IOException, InterruptedException {
+                sum += element;
+                if (element % 2 == 0) {
+                    out.emit(element);
+                }
+            }
+
+            @Override
+            public void finish(final Pipeline.Output<Integer> out) throws IOException, InterruptedException {
+                out.emit(-sum);
+            }
+        }).through(new SyncBufferImpl<>(1, -1L), (Integer element, Pipeline.Output<String> out) ->
+                out.emit(Integer.toString(element))
+        ).to(1, new Pipeline.Sink<>() {
+            @Override
+            public void accept(final String element) {
+                result.add(element);
+            }
+
+            @Override
+            public void finish() {
+                result.add("end");
+            }
+        }).run();
+
+        assertEquals(502, result.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals(Integer.toString(2 * i), result.get(i));
+        }
+        assertEquals("-499500", result.get(500));
+        assertEquals("end", result.get(501));
+    }
+
+    /**
+     * Test that a failing stage cancels the others, even a source that would produce forever, and that its
+     * exception is rethrown without the sink finishing.
+     * @throws Exception on pipeline error.
+     */
+    @Test(timeout = 10000)
+    public void testFailureCancelsStages() throws Exception {
+        boolean[] finished = {false};
+        Pipeline pipeline = Pipeline.<Integer>from(out -> {
+            for (int i = 0; ; i++) {
+                out.emit(i);
+            }
+        }).through(4, (Integer element, Pipeline.Output<Integer> out) -> {
+            if (element == 100) {
+                throw new IOException("broken");
+            }
+            out.emit(element);
+        }).to(4, new Pipeline.Sink<>() {
+            @Override
+            public void accept(final Integer element) {
+            }
+
+            @Override
+            public void finish() {
+                finished[0] = true;
+            }
+        });
+        try {
+            pipeline.run();
+            fail("Failure not propagated");
+        } catch (IOException e) {
+            assertEquals("broken", e.getMessage());
+        }
+        assertFalse(finished[0]);
+    }
+
+    /**
+     * Test that the stages of a pipeline run from a virtual thread are virtual, and platform threads otherwise.
+     * @throws Exception on pipeline error.
+     */
+    @Test
+    public void testStagesInheritVirtualThreads() throws Exception {
+        List<Boolean> virtual = Collections.synchronizedList(new ArrayList<>());
+        Pipeline pipeline = Pipeline.<Boolean>from(out -> out.emit(Thread.currentThread().isVirtual()))
+                .to(1, element -> {
+                    virtual.add(element);
+                    virtual.add(Thread.currentThread().isVirtual());
+                });
+        pipeline.run();
+        assertEquals(List.of(false, false), virtual);
+
+        virtual.clear();
+        Thread thread = Thread.ofVirtual().start(() -> {
+            try {
+                Pipeline.<Boolean>from(out -> out.emit(Thread.currentThread().isVirtual()))
+                        .to(1, element -> {
+                            virtual.add(element);
+                            virtual.add(Thread.currentThread().isVirtual());
+                        }).run();
+            } catch (IOException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.join();
+        assertEquals(List.of(true, true), virtual);
+    }
+
+    /**
+     * Test a copy composed of the channel source and sink with a pass-through checksum stage, recycling
+     * the chunks through a pool.
+     * @throws Exception on pipeline error.
+     */
+    @Test
+    public void testChannelCopy() throws Exception {
+        byte[] data = new byte[100_003];
+        new Random(9).nextBytes(data);
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        CRC32C crc = new CRC32C();
+        SyncBuffer<ByteBuffer> free = Pipeline.chunkPool(4, 4096);
+        Pipeline.from(Pipeline.channelSource(Channels.newChannel(new ByteArrayInputStream(data)), free))
+                .through(4, (ByteBuffer chunk, Pipeline.Output<ByteBuffer> out) -> {
+                    crc.update(chunk.duplicate());
+                    out.emit(chunk);
+                })
+                .to(4, Pipeline.channelSink(Channels.newChannel(copy), free))
+                .run();
+        assertArrayEquals(data, copy.toByteArray());
+        assertTrue("Chunks not returned to the pool", free.isFull());
+        CRC32C expected = new CRC32C();
+        expected.update(data);
+        assertEquals(expected.getValue(), crc.getValue());
+    }
+}
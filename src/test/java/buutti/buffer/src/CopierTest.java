@@ -0,0 +1,165 @@
+package buutti.buffer.src;
+
+import buutti.buffer.engine.LineEnding;
+import buutti.buffer.engine.SyncPolicy;
+import buutti.buffer.util.TempFiles;
+import buutti.buffer.util.Throttle;
+import buutti.buffer.util.WaitStrategies;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class CopierTest {
+    /**
+     * Test that a throttled copy reports increasing progress and completes with the byte count and timing.
+     * @throws Exception on file error.
+     */
+    @Test
+    public void testCopyWithProgress() throws Exception {
+        byte[] data = TempFiles.randomBytes(2 << 20, 12);
+        List<Long> progress = new CopyOnWriteArrayList<>();
+        TempFiles.withTempFiles(data, (in, out) -> {
+            try (Copier copier = Copier.builder().bufferSize(65536, 0).throttle(4L << 20, 0L).build()) {
+                CopyResult result = copier.submit(CopyJob.of(in, out)
+                                .withProgress((job, bytes, elapsed) -> progress.add(bytes), Duration.ofMillis(50)))
+                        .get(10, TimeUnit.SECONDS);
+                assertArrayEquals(data, Files.readAllBytes(out));
+                assertEquals(data.length, result.bytes());
+                // 2 MiB at 4 MiB/s, less the burst allowance.
+                assertTrue(result.elapsed().toMillis() >= 400);
+                assertTrue(result.bytesPerSecond() < 5 << 20);
+                assertTrue("progress " + progress, progress.size() >= 3);
+                for (int i = 1; i < progress.size(); i++) {
+                    assertTrue(progress.get(i) >= progress.get(i - 1));
+                }
+                assertTrue(progress.get(progress.size() - 1) <= data.length);
+                assertEquals(data.length, copier.getThrottle().getBytes());
+            }
+        });
+    }
+
+    /**
+     * Test that cancelling stops a running copy, that copies keep running concurrently and that failures
+     * complete the future instead of exiting.
+     * @throws Exception on file error.
+     */
+    @Test
+    public void testCancelAndFailure() throws Exception {
+        TempFiles.withTempFiles(new byte[16 << 20], (in, out) -> {
+            Copier copier = Copier.builder().mode(CopySettings.MODE_POOLED).bufferSize(4, 0).chunkSize(65536)
+                    .throttle(1L << 20, 0L).jobs(2).build();
+            try {
+                CompletableFuture<CopyResult> slow = copier.copy(in, out);
+                CompletableFuture<CopyResult> missing = copier.copy(in.resolveSibling("no-such-input"),
+                        out.resolveSibling("other.bin"));
+                try {
+                    missing.get(10, TimeUnit.SECONDS);
+                    fail("Copy of a missing input succeeded.");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause().toString(), e.getCause() instanceof NoSuchFileException);
+                }
+                Thread.sleep(200);
+                assertTrue(slow.cancel(true));
+                try {
+                    slow.join();
+                    fail("Cancelled copy completed.");
+                } catch (CancellationException e) {
+                    // Expected.
+                }
+                long start = System.nanoTime();
+                copier.close();
+                assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+                assertTrue(Files.size(out) < 16 << 20);
+            } finally {
+                // A no-op once closed; releases the workers when an assertion failed first.
+                copier.close();
+            }
+        });
+    }
+
+    /**
+     * Test that settings no copy mode can combine fail the build, by the rules shared with the CLI.
+     */
+    @Test
+    public void testConflictingSettings() {
+        List<Runnable> conflicts = List.of(
+                () -> Copier.builder().sparse().text(StandardCharsets.UTF_8, StandardCharsets.UTF_8, LineEnding.LF)
+                        .build(),
+                () -> Copier.builder().buffer(CopySettings.BUFFER_SPSC, WaitStrategies.BLOCKING).bufferSize(16, 64)
+                        .build(),
+                () -> Copier.builder().decompress().resume(1L << 20).build(),
+                () -> Copier.builder().mode("copy"),
+                () -> Copier.builder().buffer(CopySettings.BUFFER_SPSC, "sleep"));
+        for (int i = 0; i < conflicts.size(); i++) {
+            try {
+                conflicts.get(i).run();
+                fail("Conflict " + i + " accepted");
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+    }
+
+    /**
+     * Test that settings only the buffered mode supports switch to it, and that fan copies are throttled in any mode.
+     */
+    @Test
+    public void testSettingsSwitchToBufferedMode() {
+        CopySettings sparse = new CopySettings();
+        sparse.mode = CopySettings.MODE_MMAP;
+        sparse.sparse = true;
+        assertNotNull(sparse.validate(false, false));
+        assertEquals(CopySettings.MODE_BUFFERED, sparse.mode);
+
+        CopySettings throttled = new CopySettings();
+        throttled.mode = CopySettings.MODE_TRANSFER;
+        throttled.throttle = new Throttle(1L << 20, 0L);
+        assertNull(throttled.validate(true, false));
+        assertEquals(CopySettings.MODE_TRANSFER, throttled.mode);
+        assertNotNull(throttled.validate(false, false));
+        assertEquals(CopySettings.MODE_BUFFERED, throttled.mode);
+        assertNull(throttled.validate(false, false));
+    }
+
+    /**
+     * Test that settings which need files are rejected when the input or output is stdin/stdout.
+     */
+    @Test
+    public void testStdioConflicts() {
+        CopySettings resume = new CopySettings();
+        resume.checkpointInterval = 1L << 20;
+        assertNull(resume.validate(false, false));
+        try {
+            resume.validate(false, true);
+            fail("Resumable stdio copy accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        CopySettings sync = new CopySettings();
+        sync.syncPolicy = SyncPolicy.END;
+        try {
+            sync.validate(false, true);
+            fail("Synced stdio copy accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        CopySettings delta = new CopySettings();
+        delta.deltaBlockSize = 4096;
+        try {
+            delta.validate(false, true);
+            fail("Delta stdio copy accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package buutti.buffer.util;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.exceptions.SyncBufferTimeoutException;
+import buutti.buffer.interfaces.ByteSyncBuffer;
+import buutti.buffer.interfaces.CharSyncBuffer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ByteSyncBufferImplTest {
+    /**
+     * Test expected serial behavior with timers, including ring wraparound.
+     * @throws InterruptedException on thread interruption.
+     * @throws IOException on buffer supply error.
+     */
+    @Test
+    public void testByteSyncBufferSerial() throws InterruptedException, IOException {
+        ByteSyncBuffer syncBuffer = new ByteSyncBufferImpl(2, 1L);
+
+        syncBuffer.supplyByte((byte) 1);
+        syncBuffer.supplyByte((byte) -1);
+        boolean thrownIn = false;
+        try {
+            syncBuffer.supplyByte((byte) 3);
+        } catch (SyncBufferTimeoutException e) {
+            thrownIn = true;
+        }
+        assertTrue(thrownIn);
+
+        assertEquals(1, syncBuffer.consumeByte());
+        syncBuffer.supplyByte((byte) 4);
+        assertEquals(-1, syncBuffer.consumeByte());
+        assertEquals(4, syncBuffer.consumeByte());
+        assertTrue(syncBuffer.isEmpty());
+
+        boolean thrownOut = false;
+        try {
+            syncBuffer.consumeByte();
+        } catch (SyncBufferTimeoutException e) {
+            thrownOut = true;
+        }
+        assertTrue(thrownOut);
+    }
+
+    /**
+     * Test a threaded transfer of all byte values through a small buffer without timeout.
+     * @throws InterruptedException on thread interruption.
+     */
+    @Test
+    public void testByteSyncBufferThreaded() throws InterruptedException {
+        byte[] in = new byte[10_000];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = (byte) i;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AtomicReference<Exception> error = new AtomicReference<>();
+
+        try (ByteSyncBufferImpl syncBuffer = new ByteSyncBufferImpl(3, -1L)) {
+            Thread supplier = new Thread(() -> {
+                try (syncBuffer) {
+                    for (byte b : in) {
+                        syncBuffer.supplyByte(b);
+                    }
+                } catch (InterruptedException | IOException e) {
+                    error.set(e);
+                }
+            });
+            Thread consumer = new Thread(() -> {
+                try {
+                    while (true) {
+                        out.write(syncBuffer.consumeByte());
+                    }
+                } catch (SyncBufferSupplierExhaustedException e) {
+                    // Done.
+                } catch (InterruptedException | IOException e) {
+                    error.set(e);
+                }
+            });
+            supplier.start();
+            consumer.start();
+            supplier.join();
+            consumer.join();
+        }
+        assertNull(error.get());
+        assertArrayEquals(in, out.toByteArray());
+    }
+
+    /**
+     * Test the char variant and the boxed SyncBuffer view of the primitive buffers.
+     * @throws InterruptedException on thread interruption.
+     * @throws IOException on buffer error.
+     */
+    @Test
+    public void testCharSyncBufferExhaustion() throws InterruptedException, IOException {
+        try (CharSyncBufferImpl syncBuffer = new CharSyncBufferImpl(2, 10L)) {
+            syncBuffer.supplyChar('ä');
+            syncBuffer.supply('b');
+            syncBuffer.supplierIsExhausted();
+            assertTrue(syncBuffer.isSupplierIsExhausted());
+
+            boolean thrownIn = false;
+            try {
+                syncBuffer.supplyChar('c');
+            } catch (SyncBufferSupplierExhaustedException e) {
+                thrownIn = true;
+            }
+            assertTrue(thrownIn);
+
+            assertEquals('ä', syncBuffer.consumeChar());
+            assertEquals(Character.valueOf('b'), syncBuffer.consume());
+            boolean thrownOut = false;
+            try {
+                syncBuffer.consumeChar();
+            } catch (SyncBufferSupplierExhaustedException e) {
+                thrownOut = true;
+            }
+            assertTrue(thrownOut);
+        }
+    }
+
+    /**
+     * Test a threaded bulk transfer with chunks larger than the buffer, without timeout.
+     * @throws InterruptedException on thread interruption.
+     */
+    @Test
+    public void testByteSyncBufferBulkThreaded() throws InterruptedException {
+        byte[] in = new byte[100_000];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = (byte) (i * 31);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AtomicReference<Exception> error = new AtomicReference<>();
+
+        try (ByteSyncBufferImpl syncBuffer = new ByteSyncBufferImpl(7, -1L)) {
+            Thread supplier = new Thread(() -> {
+                try (syncBuffer) {
+                    for (int off = 0; off < in.length; off += 13) {
+                        syncBuffer.supply(in, off, Math.min(13, in.length - off));
+                    }
+                } catch (InterruptedException | IOException e) {
+                    error.set(e);
+                }
+            });
+            Thread consumer = new Thread(() -> {
+                byte[] chunk = new byte[5];
+                try {
+                    while (true) {
+                        out.write(chunk, 0, syncBuffer.consume(chunk, 0, chunk.length));
+                    }
+                } catch (SyncBufferSupplierExhaustedException e) {
+                    // Done.
+                } catch (InterruptedException | IOException e) {
+                    error.set(e);
+                }
+            });
+            supplier.start();
+            consumer.start();
+            supplier.join();
+            consumer.join();
+        }
+        assertNull(error.get());
+        assertArrayEquals(in, out.toByteArray());
+    }
+}
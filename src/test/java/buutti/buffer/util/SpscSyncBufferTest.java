@@ -0,0 +1,140 @@
+package buutti.buffer.util;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.exceptions.SyncBufferTimeoutException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SpscSyncBufferTest {
+    /**
+     * Test expected serial behavior with timers: full/empty timeouts, wraparound and exhaustion.
+     * @throws InterruptedException on thread interruption.
+     * @throws IOException on buffer error.
+     */
+    @Test
+    public void testSpscSyncBufferSerial() throws InterruptedException, IOException {
+        try (SpscSyncBuffer<String> syncBuffer = new SpscSyncBuffer<>(3, 1L, WaitStrategies.busySpin())) {
+            syncBuffer.supply(new String[] {"1", "2", "3"}, 0, 3);
+            assertTrue(syncBuffer.isFull());
+            boolean thrownIn = false;
+            try {
+                syncBuffer.supply("4");
+            } catch (SyncBufferTimeoutException e) {
+                thrownIn = true;
+            }
+            assertTrue(thrownIn);
+
+            assertEquals("1", syncBuffer.consume());
+            syncBuffer.supply("4");
+            String[] out = new String[3];
+            assertEquals(3, syncBuffer.consume(out, 0, 3));
+            assertArrayEquals(new String[] {"2", "3", "4"}, out);
+
+            boolean thrownOut = false;
+            try {
+                syncBuffer.consume();
+            } catch (SyncBufferTimeoutException e) {
+                thrownOut = true;
+            }
+            assertTrue(thrownOut);
+
+            syncBuffer.supply("5");
+            syncBuffer.supplierIsExhausted();
+            List<String> drained = new ArrayList<>();
+            assertEquals(1, syncBuffer.drainTo(drained));
+            assertEquals(List.of("5"), drained);
+            boolean thrownExhausted = false;
+            try {
+                syncBuffer.consume();
+            } catch (SyncBufferSupplierExhaustedException e) {
+                thrownExhausted = true;
+            }
+            assertTrue(thrownExhausted);
+        }
+    }
+
+    /**
+     * Test a threaded bulk transfer without timeout for every wait strategy.
+     * @throws InterruptedException on thread interruption.
+     */
+    @Test
+    public void testSpscByteSyncBufferThreaded() throws InterruptedException {
+        byte[] in = new byte[200_000];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = (byte) (i * 7);
+        }
+        for (String strategy : List.of(WaitStrategies.BUSY_SPIN, WaitStrategies.YIELD,
+                WaitStrategies.PARK, WaitStrategies.BLOCKING)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            AtomicReference<Exception> error = new AtomicReference<>();
+            try (SpscByteSyncBuffer syncBuffer = new SpscByteSyncBuffer(64, -1L, WaitStrategies.byName(strategy))) {
+                Thread supplier = new Thread(() -> {
+                    try (syncBuffer) {
+                        for (int off = 0; off < in.length; off += 100) {
+                            syncBuffer.supply(in, off, Math.min(100, in.length - off));
+                            syncBuffer.supplyByte(in[off]);
+                        }
+                    } catch (InterruptedException | IOException e) {
+                        error.set(e);
+                    }
+                });
+                Thread consumer = new Thread(() -> {
+                    byte[] chunk = new byte[37];
+                    try {
+                        while (true) {
+                            out.write(chunk, 0, syncBuffer.consume(chunk, 0, chunk.length));
+                        }
+                    } catch (SyncBufferSupplierExhaustedException e) {
+                        // Done.
+                    } catch (InterruptedException | IOException e) {
+                        error.set(e);
+                    }
+                });
+                supplier.start();
+                consumer.start();
+                supplier.join();
+                consumer.join();
+            }
+            assertNull(strategy, error.get());
+            byte[] result = out.toByteArray();
+            assertEquals(strategy, in.length + in.length / 100, result.length);
+            for (int i = 0, r = 0; i < in.length; i += 100, r += 101) {
+                assertEquals(in[i], result[r + 100]);
+            }
+        }
+    }
+
+    /**
+     * Test that a producer waiting on a full buffer without a timeout stops once the buffer is exhausted, for every
+     * wait strategy, as it does with the ring buffer.
+     * @throws Exception on buffer error.
+     */
+    @Test(timeout = 10000)
+    public void testExhaustedReleasesProducer() throws Exception {
+        for (String strategy : List.of(WaitStrategies.BUSY_SPIN, WaitStrategies.YIELD, WaitStrategies.PARK,
+                WaitStrategies.BLOCKING)) {
+            try (SpscSyncBuffer<String> syncBuffer = new SpscSyncBuffer<>(1, -1L, WaitStrategies.byName(strategy))) {
+                syncBuffer.supply("1");
+                AtomicReference<Throwable> thrown = new AtomicReference<>();
+                Thread producer = new Thread(() -> {
+                    try {
+                        syncBuffer.supply("2");
+                    } catch (Throwable e) {
+                        thrown.set(e);
+                    }
+                });
+                producer.start();
+                Thread.sleep(50);
+                syncBuffer.supplierIsExhausted();
+                producer.join();
+                assertTrue(strategy + ": " + thrown.get(), thrown.get() instanceof SyncBufferSupplierExhaustedException);
+            }
+        }
+    }
+}
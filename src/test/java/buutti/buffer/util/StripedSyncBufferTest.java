@@ -0,0 +1,128 @@
+package buutti.buffer.util;
+
+import buutti.buffer.exceptions.SyncBufferSupplierExhaustedException;
+import buutti.buffer.exceptions.SyncBufferTimeoutException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class StripedSyncBufferTest {
+    /**
+     * Test serial behavior: full/empty timeouts, and exhaustion only after every registered supplier is exhausted.
+     * @throws InterruptedException on thread interruption.
+     * @throws IOException on buffer error.
+     */
+    @Test
+    public void testStripedSyncBufferSerial() throws InterruptedException, IOException {
+        try (StripedSyncBuffer<String> syncBuffer = new StripedSyncBuffer<>(2, 4, 1, 10L)) {
+            syncBuffer.registerSupplier();
+            assertEquals(2, syncBuffer.getSuppliers());
+            syncBuffer.supply(new String[] {"1", "2"}, 0, 2);
+            assertTrue(syncBuffer.isFull());
+            boolean thrownIn = false;
+            try {
+                syncBuffer.supply("3");
+            } catch (SyncBufferTimeoutException e) {
+                thrownIn = true;
+            }
+            assertTrue(thrownIn);
+
+            String[] out = new String[4];
+            assertEquals(2, syncBuffer.consume(out, 0, 4));
+            // Single thread, single stripe; FIFO.
+            assertArrayEquals(new String[] {"1", "2", null, null}, out);
+            boolean thrownOut = false;
+            try {
+                syncBuffer.consume();
+            } catch (SyncBufferTimeoutException e) {
+                thrownOut = true;
+            }
+            assertTrue(thrownOut);
+
+            syncBuffer.supply("3");
+            syncBuffer.supplierIsExhausted();
+            assertFalse(syncBuffer.isSupplierIsExhausted());
+            syncBuffer.supply("4");
+            syncBuffer.supplierIsExhausted();
+            assertTrue(syncBuffer.isSupplierIsExhausted());
+            List<String> drained = new ArrayList<>();
+            assertEquals(2, syncBuffer.drainTo(drained));
+            assertEquals(List.of("3", "4"), drained);
+            for (int i = 0; i < 2; i++) {
+                boolean thrownExhausted = false;
+                try {
+                    syncBuffer.consume();
+                } catch (SyncBufferSupplierExhaustedException e) {
+                    thrownExhausted = true;
+                }
+                assertTrue(thrownExhausted);
+            }
+            boolean thrownRegister = false;
+            try {
+                syncBuffer.registerSupplier();
+            } catch (IllegalStateException e) {
+                thrownRegister = true;
+            }
+            assertTrue(thrownRegister);
+        }
+    }
+
+    /**
+     * Test fan-in/fan-out; every element of several producers reaches exactly one of several consumers, and all
+     * consumers stop once the last producer is exhausted.
+     * @throws Exception on thread error.
+     */
+    @Test
+    public void testStripedSyncBufferThreaded() throws Exception {
+        int producers = 4, consumers = 3, perProducer = 20000;
+        StripedSyncBuffer<Integer> syncBuffer = new StripedSyncBuffer<>(64, 4, producers, -1L);
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            executor.submit(() -> {
+                try {
+                    for (int i = 0; i < perProducer; i++) {
+                        syncBuffer.supply(base + i);
+                    }
+                } finally {
+                    syncBuffer.supplierIsExhausted();
+                }
+                return null;
+            });
+        }
+        for (int c = 0; c < consumers; c++) {
+            results.add(executor.submit(() -> {
+                long count = 0, sum = 0;
+                Integer[] out = new Integer[16];
+                try {
+                    while (true) {
+                        int n = syncBuffer.consume(out, 0, out.length);
+                        for (int i = 0; i < n; i++) {
+                            count++;
+                            sum += out[i];
+                        }
+                    }
+                } catch (SyncBufferSupplierExhaustedException e) {
+                    return new long[] {count, sum};
+                }
+            }));
+        }
+        long count = 0, sum = 0;
+        for (Future<long[]> result : results) {
+            count += result.get()[0];
+            sum += result.get()[1];
+        }
+        executor.shutdown();
+        long total = (long) producers * perProducer;
+        assertEquals(total, count);
+        assertEquals(total * (total - 1) / 2, sum);
+        assertTrue(syncBuffer.isEmpty());
+    }
+}
@@ -187,4 +187,196 @@ public class SyncBufferImplTest {
             assertArrayEquals(new String[] {"1", "2"}, out.toArray());
         }
     }
+
+    /**
+     * Test bulk supply/consume across the ring wraparound and draining to a collection.
+     * @throws InterruptedException on thread interruption.
+     * @throws IOException on buffer error.
+     */
+    @Test
+    public void testBulkSupplyConsume() throws IOException, InterruptedException {
+        try (AbstractSyncBuffer<String> syncBuffer = new SyncBufferImpl<>(4, 10L)) {
+            syncBuffer.supply(new String[] {"1", "2", "3"}, 0, 3);
+
+            String[] out = new String[4];
+            assertEquals(2, syncBuffer.consume(out, 1, 2));
+            assertArrayEquals(new String[] {null, "1", "2", null}, out);
+
+            // Wraps around the end of the ring.
+            syncBuffer.supply(new String[] {"x", "4", "5", "6"}, 1, 3);
+            assertTrue(syncBuffer.isFull());
+
+            boolean thrownIn = false;
+            try {
+                syncBuffer.supply(new String[] {"7", "8"}, 0, 2);
+            } catch (SyncBufferTimeoutException e) {
+                thrownIn = true;
+            }
+            assertTrue(thrownIn);
+
+            assertEquals(4, syncBuffer.consume(out, 0, 4));
+            assertArrayEquals(new String[] {"3", "4", "5", "6"}, out);
+
+            syncBuffer.supply(new String[] {"7", "8"}, 0, 2);
+            List<String> drained = new ArrayList<>();
+            assertEquals(1, syncBuffer.drainTo(drained, 1));
+            assertEquals(1, syncBuffer.drainTo(drained));
+            assertEquals(0, syncBuffer.drainTo(drained));
+            assertEquals(List.of("7", "8"), drained);
+
+            syncBuffer.supplierIsExhausted();
+            boolean thrownOut = false;
+            try {
+                syncBuffer.consume(out, 0, 4);
+            } catch (SyncBufferSupplierExhaustedException e) {
+                thrownOut = true;
+            }
+            assertTrue(thrownOut);
+        }
+    }
+
+    /**
+     * Test adaptive resizing; growth after repeated full waits with wrapped contents, shrinking after repeated
+     * empty waits with low occupancy, FIFO order throughout.
+     * @throws IOException on buffer error.
+     * @throws InterruptedException on thread interruption.
+     */
+    @Test
+    public void testAdaptiveResize() throws IOException, InterruptedException {
+        try (SyncBufferImpl<String> syncBuffer = new SyncBufferImpl<>(2, 8, 10L)) {
+            syncBuffer.supply("a");
+            syncBuffer.supply("b");
+            assertEquals("a", syncBuffer.consume());
+            // Wraps around, the ring now holds b at its end and c at its start.
+            syncBuffer.supply("c");
+            for (int i = 1; i < AbstractRingSyncBuffer.RESIZE_THRESHOLD; i++) {
+                boolean thrown = false;
+                try {
+                    syncBuffer.supply("d");
+                } catch (SyncBufferTimeoutException e) {
+                    thrown = true;
+                }
+                assertTrue(thrown);
+                assertEquals(2, syncBuffer.getCapacity());
+            }
+            syncBuffer.supply("d");
+            assertEquals(4, syncBuffer.getCapacity());
+            assertEquals("b", syncBuffer.consume());
+            assertEquals("c", syncBuffer.consume());
+            assertEquals("d", syncBuffer.consume());
+
+            // The first streak of empty waits still saw 3 elements in the buffer, the second one none.
+            for (int i = 0; i < 2 * AbstractRingSyncBuffer.RESIZE_THRESHOLD; i++) {
+                assertEquals(4, syncBuffer.getCapacity());
+                try {
+                    syncBuffer.consume();
+                    fail();
+                } catch (SyncBufferTimeoutException e) {
+                    // Expected, empty.
+                }
+            }
+            assertEquals(2, syncBuffer.getCapacity());
+            syncBuffer.supply("e");
+            assertEquals("e", syncBuffer.consume());
+        }
+    }
+
+    /**
+     * Test an adaptive buffer between a fast producer and a slow consumer keeps FIFO order and stays within bounds.
+     * @throws InterruptedException on thread interruption.
+     * @throws ExecutionException on producer error.
+     */
+    @Test
+    public void testAdaptiveThreaded() throws InterruptedException, ExecutionException {
+        int n = 20000;
+        try (SyncBufferImpl<Integer> syncBuffer = new SyncBufferImpl<>(1, 64, -1L)) {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            Future<?> producer = executor.submit(() -> {
+                for (int i = 0; i < n; i++) {
+                    syncBuffer.supply(i);
+                }
+                syncBuffer.supplierIsExhausted();
+                return null;
+            });
+            int expected = 0;
+            Integer[] out = new Integer[8];
+            try {
+                while (true) {
+                    int read = syncBuffer.consume(out, 0, out.length);
+                    for (int i = 0; i < read; i++) {
+                        assertEquals(expected++, (int) out[i]);
+                    }
+                    if (expected % 1000 == 0) {
+                        Thread.sleep(1);
+                    }
+                }
+            } catch (SyncBufferSupplierExhaustedException e) {
+                // Done.
+            } catch (IOException e) {
+                fail(e.getMessage());
+            }
+            producer.get();
+            executor.shutdown();
+            assertEquals(n, expected);
+            assertTrue(syncBuffer.getCapacity() >= 1 && syncBuffer.getCapacity() <= 64);
+        }
+    }
+
+    /**
+     * Test that a bulk supply into an empty buffer wakes every waiting consumer, although only the empty to
+     * non-empty transition signals, and that the timeout of a consumer left waiting is honored fully.
+     * @throws Exception on thread error.
+     */
+    @Test
+    public void testSignalOnTransition() throws Exception {
+        int consumers = 3;
+        try (SyncBufferImpl<String> syncBuffer = new SyncBufferImpl<>(consumers, 2000L)) {
+            ExecutorService executor = Executors.newFixedThreadPool(consumers);
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < consumers; i++) {
+                results.add(executor.submit(() -> syncBuffer.consume()));
+            }
+            Thread.sleep(100);
+            syncBuffer.supply(new String[] {"1", "2", "3"}, 0, consumers);
+            List<String> consumed = new ArrayList<>();
+            for (Future<String> result : results) {
+                consumed.add(result.get(1, TimeUnit.SECONDS));
+            }
+            Collections.sort(consumed);
+            assertEquals(List.of("1", "2", "3"), consumed);
+            executor.shutdown();
+        }
+        try (SyncBufferImpl<String> syncBuffer = new SyncBufferImpl<>(1, 200L)) {
+            long start = System.nanoTime();
+            try {
+                syncBuffer.consume();
+                fail();
+            } catch (SyncBufferTimeoutException e) {
+                assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200L));
+            }
+        }
+    }
+
+    /**
+     * Test that a zero timeout waits without a deadline, as -1 does, in the ring and SPSC buffers.
+     * @throws Exception on thread error.
+     */
+    @Test
+    public void testZeroTimeoutWaits() throws Exception {
+        List<AbstractSyncBuffer<String>> buffers = List.of(new SyncBufferImpl<>(1, 0L),
+                new SpscSyncBuffer<>(1, 0L, WaitStrategies.blocking()));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (AbstractSyncBuffer<String> syncBuffer : buffers) {
+                Future<String> result = executor.submit(() -> syncBuffer.consume());
+                Thread.sleep(100);
+                syncBuffer.supply("1");
+                syncBuffer.supply("2");
+                assertEquals("1", result.get(1, TimeUnit.SECONDS));
+                assertEquals("2", syncBuffer.consume());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
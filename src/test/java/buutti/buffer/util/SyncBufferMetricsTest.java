@@ -0,0 +1,136 @@
+package buutti.buffer.util;
+
+import buutti.buffer.exceptions.SyncBufferTimeoutException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class SyncBufferMetricsTest {
+    /**
+     * Test that the ring and SPSC buffers report the same counters for the same serial operations.
+     * @throws InterruptedException on thread interruption.
+     * @throws IOException on buffer error.
+     */
+    @Test
+    public void testMetricsSerial() throws InterruptedException, IOException {
+        SyncBufferMetrics ringMetrics = new SyncBufferMetrics();
+        try (SyncBufferImpl<String> syncBuffer = new SyncBufferImpl<>(3, 1L)) {
+            syncBuffer.setMetrics(ringMetrics);
+            runSerial(syncBuffer);
+        }
+        SyncBufferMetrics spscMetrics = new SyncBufferMetrics();
+        try (SpscSyncBuffer<String> syncBuffer = new SpscSyncBuffer<>(3, 1L, WaitStrategies.busySpin())) {
+            syncBuffer.setMetrics(spscMetrics);
+            runSerial(syncBuffer);
+        }
+        for (SyncBufferMetrics metrics : new SyncBufferMetrics[] {ringMetrics, spscMetrics}) {
+            assertEquals(4L, metrics.getSupplied());
+            assertEquals(4L, metrics.getConsumed());
+            assertEquals(3L, metrics.getHighWaterMark());
+            assertEquals(1L, metrics.getSupplyTimeouts());
+            assertEquals(1L, metrics.getConsumeTimeouts());
+            assertTrue(metrics.getProducerWaits() >= 1L);
+            assertTrue(metrics.getConsumerWaits() >= 1L);
+            metrics.reset();
+            assertEquals(0L, metrics.getSupplied());
+            assertEquals(0L, metrics.getHighWaterMark());
+        }
+    }
+
+    /**
+     * Fills the buffer, times out once on each side and empties it.
+     * @param syncBuffer buffer of capacity 3.
+     * @throws InterruptedException on thread interruption.
+     * @throws IOException on buffer error.
+     */
+    private void runSerial(final AbstractSyncBuffer<String> syncBuffer) throws InterruptedException, IOException {
+        syncBuffer.supply(new String[] {"1", "2", "3"}, 0, 3);
+        try {
+            syncBuffer.supply("4");
+            fail();
+        } catch (SyncBufferTimeoutException e) {
+            // Expected, full.
+        }
+        assertEquals("1", syncBuffer.consume());
+        syncBuffer.supply("4");
+        String[] out = new String[3];
+        assertEquals(3, syncBuffer.consume(out, 0, 3));
+        try {
+            syncBuffer.consume();
+            fail();
+        } catch (SyncBufferTimeoutException e) {
+            // Expected, empty.
+        }
+    }
+
+    /**
+     * Test that byte buffers count their elements as bytes, and chunk queues the bytes of their chunks, on the
+     * single, bulk and drain paths.
+     * @throws InterruptedException on thread interruption.
+     * @throws IOException on buffer error.
+     */
+    @Test
+    public void testMetricsBytes() throws InterruptedException, IOException {
+        SyncBufferMetrics byteMetrics = new SyncBufferMetrics();
+        try (ByteSyncBufferImpl byteBuffer = new ByteSyncBufferImpl(16, -1L);
+             SpscByteSyncBuffer spscByteBuffer = new SpscByteSyncBuffer(16, -1L, WaitStrategies.busySpin())) {
+            byteBuffer.setMetrics(byteMetrics);
+            spscByteBuffer.setMetrics(byteMetrics);
+            byteBuffer.supply(new byte[10], 0, 10);
+            spscByteBuffer.supplyByte((byte) 1);
+            assertEquals(10, byteBuffer.consume(new byte[16], 0, 16));
+        }
+        assertEquals(11L, byteMetrics.getBytesSupplied());
+        assertEquals(10L, byteMetrics.getBytesConsumed());
+
+        List<AbstractSyncBuffer<ByteBuffer>> queues = List.of(new SyncBufferImpl<>(4, -1L),
+                new SpscSyncBuffer<>(4, -1L, WaitStrategies.busySpin()), new StripedSyncBuffer<>(4, -1L));
+        for (AbstractSyncBuffer<ByteBuffer> queue : queues) {
+            SyncBufferMetrics metrics = new SyncBufferMetrics();
+            queue.setMetrics(metrics, ByteBuffer::remaining);
+            queue.supply(ByteBuffer.allocate(100));
+            queue.supply(ByteBuffer.allocate(10));
+            queue.supply(ByteBuffer.allocate(1));
+            queue.supply(new ByteBuffer[] {ByteBuffer.allocate(1000)}, 0, 1);
+            queue.consume();
+            queue.consume(new ByteBuffer[1], 0, 1);
+            queue.drainTo(new ArrayList<>(), 4);
+            String name = queue.getClass().getSimpleName();
+            assertEquals(name, 1111L, metrics.getBytesSupplied());
+            assertEquals(name, 1111L, metrics.getBytesConsumed());
+            assertEquals(name, 4L, metrics.getConsumed());
+            queue.close();
+        }
+    }
+
+    /**
+     * Test registering the metrics MBean and reading an attribute through the platform MBean server.
+     * @throws JMException on registration error.
+     */
+    @Test
+    public void testMetricsJmx() throws JMException {
+        SyncBufferMetrics metrics = new SyncBufferMetrics();
+        metrics.supplied(5L, 5L);
+        ObjectName name = metrics.register("test");
+        try {
+            assertEquals(5L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Supplied"));
+            boolean thrown = false;
+            try {
+                new SyncBufferMetrics().register("test");
+            } catch (JMException e) {
+                thrown = true;
+            }
+            assertTrue(thrown);
+        } finally {
+            SyncBufferMetrics.unregister(name);
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
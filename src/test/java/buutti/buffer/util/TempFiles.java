@@ -0,0 +1,69 @@
+package buutti.buffer.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Temporary input and output files of the copy tests.
+ */
+public final class TempFiles {
+    /**
+     * Body of a test on a temporary input and output.
+     */
+    @FunctionalInterface
+    public interface FileTest {
+        /**
+         * @param in input holding the data.
+         * @param out output, empty.
+         * @throws Exception on test failure.
+         */
+        void run(Path in, Path out) throws Exception;
+    }
+
+    private TempFiles() {
+    }
+
+    /**
+     * @param size bytes.
+     * @param seed random seed, so a failing test sees the same data again.
+     * @return byte[] random bytes.
+     */
+    public static byte[] randomBytes(final int size, final long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Runs a test on an input holding the data and an empty output in a temporary directory, then deletes the
+     * directory along with any sidecar files the test left next to them.
+     * @param data input contents.
+     * @param test test body.
+     * @throws Exception on test failure.
+     */
+    public static void withTempFiles(final byte[] data, final FileTest test) throws Exception {
+        Path directory = Files.createTempDirectory("buutti-test");
+        try {
+            Path in = Files.write(directory.resolve("in.bin"), data);
+            Path out = Files.createFile(directory.resolve("out.bin"));
+            test.run(in, out);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void delete(final Path directory) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            paths = walk.sorted(Comparator.reverseOrder()).toList();
+        }
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+}
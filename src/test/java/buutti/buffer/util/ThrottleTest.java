@@ -0,0 +1,98 @@
+package buutti.buffer.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class ThrottleTest {
+    /**
+     * Test that writes beyond the burst are held to the rate, also when shared by several writers.
+     * @throws InterruptedException on thread interruption.
+     */
+    @Test
+    public void testRateSharedByWriters() throws InterruptedException {
+        // 2 × 150 KB at 1 MB/s take 300 ms, less the 50 ms burst.
+        Throttle throttle = new Throttle(1_000_000L, 0L);
+        Thread[] writers = new Thread[2];
+        long start = System.nanoTime();
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new Thread(() -> {
+                try {
+                    for (int j = 0; j < 15; j++) {
+                        throttle.acquire(10_000L);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            writers[i].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("took " + millis + " ms", millis >= 240 && millis < 2000);
+        assertEquals(300_000L, throttle.getBytes());
+        assertEquals(30L, throttle.getWrites());
+        assertTrue(throttle.getWaits() > 0);
+    }
+
+    /**
+     * Test that the IOPS limit holds regardless of the write sizes, also for writes metered by a child.
+     * @throws InterruptedException on thread interruption.
+     */
+    @Test
+    public void testIops() throws InterruptedException {
+        Throttle throttle = new Throttle(0L, 100L);
+        Throttle child = new Throttle(0L, 0L, throttle);
+        long start = System.nanoTime();
+        for (int i = 0; i < 30; i++) {
+            (i % 2 == 0 ? throttle : child).acquire(1);
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("took " + millis + " ms", millis >= 240 && millis < 2000);
+        assertEquals(15L, child.getWrites());
+        assertEquals(30L, throttle.getWrites());
+    }
+
+    /**
+     * Test that lifting the limits at runtime stops the waiting, and that no limits never wait.
+     * @throws InterruptedException on thread interruption.
+     */
+    @Test
+    public void testUnlimited() throws InterruptedException {
+        Throttle throttle = new Throttle(1000L, 0L);
+        throttle.acquire(10L);
+        assertEquals(0L, throttle.getWaits());
+        throttle.setMaxRate(0L);
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            throttle.acquire(1 << 20);
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertEquals(0L, throttle.getWaits());
+        assertEquals(10L + (1000L << 20), throttle.getBytes());
+    }
+
+    /**
+     * Test registering the throttle MBean, changing a limit through the platform MBean server and unregistering it.
+     * @throws JMException on registration error.
+     */
+    @Test
+    public void testThrottleJmx() throws JMException {
+        Throttle throttle = new Throttle(1000L, 0L);
+        ObjectName name = throttle.register("test");
+        try {
+            ManagementFactory.getPlatformMBeanServer().setAttribute(name, new Attribute("MaxRate", 2000L));
+            assertEquals(2000L, throttle.getMaxRate());
+        } finally {
+            Throttle.unregister(name);
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
@@ -0,0 +1,52 @@
+package buutti.buffer.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class XxHash64Test {
+    /**
+     * Test against the reference digests, for inputs below, at and above a stripe.
+     */
+    @Test
+    public void testReferenceValues() {
+        assertEquals(0xEF46DB3751D8E999L, hash(new byte[0]));
+        assertEquals(0x44BC2CF5AD770999L, hash("abc".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(0xFBCEA83C8A378BF1L, hash("Nobody inspects the spammish repetition".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * Test that updates split at arbitrary offsets give the same digest as a single update, and reset.
+     */
+    @Test
+    public void testIncrementalUpdates() {
+        byte[] data = new byte[1000];
+        new Random(3).nextBytes(data);
+        long expected = hash(data);
+        XxHash64 xxHash = new XxHash64();
+        Random random = new Random(4);
+        for (int round = 0; round < 10; round++) {
+            xxHash.reset();
+            int off = 0;
+            while (off < data.length) {
+                int len = Math.min(data.length - off, random.nextInt(70));
+                xxHash.update(data, off, len);
+                off += len;
+            }
+            assertEquals(expected, xxHash.getValue());
+        }
+        xxHash.reset();
+        for (byte b : data) {
+            xxHash.update(b);
+        }
+        assertEquals(expected, xxHash.getValue());
+    }
+
+    private static long hash(final byte[] data) {
+        XxHash64 xxHash = new XxHash64();
+        xxHash.update(data, 0, data.length);
+        return xxHash.getValue();
+    }
+}